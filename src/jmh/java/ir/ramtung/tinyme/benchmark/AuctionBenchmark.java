@@ -0,0 +1,86 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.domain.entity.Trade;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class AuctionBenchmark {
+    // Buys and sells overlap over half of the levels, so the auction has a range of
+    // candidate prices to choose from.
+    static Security auctionBook(Engine engine, int depth) {
+        Security security = engine.newSecurity();
+        security.setMatchingState(MatchingState.AUCTION);
+        security.setMarketPrice(Engine.MID_PRICE);
+        for (int level = 0; level < depth; level++) {
+            int buyPrice = Engine.MID_PRICE - (level - depth / 2) * Engine.TICK;
+            int sellPrice = Engine.MID_PRICE + (level - depth / 2) * Engine.TICK;
+            security.newOrder(engine.order(security, Side.BUY, 100 + level % 7, buyPrice), engine.matcher);
+            security.newOrder(engine.order(security, Side.SELL, 100 + level % 5, sellPrice), engine.matcher);
+        }
+        return security;
+    }
+
+    @State(Scope.Thread)
+    public static class Book {
+        @Param({"10", "100", "1000"})
+        int depth;
+        Engine engine;
+        Security security;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            engine = new Engine();
+            security = auctionBook(engine, depth);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            engine.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FreshBook {
+        @Param({"10", "100", "1000"})
+        int depth;
+        Engine engine;
+        Security security;
+
+        @Setup(Level.Invocation)
+        public void setup() {
+            engine = new Engine();
+            security = auctionBook(engine, depth);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            engine.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public int openingPrice(Book book) {
+        return book.security.getOpeningPrice();
+    }
+
+    // Opening the market empties the crossing part of the book, so every measurement
+    // starts from a freshly built one.
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 50)
+    public List<Trade> openMarket(FreshBook book) {
+        return book.security.changeMatchingState(new ChangeMatchingStateRq(Engine.ISIN, MatchingState.CONTINUOUS), book.engine.matcher);
+    }
+}
@@ -0,0 +1,66 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.AuditLog;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+// Cost to the calling thread of leaving a trace of one request: a log line or an audit record.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AuditBenchmark {
+    private Path directory;
+    private Logger logger;
+    private FileHandler fileHandler;
+    private AuditLog auditLog;
+    private EnterOrderRq enterOrderRq;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("audit");
+        logger = Logger.getLogger(AuditBenchmark.class.getName());
+        logger.setUseParentHandlers(false);
+        fileHandler = new FileHandler(directory.resolve("log").toString());
+        fileHandler.setFormatter(new SimpleFormatter());
+        logger.addHandler(fileHandler);
+        auditLog = new AuditLog(directory.resolve("audit"), 8192, 256L << 20);
+        auditLog.open();
+        enterOrderRq = EnterOrderRq.createNewOrderRq(1, Engine.ISIN, 200, LocalDateTime.now(), Side.BUY,
+                300, Engine.MID_PRICE, 1, 1, 0, 0, 0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        logger.removeHandler(fileHandler);
+        fileHandler.close();
+        auditLog.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList())
+                Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void logInfo() {
+        logger.info("Received message: " + enterOrderRq);
+    }
+
+    @Benchmark
+    public void auditRecord() {
+        auditLog.record(enterOrderRq);
+    }
+}
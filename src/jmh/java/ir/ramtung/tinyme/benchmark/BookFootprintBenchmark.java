@@ -0,0 +1,71 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.Order;
+import ir.ramtung.tinyme.domain.entity.OrderBook;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Side;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+// Heap kept by a book of resting orders, each with its own entry time as a decoded request
+// brings it, spread over a hundred price levels a side. Reported as retainedBytesPerOrder.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g", "-XX:+UseParallelGC"})
+@State(Scope.Thread)
+public class BookFootprintBenchmark {
+    private static final int LEVELS = 100;
+
+    @Param({"1000000"})
+    private int orders;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long retainedBytesPerOrder;
+    }
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private Engine engine;
+    private Security security;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        engine = new Engine();
+        security = engine.newSecurity();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        engine.close();
+    }
+
+    private long usedHeap() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public OrderBook fill(Footprint footprint) {
+        long before = usedHeap();
+        OrderBook orderBook = security.getOrderBook();
+        for (int i = 0; i < orders; i++) {
+            Side side = (i & 1) == 0 ? Side.BUY : Side.SELL;
+            int level = 1 + (i >> 1) % LEVELS;
+            int price = side == Side.BUY ? Engine.MID_PRICE - level * Engine.TICK : Engine.MID_PRICE + level * Engine.TICK;
+            orderBook.enqueue(new Order(engine.nextOrderId(), security, side, 100, price, engine.broker, engine.shareholder,
+                    LocalDateTime.of(LocalDate.of(2024, 2, 23), LocalTime.ofNanoOfDay(36_000_000_000_000L + i * 1000L))));
+        }
+        footprint.retainedBytesPerOrder = (usedHeap() - before) / orders;
+        return orderBook;
+    }
+}
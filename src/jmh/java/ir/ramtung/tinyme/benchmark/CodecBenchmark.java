@@ -0,0 +1,99 @@
+package ir.ramtung.tinyme.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.BinaryCodec;
+import ir.ramtung.tinyme.messaging.TradeDTO;
+import ir.ramtung.tinyme.messaging.event.OrderExecutedEvent;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Encoding and decoding of the most common request and the largest common event, with
+// Jackson configured as the JMS converter uses it and with BinaryCodec.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private EnterOrderRq enterOrderRq;
+    private OrderExecutedEvent orderExecutedEvent;
+    private String enterOrderRqJson;
+    private String orderExecutedEventJson;
+    private ByteBuffer buffer;
+    private ByteBuffer enterOrderRqBytes;
+    private ByteBuffer orderExecutedEventBytes;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        enterOrderRq = EnterOrderRq.createNewOrderRq(1, Engine.ISIN, 200, LocalDateTime.now(), Side.BUY,
+                300, Engine.MID_PRICE, 1, 1, 0, 0, 0);
+        List<TradeDTO> trades = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            trades.add(new TradeDTO(Engine.ISIN, Engine.MID_PRICE + i * Engine.TICK, 60, 200, 300 + i));
+        orderExecutedEvent = new OrderExecutedEvent(1, 200, trades);
+
+        enterOrderRqJson = objectMapper.writeValueAsString(enterOrderRq);
+        orderExecutedEventJson = objectMapper.writeValueAsString(orderExecutedEvent);
+        buffer = BinaryCodec.newBuffer();
+        enterOrderRqBytes = copy(BinaryCodec.encode(enterOrderRq, BinaryCodec.newBuffer()));
+        orderExecutedEventBytes = copy(BinaryCodec.encode(orderExecutedEvent, BinaryCodec.newBuffer()));
+    }
+
+    private static ByteBuffer copy(ByteBuffer encoded) {
+        ByteBuffer copy = ByteBuffer.allocate(encoded.remaining());
+        copy.put(encoded).flip();
+        return copy;
+    }
+
+    @Benchmark
+    public String encodeEnterOrderRqJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(enterOrderRq);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeEnterOrderRqBinary() {
+        return buffer = BinaryCodec.encode(enterOrderRq, buffer);
+    }
+
+    @Benchmark
+    public Object decodeEnterOrderRqJson() throws JsonProcessingException {
+        return objectMapper.readValue(enterOrderRqJson, EnterOrderRq.class);
+    }
+
+    @Benchmark
+    public Object decodeEnterOrderRqBinary() {
+        return BinaryCodec.decode(enterOrderRqBytes.rewind());
+    }
+
+    @Benchmark
+    public String encodeOrderExecutedEventJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(orderExecutedEvent);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeOrderExecutedEventBinary() {
+        return buffer = BinaryCodec.encode(orderExecutedEvent, buffer);
+    }
+
+    @Benchmark
+    public Object decodeOrderExecutedEventJson() throws JsonProcessingException {
+        return objectMapper.readValue(orderExecutedEventJson, OrderExecutedEvent.class);
+    }
+
+    @Benchmark
+    public Object decodeOrderExecutedEventBinary() {
+        return BinaryCodec.decode(orderExecutedEventBytes.rewind());
+    }
+}
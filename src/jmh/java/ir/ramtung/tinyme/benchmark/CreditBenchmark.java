@@ -0,0 +1,54 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// One broker's credit reserved and released from several shard threads at once, against the
+// old check-then-debit pair, which is just as fast but can overdraw the credit.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CreditBenchmark {
+    private static final long VALUE = 300L * Engine.MID_PRICE;
+
+    private Broker broker;
+
+    @Setup
+    public void setup() {
+        broker = Broker.builder().brokerId(1).credit(Long.MAX_VALUE / 2).build();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean reserveAndReleaseUncontended() {
+        return reserveAndRelease();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean reserveAndReleaseContended() {
+        return reserveAndRelease();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean checkThenDebitContended() {
+        if (!broker.hasEnoughCredit(VALUE))
+            return false;
+        broker.decreaseCreditBy(VALUE);
+        broker.increaseCreditBy(VALUE);
+        return true;
+    }
+
+    private boolean reserveAndRelease() {
+        if (!broker.tryReserveCredit(VALUE))
+            return false;
+        broker.releaseCredit(VALUE);
+        return true;
+    }
+}
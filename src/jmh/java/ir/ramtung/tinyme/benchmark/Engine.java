@@ -0,0 +1,87 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.Matcher;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * The domain services wired by Spring the way the application wires them, without JMS:
+ * published events are dropped.
+ */
+class Engine implements AutoCloseable {
+    static final String ISIN = "BENCH";
+    static final int MID_PRICE = 10_000;
+    static final int TICK = 10;
+
+    private final AnnotationConfigApplicationContext context;
+    final Matcher matcher;
+    final OrderHandler orderHandler;
+    final SecurityRepository securityRepository;
+    final BrokerRepository brokerRepository;
+    final ShareholderRepository shareholderRepository;
+    final Broker broker;
+    final Shareholder shareholder;
+    private long nextOrderId = 1;
+
+    Engine() {
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(EventPublisher.class, NoOpEventPublisher::new);
+        context.register(SecurityRepository.class, BrokerRepository.class, ShareholderRepository.class);
+        context.scan("ir.ramtung.tinyme.domain");
+        context.refresh();
+        matcher = context.getBean(Matcher.class);
+        orderHandler = context.getBean(OrderHandler.class);
+        securityRepository = context.getBean(SecurityRepository.class);
+        brokerRepository = context.getBean(BrokerRepository.class);
+        shareholderRepository = context.getBean(ShareholderRepository.class);
+
+        broker = Broker.builder().brokerId(1).credit(Long.MAX_VALUE / 2).build();
+        shareholder = Shareholder.builder().shareholderId(1).build();
+        brokerRepository.addBroker(broker);
+        shareholderRepository.addShareholder(shareholder);
+    }
+
+    long nextOrderId() {
+        return nextOrderId++;
+    }
+
+    Security newSecurity() {
+        Security security = Security.builder().isin(ISIN).build();
+        securityRepository.addSecurity(security);
+        shareholder.incPosition(security, Integer.MAX_VALUE / 2);
+        return security;
+    }
+
+    Order order(Security security, Side side, int quantity, int price) {
+        return new Order(nextOrderId(), security, side, quantity, price, broker, shareholder);
+    }
+
+    // Rests depth levels on each side of the mid price, every one holding a single order.
+    void fillBook(Security security, int depth, int quantity) {
+        for (int level = 1; level <= depth; level++) {
+            security.getOrderBook().enqueue(order(security, Side.BUY, quantity, MID_PRICE - level * TICK));
+            security.getOrderBook().enqueue(order(security, Side.SELL, quantity, MID_PRICE + level * TICK));
+        }
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    static class NoOpEventPublisher extends EventPublisher {
+        NoOpEventPublisher() {
+            super(null);
+        }
+
+        @Override
+        public void publish(Event event) {
+        }
+    }
+}
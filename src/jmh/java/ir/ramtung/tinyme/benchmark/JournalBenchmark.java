@@ -0,0 +1,53 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.CommandJournal;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Cost of journaling one request when the journal stage forces the file once per batch.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JournalBenchmark {
+    @Param({"1", "16", "256"})
+    private int batchSize;
+
+    private Path file;
+    private CommandJournal journal;
+    private EnterOrderRq enterOrderRq;
+    private int pending;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        file = Files.createTempFile("journal", ".bin");
+        journal = new CommandJournal(file);
+        journal.open();
+        enterOrderRq = EnterOrderRq.createNewOrderRq(1, Engine.ISIN, 200, LocalDateTime.now(), Side.BUY,
+                300, Engine.MID_PRICE, 1, 1, 0, 0, 0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        journal.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public void append() throws IOException {
+        journal.append(enterOrderRq);
+        if (++pending == batchSize) {
+            journal.commit();
+            pending = 0;
+        }
+    }
+}
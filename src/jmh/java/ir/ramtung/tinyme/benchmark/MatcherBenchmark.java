@@ -0,0 +1,75 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MatcherBenchmark {
+    @Param({"10", "100", "1000"})
+    int depth;
+
+    private Engine engine;
+    private Security security;
+    private Security icebergSecurity;
+    private Security sweepSecurity;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        engine = new Engine();
+
+        security = engine.newSecurity();
+        engine.fillBook(security, depth, 100);
+        security.getOrderBook().enqueue(engine.order(security, Side.SELL, Integer.MAX_VALUE / 2, Engine.MID_PRICE));
+
+        icebergSecurity = engine.newSecurity();
+        engine.fillBook(icebergSecurity, depth, 100);
+        icebergSecurity.getOrderBook().enqueue(new IcebergOrder(engine.nextOrderId(), icebergSecurity, Side.SELL,
+                Integer.MAX_VALUE / 2, Engine.MID_PRICE, engine.broker, engine.shareholder, 10));
+
+        sweepSecurity = engine.newSecurity();
+        engine.fillBook(sweepSecurity, depth, 100);
+        for (int iceberg = 0; iceberg < 2; iceberg++)
+            sweepSecurity.getOrderBook().enqueue(new IcebergOrder(engine.nextOrderId(), sweepSecurity, Side.SELL,
+                    Integer.MAX_VALUE / 4, Engine.MID_PRICE, engine.broker, engine.shareholder, 1));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public MatchResult crossingOrder() {
+        return engine.matcher.execute(engine.order(security, Side.BUY, 10, Engine.MID_PRICE));
+    }
+
+    // The order rests in the book, so it is deleted again to keep the book at its depth.
+    @Benchmark
+    public MatchResult nonCrossingOrder() {
+        Order order = engine.order(security, Side.BUY, 10, Engine.MID_PRICE - Engine.TICK / 2);
+        MatchResult result = engine.matcher.execute(order);
+        security.deleteOrder(order);
+        return result;
+    }
+
+    // Two icebergs take turns showing a single share, so every order makes a hundred fills
+    // against them; run with -prof gc to see the allocation per fill.
+    @Benchmark
+    public MatchResult hundredFills() {
+        return engine.matcher.execute(engine.order(sweepSecurity, Side.BUY, 100, Engine.MID_PRICE));
+    }
+
+    // Every order takes the whole displayed quantity of the iceberg, which is replenished
+    // and queued again.
+    @Benchmark
+    public MatchResult icebergReplenishment() {
+        return engine.matcher.execute(engine.order(icebergSecurity, Side.BUY, 10, Engine.MID_PRICE));
+    }
+}
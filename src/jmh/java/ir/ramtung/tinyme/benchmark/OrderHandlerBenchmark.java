@@ -0,0 +1,55 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderHandlerBenchmark {
+    @Param({"10", "100", "1000"})
+    int depth;
+    // Whether the book keeps its market depth, as it does when market data is published.
+    @Param({"false", "true"})
+    boolean marketDepth;
+
+    private Engine engine;
+    private long requestId;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        engine = new Engine();
+        Security security = engine.newSecurity();
+        engine.fillBook(security, depth, 100);
+        if (marketDepth)
+            security.getOrderBook().trackDepth();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        engine.close();
+    }
+
+    private EnterOrderRq newOrderRq(Side side) {
+        requestId++;
+        return EnterOrderRq.createNewOrderRq(requestId, Engine.ISIN, engine.nextOrderId(), LocalDateTime.now(), side,
+                10, Engine.MID_PRICE, engine.broker.getBrokerId(), engine.shareholder.getShareholderId(), 0);
+    }
+
+    // A sell rests at the mid price and the following buy trades with it, so the book
+    // keeps its depth and every pair goes through validation, matching and publishing.
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void enterCrossingPair() {
+        engine.orderHandler.handleEnterOrder(newOrderRq(Side.SELL));
+        engine.orderHandler.handleEnterOrder(newOrderRq(Side.BUY));
+    }
+}
@@ -0,0 +1,63 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Settling one fill's positions, as OwnershipControl does, against the map of boxed
+// positions keyed by Security that shareholders used to keep.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PositionsBenchmark {
+    private static final int SECURITIES = 300;
+
+    private final SecurityRepository securityRepository = new SecurityRepository();
+    private final Security[] securities = new Security[SECURITIES];
+    private final Shareholder buyer = Shareholder.builder().shareholderId(1).build();
+    private final Shareholder seller = Shareholder.builder().shareholderId(2).build();
+    private final Map<Security, Integer> buyerMap = new ConcurrentHashMap<>();
+    private final Map<Security, Integer> sellerMap = new ConcurrentHashMap<>();
+    private int next;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < SECURITIES; i++) {
+            securities[i] = Security.builder().isin("IR" + (2_000_000_000 + i)).build();
+            securityRepository.addSecurity(securities[i]);
+            seller.incPosition(securities[i], Integer.MAX_VALUE / 2);
+            sellerMap.put(securities[i], Integer.MAX_VALUE / 2);
+        }
+    }
+
+    private Security next() {
+        next = (next + 1) % SECURITIES;
+        return securities[next];
+    }
+
+    @Benchmark
+    public void settleMap() {
+        Security security = next();
+        buyerMap.put(security, buyerMap.getOrDefault(security, 0) + 100);
+        int current = sellerMap.getOrDefault(security, 0);
+        if (current < 100)
+            throw new IllegalStateException();
+        sellerMap.put(security, current - 100 + 100);
+    }
+
+    @Benchmark
+    public void settlePositions() {
+        Security security = next();
+        buyer.incPosition(security, 100);
+        seller.decPosition(security, 100);
+        seller.incPosition(security, 100);
+    }
+}
@@ -0,0 +1,79 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+// Looking up the entities a request names: the repositories against the boxed-key HashMaps
+// they used to be. Ids are past the Long cache, so the HashMap lookups box a new key.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RepositoryBenchmark {
+    private static final int ENTITIES = 1000;
+    private static final long FIRST_ID = 10_000;
+
+    private final BrokerRepository brokerRepository = new BrokerRepository();
+    private final HashMap<Long, Broker> brokerById = new HashMap<>();
+    private final SecurityRepository securityRepository = new SecurityRepository();
+    private final HashMap<String, Security> securityByIsin = new HashMap<>();
+    private final long[] brokerIds = new long[ENTITIES];
+    private final String[] isins = new String[ENTITIES];
+    private final int[] securityIds = new int[ENTITIES];
+    private int next;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < ENTITIES; i++) {
+            Broker broker = Broker.builder().brokerId(FIRST_ID + i).build();
+            brokerRepository.addBroker(broker);
+            brokerById.put(broker.getBrokerId(), broker);
+            brokerIds[i] = broker.getBrokerId();
+
+            Security security = Security.builder().isin("IR" + (1_000_000_000 + i)).build();
+            securityRepository.addSecurity(security);
+            securityByIsin.put(security.getIsin(), security);
+            // Equal to the ISIN but not the same string, as decoding a request gives.
+            isins[i] = new String(security.getIsin().toCharArray());
+            securityIds[i] = security.getId();
+        }
+    }
+
+    private int next() {
+        next = (next + 1) % ENTITIES;
+        return next;
+    }
+
+    @Benchmark
+    public Broker brokerByIdHashMap() {
+        return brokerById.get(brokerIds[next()]);
+    }
+
+    @Benchmark
+    public Broker brokerByIdRepository() {
+        return brokerRepository.findBrokerById(brokerIds[next()]);
+    }
+
+    @Benchmark
+    public Security securityByIsinHashMap() {
+        return securityByIsin.get(isins[next()]);
+    }
+
+    @Benchmark
+    public Security securityByIsinRepository() {
+        return securityRepository.findSecurityByIsin(isins[next()]);
+    }
+
+    @Benchmark
+    public Security securityById() {
+        return securityRepository.findSecurityById(securityIds[next()]);
+    }
+}
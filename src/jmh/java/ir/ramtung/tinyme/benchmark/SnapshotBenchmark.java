@@ -0,0 +1,58 @@
+package ir.ramtung.tinyme.benchmark;
+
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.repository.SnapshotStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// The pause to copy a book of resting orders, and the time to write it and to load it back.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+    @Param({"100000"})
+    private int orders;
+
+    private Engine engine;
+    private Path file;
+    private SnapshotStore snapshotStore;
+
+    @Setup
+    public void setup() throws IOException {
+        engine = new Engine();
+        Security security = engine.newSecurity();
+        engine.fillBook(security, orders / 2, 100);
+        file = Files.createTempFile("snapshot", ".bin");
+        snapshotStore = new SnapshotStore(engine.brokerRepository, engine.shareholderRepository, engine.securityRepository, file);
+        snapshotStore.write(snapshotStore.capture(0));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        engine.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ByteBuffer capture() {
+        return snapshotStore.capture(0);
+    }
+
+    @Benchmark
+    public void captureAndWrite() throws IOException {
+        snapshotStore.write(snapshotStore.capture(0));
+    }
+
+    @Benchmark
+    public long load() throws IOException {
+        return snapshotStore.load();
+    }
+}
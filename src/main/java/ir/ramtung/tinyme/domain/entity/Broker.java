@@ -5,24 +5,57 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 @Getter
 @ToString
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 @Builder
 public class Broker {
+    // Brokers trade in securities of every shard, so credit only changes atomically: by adds,
+    // or by a compare-and-set that reserves an amount only if the credit still covers it.
+    private static final VarHandle CREDIT;
+    static {
+        try {
+            CREDIT = MethodHandles.lookup().findVarHandle(Broker.class, "credit", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     @EqualsAndHashCode.Include
     private long brokerId;
     private String name;
-    private long credit;
+    private volatile long credit;
 
     public void increaseCreditBy(long amount) {
         assert amount >= 0;
-        credit += amount;
+        CREDIT.getAndAdd(this, amount);
     }
 
     public void decreaseCreditBy(long amount) {
         assert amount >= 0;
-        credit -= amount;
+        CREDIT.getAndAdd(this, -amount);
+    }
+
+    // Takes the amount out of the credit if it is there; the caller keeps it, or gives it back
+    // with releaseCredit. Unlike hasEnoughCredit followed by decreaseCreditBy, no other shard
+    // can spend the same credit in between.
+    public boolean tryReserveCredit(long amount) {
+        assert amount >= 0;
+        long current = credit;
+        while (current >= amount) {
+            long witness = (long) CREDIT.compareAndExchange(this, current, current - amount);
+            if (witness == current)
+                return true;
+            current = witness;
+        }
+        return false;
+    }
+
+    public void releaseCredit(long amount) {
+        increaseCreditBy(amount);
     }
 
     public boolean hasEnoughCredit(long amount) {
@@ -0,0 +1,7 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.List;
+
+// The orders a mass cancel removed and the credit their buy orders gave back to the brokers.
+public record CancelResult(List<Order> cancelledOrders, long releasedCredit) {
+}
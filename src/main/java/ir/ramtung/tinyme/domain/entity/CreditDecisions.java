@@ -0,0 +1,83 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.Arrays;
+
+/**
+ * The outcomes of the credit checks one request makes, in the order it makes them. Brokers are
+ * shared by the shards, so whether a check passes depends on what the other shards spent
+ * before it; the journal keeps the outcomes ahead of the request, and replay takes them from
+ * here instead of asking the broker again, so that it ends with the credits and books of the
+ * live run. Unless recording or replaying, every check just goes to the broker.
+ */
+public class CreditDecisions {
+    private enum Mode { OFF, RECORDING, REPLAYING }
+
+    private long[] outcomes = new long[1];
+    private int size;
+    private int next;
+    private Mode mode = Mode.OFF;
+
+    // Starts recording the checks of the next request.
+    public void record() {
+        mode = Mode.RECORDING;
+        clear();
+    }
+
+    // Makes the checks of the next request take the journaled outcomes, in order.
+    public void replay(CreditDecisions journaled) {
+        copyFrom(journaled);
+        mode = Mode.REPLAYING;
+        next = 0;
+    }
+
+    public boolean isReplaying() {
+        return mode == Mode.REPLAYING;
+    }
+
+    // The journaled outcome of the next check.
+    public boolean next() {
+        if (next == size)
+            throw new IllegalStateException("The request makes more credit checks than were journaled");
+        return outcome(next++);
+    }
+
+    // Called with the outcome of a check made on the broker; returns it.
+    public boolean decided(boolean outcome) {
+        if (mode == Mode.RECORDING)
+            add(outcome);
+        return outcome;
+    }
+
+    public void add(boolean outcome) {
+        if (size == outcomes.length * Long.SIZE)
+            outcomes = Arrays.copyOf(outcomes, outcomes.length * 2);
+        if (outcome)
+            outcomes[size / Long.SIZE] |= 1L << size;
+        else
+            outcomes[size / Long.SIZE] &= ~(1L << size);
+        size++;
+    }
+
+    public boolean outcome(int index) {
+        return (outcomes[index / Long.SIZE] & 1L << index) != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void copyFrom(CreditDecisions other) {
+        if (outcomes.length < other.outcomes.length)
+            outcomes = new long[other.outcomes.length];
+        System.arraycopy(other.outcomes, 0, outcomes, 0, other.outcomes.length);
+        size = other.size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
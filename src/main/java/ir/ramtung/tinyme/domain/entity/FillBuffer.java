@@ -0,0 +1,154 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * The fills of one matching, kept in parallel arrays. Fills refer to the live orders and
+ * remember the quantity each order had just before the fill, which is all that is needed
+ * to build the {@link Trade} snapshots later, if anyone asks for them. Each {@link #clear}
+ * starts a new generation, so that results lent the buffer can tell it has been reused.
+ */
+public class FillBuffer {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] prices;
+    private int[] quantities;
+    private int[] buyQuantities;
+    private int[] sellQuantities;
+    private Order[] buys;
+    private Order[] sells;
+    private int size;
+    private int generation;
+
+    public FillBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private FillBuffer(int capacity) {
+        prices = new int[capacity];
+        quantities = new int[capacity];
+        buyQuantities = new int[capacity];
+        sellQuantities = new int[capacity];
+        buys = new Order[capacity];
+        sells = new Order[capacity];
+    }
+
+    public static FillBuffer empty() {
+        return new FillBuffer(0);
+    }
+
+    public static FillBuffer of(Iterable<Trade> trades) {
+        FillBuffer fills = new FillBuffer();
+        for (Trade trade : trades)
+            fills.add(trade.getPrice(), trade.getQuantity(), trade.getBuy(), trade.getSell());
+        return fills;
+    }
+
+    public int add(int price, int quantity, Order order1, Order order2) {
+        if (size == prices.length)
+            grow();
+        prices[size] = price;
+        quantities[size] = quantity;
+        Order buy = order1.getSide() == Side.BUY ? order1 : order2;
+        Order sell = order1.getSide() == Side.BUY ? order2 : order1;
+        buys[size] = buy;
+        sells[size] = sell;
+        buyQuantities[size] = buy.getTotalQuantity();
+        sellQuantities[size] = sell.getTotalQuantity();
+        return size++;
+    }
+
+    public void removeLast() {
+        size--;
+        buys[size] = null;
+        sells[size] = null;
+    }
+
+    public void clear() {
+        Arrays.fill(buys, 0, size, null);
+        Arrays.fill(sells, 0, size, null);
+        size = 0;
+        generation++;
+    }
+
+    public int generation() {
+        return generation;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int price(int fill) {
+        return prices[fill];
+    }
+
+    public int quantity(int fill) {
+        return quantities[fill];
+    }
+
+    public Order buy(int fill) {
+        return buys[fill];
+    }
+
+    public Order sell(int fill) {
+        return sells[fill];
+    }
+
+    public long value(int fill) {
+        return (long) prices[fill] * quantities[fill];
+    }
+
+    public long totalValue() {
+        long value = 0;
+        for (int fill = 0; fill < size; fill++)
+            value += value(fill);
+        return value;
+    }
+
+    public Order buySnapshot(int fill) {
+        return buys[fill].snapshotWithQuantity(buyQuantities[fill]);
+    }
+
+    public Order sellSnapshot(int fill) {
+        return sells[fill].snapshotWithQuantity(sellQuantities[fill]);
+    }
+
+    public Trade trade(int fill) {
+        return new Trade(buys[fill].getSecurity(), prices[fill], quantities[fill], buySnapshot(fill), sellSnapshot(fill));
+    }
+
+    public LinkedList<Trade> trades() {
+        LinkedList<Trade> trades = new LinkedList<>();
+        for (int fill = 0; fill < size; fill++)
+            trades.add(trade(fill));
+        return trades;
+    }
+
+    public FillBuffer copy() {
+        FillBuffer copy = new FillBuffer(size);
+        System.arraycopy(prices, 0, copy.prices, 0, size);
+        System.arraycopy(quantities, 0, copy.quantities, 0, size);
+        System.arraycopy(buyQuantities, 0, copy.buyQuantities, 0, size);
+        System.arraycopy(sellQuantities, 0, copy.sellQuantities, 0, size);
+        System.arraycopy(buys, 0, copy.buys, 0, size);
+        System.arraycopy(sells, 0, copy.sells, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    private void grow() {
+        int capacity = Math.max(INITIAL_CAPACITY, prices.length * 2);
+        prices = Arrays.copyOf(prices, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        buyQuantities = Arrays.copyOf(buyQuantities, capacity);
+        sellQuantities = Arrays.copyOf(sellQuantities, capacity);
+        buys = Arrays.copyOf(buys, capacity);
+        sells = Arrays.copyOf(sells, capacity);
+    }
+}
@@ -62,12 +62,12 @@ public class IcebergOrder extends Order {
 
     @Override
     public Order snapshot() {
-        return new IcebergOrder(orderId, security, side, initialQuantity, quantity, price, broker, shareholder, entryTime, peakSize, OrderStatus.SNAPSHOT, minimumExecutionQuantity);
+        return new IcebergOrder(orderId, security, side, initialQuantity, quantity, price, broker, shareholder, getEntryTime(), peakSize, OrderStatus.SNAPSHOT, minimumExecutionQuantity);
     }
 
     @Override
     public Order snapshotWithQuantity(int newQuantity) {
-        return new IcebergOrder(orderId, security, side, initialQuantity, newQuantity, price, broker, shareholder, entryTime, peakSize, OrderStatus.SNAPSHOT, minimumExecutionQuantity);
+        return new IcebergOrder(orderId, security, side, initialQuantity, newQuantity, price, broker, shareholder, getEntryTime(), peakSize, OrderStatus.SNAPSHOT, minimumExecutionQuantity);
     }
 
     @Override
@@ -89,6 +89,12 @@ public class IcebergOrder extends Order {
         displayedQuantity -= amount;
     }
 
+    @Override
+    void restoreQuantity(int quantity, int visibleQuantity) {
+        super.restoreQuantity(quantity, visibleQuantity);
+        displayedQuantity = visibleQuantity;
+    }
+
     public void replenish() {
         displayedQuantity = Math.min(quantity, peakSize);
     }
@@ -0,0 +1,45 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives every ISIN a small id, counting up from zero in the order the ISINs are first seen,
+ * so that per-security data can live in arrays indexed by {@link Security#getId()} instead of
+ * maps keyed by strings. Each security repository owns one and registers its securities
+ * here; ids are never reused, so they stay valid when the repository is cleared and loaded
+ * again.
+ */
+public class IsinTable {
+    private final ConcurrentHashMap<String, Integer> idByIsin = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    public int intern(String isin) {
+        Integer id = idByIsin.get(key(isin));
+        if (id != null)
+            return id;
+        return idByIsin.computeIfAbsent(key(isin), ignored -> nextId.getAndIncrement());
+    }
+
+    // Gives the security the id of its ISIN, in place of any it had.
+    public int register(Security security) {
+        int id = intern(security.getIsin());
+        security.setId(id);
+        return id;
+    }
+
+    // The id of an ISIN seen before, or -1; unlike intern, unknown ISINs are not added.
+    public int find(String isin) {
+        Integer id = idByIsin.get(key(isin));
+        return id == null ? -1 : id;
+    }
+
+    public int size() {
+        return nextId.get();
+    }
+
+    // Securities built without an ISIN share the id of the empty one.
+    private static String key(String isin) {
+        return isin == null ? "" : isin;
+    }
+}
@@ -0,0 +1,77 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import ir.ramtung.tinyme.util.LongHashMap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The visible quantity and the number of orders at each price of a book, kept by the book as
+ * its orders are queued, traded and removed, together with the levels changed since the last
+ * {@link #drain}. A level changed many times between two drains is drained once, as it is at
+ * the time; a level drained with no orders is gone. Each drain that finds changes takes the
+ * next sequence number.
+ * <p>
+ * The book changes the depth on its own thread and market data reads it on another. Readers
+ * that need several reads to agree hold the lock of the depth over them.
+ */
+public class MarketDepth {
+    public record Level(Side side, int price, int quantity, int orders) {
+    }
+
+    private static final int SIDE = 0;
+    private static final int PRICE = 1;
+    private static final int QUANTITY = 2;
+    private static final int ORDERS = 3;
+
+    private final TreeMap<Integer, int[]> bids = new TreeMap<>(Comparator.reverseOrder());
+    private final TreeMap<Integer, int[]> asks = new TreeMap<>();
+    private final LongHashMap<int[]> changed = new LongHashMap<>();
+    private long sequence;
+
+    synchronized void change(Side side, int price, int quantity, int orders) {
+        TreeMap<Integer, int[]> levels = side == Side.BUY ? bids : asks;
+        int[] level = levels.get(price);
+        if (level == null) {
+            level = new int[] {side.ordinal(), price, 0, 0};
+            levels.put(price, level);
+        }
+        level[QUANTITY] += quantity;
+        level[ORDERS] += orders;
+        if (level[ORDERS] == 0)
+            levels.remove(price);
+        changed.put((long) side.ordinal() << 32 | (price & 0xffffffffL), level);
+    }
+
+    // Adds the levels changed since the last drain to updates and returns the sequence number
+    // they make up, which is the last one again when nothing changed.
+    public synchronized long drain(List<Level> updates) {
+        if (changed.isEmpty())
+            return sequence;
+        for (int[] level : changed.values())
+            updates.add(toLevel(level));
+        changed.clear();
+        return ++sequence;
+    }
+
+    public synchronized long sequence() {
+        return sequence;
+    }
+
+    // The best levels of a side, at most count of them, in priority order.
+    public synchronized List<Level> levels(Side side, int count) {
+        List<Level> levels = new ArrayList<>(count);
+        for (int[] level : (side == Side.BUY ? bids : asks).values()) {
+            if (levels.size() == count)
+                break;
+            levels.add(toLevel(level));
+        }
+        return levels;
+    }
+
+    private static Level toLevel(int[] level) {
+        return new Level(Side.values()[level[SIDE]], level[PRICE], level[QUANTITY], level[ORDERS]);
+    }
+}
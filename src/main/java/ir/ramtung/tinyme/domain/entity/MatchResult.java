@@ -7,43 +7,52 @@ import java.util.Objects;
 public final class MatchResult {
     private final MatchingOutcome outcome;
     private final Order remainder;
-    private final LinkedList<Trade> trades;
+    private FillBuffer fills;
+    private int generation;
+    private LinkedList<Trade> trades;
 
     public static MatchResult executed(Order remainder, List<Trade> trades) {
-        return new MatchResult(MatchingOutcome.OK, remainder, new LinkedList<>(trades));
+        return new MatchResult(MatchingOutcome.OK, remainder, FillBuffer.of(trades));
+    }
+
+    // Lends the result the fill buffer of the security, which the next match there reuses;
+    // a result needed after that must be kept.
+    public static MatchResult executed(Order remainder, FillBuffer fills) {
+        return new MatchResult(MatchingOutcome.OK, remainder, fills);
     }
 
     public static MatchResult notActivatable() {
-        return new MatchResult(MatchingOutcome.NOT_ACTIVATABLE, null, new LinkedList<>());
+        return new MatchResult(MatchingOutcome.NOT_ACTIVATABLE, null, FillBuffer.empty());
     }
 
     public static MatchResult notEnoughCredit() {
-        return new MatchResult(MatchingOutcome.NOT_ENOUGH_CREDIT, null, new LinkedList<>());
+        return new MatchResult(MatchingOutcome.NOT_ENOUGH_CREDIT, null, FillBuffer.empty());
     }
     public static MatchResult notEnoughPositions() {
-        return new MatchResult(MatchingOutcome.NOT_ENOUGH_POSITIONS, null, new LinkedList<>());
+        return new MatchResult(MatchingOutcome.NOT_ENOUGH_POSITIONS, null, FillBuffer.empty());
     }
 
     public static MatchResult notEnoughExecutionQuantity() {
-        return new MatchResult(MatchingOutcome.MINIMUM_QUANTITY_NOT_SATISFIED, null, new LinkedList<>());
+        return new MatchResult(MatchingOutcome.MINIMUM_QUANTITY_NOT_SATISFIED, null, FillBuffer.empty());
     }
 
     public static MatchResult notEqualMinimumExecutionQuantity() {
-        return new MatchResult(MatchingOutcome.NOT_EQUAL_MINIMUM_EXECUTION_QUANTITY, null, new LinkedList<>());
+        return new MatchResult(MatchingOutcome.NOT_EQUAL_MINIMUM_EXECUTION_QUANTITY, null, FillBuffer.empty());
     }
 
     public static MatchResult queuedDuringAuctionState() {
-        return new MatchResult(MatchingOutcome.QUEUED_DURING_AUCTION_STATE, null, new LinkedList<>());
+        return new MatchResult(MatchingOutcome.QUEUED_DURING_AUCTION_STATE, null, FillBuffer.empty());
     }
 
-    private MatchResult(MatchingOutcome outcome, Order remainder, LinkedList<Trade> trades) {
+    private MatchResult(MatchingOutcome outcome, Order remainder, FillBuffer fills) {
         this.outcome = outcome;
         this.remainder = remainder;
-        this.trades = trades;
+        this.fills = fills;
+        this.generation = fills.generation();
     }
 
     public MatchResult(MatchingOutcome outcome, Order remainder) {
-        this(outcome, remainder, new LinkedList<>());
+        this(outcome, remainder, FillBuffer.empty());
     }
 
     public MatchingOutcome outcome() {
@@ -53,29 +62,44 @@ public final class MatchResult {
         return remainder;
     }
 
+    public FillBuffer fills() {
+        if (fills.generation() != generation)
+            throw new IllegalStateException("The fills of this result were reused by a later match");
+        return fills;
+    }
+
     public LinkedList<Trade> trades() {
+        if (trades == null)
+            trades = fills().trades();
         return trades;
     }
 
+    // Copies the fills out of the buffer they were lent, so they outlive the next match.
+    public MatchResult keep() {
+        fills = fills().copy();
+        generation = fills.generation();
+        return this;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) return true;
         if (obj == null || obj.getClass() != this.getClass()) return false;
         var that = (MatchResult) obj;
         return Objects.equals(this.remainder, that.remainder) &&
-                Objects.equals(this.trades, that.trades);
+                Objects.equals(this.trades(), that.trades());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(remainder, trades);
+        return Objects.hash(remainder, trades());
     }
 
     @Override
     public String toString() {
         return "MatchResult[" +
                 "remainder=" + remainder + ", " +
-                "trades=" + trades + ']';
+                "trades=" + trades() + ']';
     }
 
 
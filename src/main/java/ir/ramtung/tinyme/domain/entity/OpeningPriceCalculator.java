@@ -0,0 +1,236 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.SplittableRandom;
+
+/**
+ * Buy and sell depth of the regular queues per price, kept in a treap whose nodes also
+ * hold the depth of their subtrees. The book reports every quantity change, and the
+ * opening price and the quantity tradable at a price are found in O(log levels).
+ */
+class OpeningPriceCalculator {
+    private static final class Node {
+        final int price;
+        final int priority;
+        int orders;
+        int buyQuantity;
+        int sellQuantity;
+        int buySum;
+        int sellSum;
+        Node left;
+        Node right;
+
+        Node(int price, int priority) {
+            this.price = price;
+            this.priority = priority;
+        }
+    }
+
+    // Priorities are drawn at random from a generator seeded per book, so that no pattern of
+    // prices can unbalance the tree; the book is written by one thread at a time.
+    private final SplittableRandom priorities = new SplittableRandom();
+    private Node root;
+
+    void add(Side side, int price, int quantity) {
+        root = update(root, side, price, quantity, 1);
+    }
+
+    void remove(Side side, int price, int quantity) {
+        root = update(root, side, price, -quantity, -1);
+    }
+
+    void change(Side side, int price, int delta) {
+        if (delta != 0)
+            root = update(root, side, price, delta, 0);
+    }
+
+    int buyQuantityAtOrAbove(int price) {
+        int quantity = 0;
+        for (Node node = root; node != null; ) {
+            if (node.price >= price) {
+                quantity += buySum(node.right) + node.buyQuantity;
+                node = node.left;
+            } else
+                node = node.right;
+        }
+        return quantity;
+    }
+
+    int sellQuantityAtOrBelow(int price) {
+        int quantity = 0;
+        for (Node node = root; node != null; ) {
+            if (node.price <= price) {
+                quantity += sellSum(node.left) + node.sellQuantity;
+                node = node.right;
+            } else
+                node = node.left;
+        }
+        return quantity;
+    }
+
+    int tradableQuantity(int price) {
+        return Math.min(buyQuantityAtOrAbove(price), sellQuantityAtOrBelow(price));
+    }
+
+    // Candidates are the prices of the queued orders and the market price. Below the first
+    // price where sells catch up with buys the tradable quantity is the sell depth, which
+    // only grows; from there on it is the buy depth, which only shrinks. So the best prices
+    // form one range [lo, hi], and the one closest to the market price is picked from it.
+    int openingPrice(int marketPrice) {
+        if (root == null)
+            return 0;
+        Node crossing = firstCrossing();
+        Node beforeCrossing = crossing == null ? last() : lower(crossing.price);
+        int best = Math.max(
+                beforeCrossing == null ? 0 : sellQuantityAtOrBelow(beforeCrossing.price),
+                crossing == null ? 0 : buyQuantityAtOrAbove(crossing.price));
+        if (best == 0)
+            return 0;
+        int lo = firstWithSellQuantity(best).price;
+        int hi = lastWithBuyQuantity(best).price;
+        return Math.max(lo, Math.min(hi, marketPrice));
+    }
+
+    private Node firstCrossing() {
+        Node crossing = null;
+        int totalBuy = root.buySum;
+        int sellBefore = 0;
+        int buyBefore = 0;
+        for (Node node = root; node != null; ) {
+            int sell = sellBefore + sellSum(node.left) + node.sellQuantity;
+            int buyBelow = buyBefore + buySum(node.left);
+            if (sell + buyBelow >= totalBuy) {
+                crossing = node;
+                node = node.left;
+            } else {
+                sellBefore = sell;
+                buyBefore = buyBelow + node.buyQuantity;
+                node = node.right;
+            }
+        }
+        return crossing;
+    }
+
+    private Node firstWithSellQuantity(int quantity) {
+        Node found = null;
+        int sellBefore = 0;
+        for (Node node = root; node != null; ) {
+            int sell = sellBefore + sellSum(node.left) + node.sellQuantity;
+            if (sell >= quantity) {
+                found = node;
+                node = node.left;
+            } else {
+                sellBefore = sell;
+                node = node.right;
+            }
+        }
+        return found;
+    }
+
+    private Node lastWithBuyQuantity(int quantity) {
+        Node found = null;
+        int buyAfter = 0;
+        for (Node node = root; node != null; ) {
+            int buy = buyAfter + buySum(node.right) + node.buyQuantity;
+            if (buy >= quantity) {
+                found = node;
+                node = node.right;
+            } else {
+                buyAfter = buy;
+                node = node.left;
+            }
+        }
+        return found;
+    }
+
+    private Node lower(int price) {
+        Node found = null;
+        for (Node node = root; node != null; ) {
+            if (node.price < price) {
+                found = node;
+                node = node.right;
+            } else
+                node = node.left;
+        }
+        return found;
+    }
+
+    private Node last() {
+        Node node = root;
+        while (node.right != null)
+            node = node.right;
+        return node;
+    }
+
+    private Node update(Node node, Side side, int price, int quantity, int orders) {
+        if (node == null) {
+            node = new Node(price, priorities.nextInt());
+            apply(node, side, quantity, orders);
+        } else if (price < node.price) {
+            node.left = update(node.left, side, price, quantity, orders);
+            if (node.left != null && node.left.priority > node.priority)
+                node = rotateRight(node);
+        } else if (price > node.price) {
+            node.right = update(node.right, side, price, quantity, orders);
+            if (node.right != null && node.right.priority > node.priority)
+                node = rotateLeft(node);
+        } else {
+            apply(node, side, quantity, orders);
+            if (node.orders == 0)
+                return merge(node.left, node.right);
+        }
+        pull(node);
+        return node;
+    }
+
+    private static void apply(Node node, Side side, int quantity, int orders) {
+        if (side == Side.BUY)
+            node.buyQuantity += quantity;
+        else
+            node.sellQuantity += quantity;
+        node.orders += orders;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            pull(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        pull(right);
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        pull(node);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        pull(node);
+        return right;
+    }
+
+    private static void pull(Node node) {
+        node.buySum = buySum(node.left) + node.buyQuantity + buySum(node.right);
+        node.sellSum = sellSum(node.left) + node.sellQuantity + sellSum(node.right);
+    }
+
+    private static int buySum(Node node) {
+        return node == null ? 0 : node.buySum;
+    }
+
+    private static int sellSum(Node node) {
+        return node == null ? 0 : node.sellSum;
+    }
+}
@@ -2,17 +2,17 @@ package ir.ramtung.tinyme.domain.entity;
 
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import lombok.*;
-import org.springframework.http.server.DelegatingServerHttpResponse;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
-import static java.lang.Double.POSITIVE_INFINITY;
-
-@Builder
 @EqualsAndHashCode
 @ToString
 @Getter
 public class Order {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NO_ENTRY_TIME = Long.MIN_VALUE;
+
     protected long orderId;
     protected Security security;
     protected Side side;
@@ -21,12 +21,55 @@ public class Order {
     protected int price;
     protected Broker broker;
     protected Shareholder shareholder;
-    @Builder.Default
-    protected LocalDateTime entryTime = LocalDateTime.now();
+    // The entry time as nanoseconds since the epoch in UTC, as a LocalDateTime would take
+    // three more objects for every resting order.
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    protected long entryNanos;
     @Setter
-    @Builder.Default
     protected OrderStatus status = OrderStatus.NEW;
     protected int minimumExecutionQuantity = 0;
+    // Where the order rests in its book: its price level, its neighbours there, and the
+    // quantities the book has counted and shown for it. They live on the order so that resting takes no
+    // node of its own, and are left out of equality; level is null while not queued.
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    PriceLevel level;
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Order previous;
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Order next;
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    int countedQuantity;
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    int shownQuantity;
+    // Its neighbours among the orders of the same broker and of the same shareholder in the
+    // book, which cancels all of them without a scan.
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Order brokerPrevious;
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Order brokerNext;
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Order shareholderPrevious;
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Order shareholderNext;
 
     public Order(long orderId, Security security, Side side,int initialQuantity, int quantity, int price, Broker broker, Shareholder shareholder, LocalDateTime entryTime, OrderStatus status, int minimumExecutionQuantity) {
         this.orderId = orderId;
@@ -35,7 +78,7 @@ public class Order {
         this.initialQuantity = initialQuantity;
         this.quantity = quantity;
         this.price = price;
-        this.entryTime = entryTime;
+        this.entryNanos = toNanos(entryTime);
         this.broker = broker;
         this.shareholder = shareholder;
         this.status = status;
@@ -49,7 +92,7 @@ public class Order {
         this.quantity = quantity;
         this.initialQuantity = quantity;
         this.price = price;
-        this.entryTime = entryTime;
+        this.entryNanos = toNanos(entryTime);
         this.broker = broker;
         this.shareholder = shareholder;
         this.status = status;
@@ -77,11 +120,25 @@ public class Order {
     }
 
     public Order snapshot() {
-        return new Order(orderId, security, side, initialQuantity, quantity, price, broker, shareholder, entryTime, OrderStatus.SNAPSHOT, minimumExecutionQuantity);
+        return new Order(orderId, security, side, initialQuantity, quantity, price, broker, shareholder, getEntryTime(), OrderStatus.SNAPSHOT, minimumExecutionQuantity);
     }
 
     public Order snapshotWithQuantity(int newQuantity) {
-        return new Order(orderId, security, side, initialQuantity, newQuantity, price, broker, shareholder, entryTime, OrderStatus.SNAPSHOT, minimumExecutionQuantity);
+        return new Order(orderId, security, side, initialQuantity, newQuantity, price, broker, shareholder, getEntryTime(), OrderStatus.SNAPSHOT, minimumExecutionQuantity);
+    }
+
+    @ToString.Include(name = "entryTime")
+    public LocalDateTime getEntryTime() {
+        if (entryNanos == NO_ENTRY_TIME)
+            return null;
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(entryNanos, NANOS_PER_SECOND),
+                (int) Math.floorMod(entryNanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+
+    private static long toNanos(LocalDateTime time) {
+        if (time == null)
+            return NO_ENTRY_TIME;
+        return Math.addExact(Math.multiplyExact(time.toEpochSecond(ZoneOffset.UTC), NANOS_PER_SECOND), time.getNano());
     }
 
     public boolean matches(Order other) {
@@ -104,6 +161,10 @@ public class Order {
         quantity -= amount;
     }
 
+    void restoreQuantity(int quantity, int visibleQuantity) {
+        this.quantity = quantity;
+    }
+
     public void makeQuantityZero() {
         quantity = 0;
     }
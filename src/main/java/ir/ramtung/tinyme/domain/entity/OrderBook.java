@@ -1,107 +1,294 @@
 package ir.ramtung.tinyme.domain.entity;
 
-import lombok.Getter;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.util.LongHashMap;
 
 import java.util.*;
+import java.util.function.Consumer;
 
-@Getter
 public class OrderBook {
-    private final LinkedList<Order> buyQueue;
-    private final LinkedList<Order> sellQueue;
-    private final LinkedList<Order> stopBuyQueue;
-    private final LinkedList<Order> stopSellQueue;
+    private final OrderQueue buyQueue;
+    private final OrderQueue sellQueue;
+    private final OrderQueue stopBuyQueue;
+    private final OrderQueue stopSellQueue;
+    private final LongHashMap<Order> buyIndex;
+    private final LongHashMap<Order> sellIndex;
+    private final LongHashMap<int[]> buyShadowed;
+    private final LongHashMap<int[]> sellShadowed;
+    private final Map<Shareholder, int[]> sellQuantityByShareholder;
+    private final Map<Broker, Order> firstByBroker;
+    private final Map<Shareholder, Order> firstByShareholder;
+    private final OpeningPriceCalculator openingPriceCalculator;
+    private MarketDepth depth;
 
     public OrderBook() {
-        buyQueue = new LinkedList<>();
-        sellQueue = new LinkedList<>();
-        stopBuyQueue = new LinkedList<>();
-        stopSellQueue = new LinkedList<>();
+        buyQueue = OrderQueue.of(Side.BUY);
+        sellQueue = OrderQueue.of(Side.SELL);
+        stopBuyQueue = OrderQueue.ofStops(Side.BUY);
+        stopSellQueue = OrderQueue.ofStops(Side.SELL);
+        buyIndex = new LongHashMap<>();
+        sellIndex = new LongHashMap<>();
+        buyShadowed = new LongHashMap<>();
+        sellShadowed = new LongHashMap<>();
+        sellQuantityByShareholder = new HashMap<>();
+        firstByBroker = new HashMap<>();
+        firstByShareholder = new HashMap<>();
+        openingPriceCalculator = new OpeningPriceCalculator();
     }
 
     public void enqueue(Order order) {
-        List<Order> queue = getQueue(order.getSide(), order instanceof StopLimitOrder);
-        ListIterator<Order> it = queue.listIterator();
-        while (it.hasNext()) {
-            if (order.queuesBefore(it.next())) {
-                it.previous();
-                break;
-            }
-        }
+        assert !isQueued(order);
         order.queue();
-        it.add(order);
+        getQueue(order).add(order);
+        link(order);
     }
 
-    private LinkedList<Order> getQueue(Side side) {
-        return side == Side.BUY ? buyQueue : sellQueue;
+    private OrderQueue getQueue(Order order) {
+        return getQueue(order.getSide(), order instanceof StopLimitOrder);
     }
 
-    private LinkedList<Order> getQueue(Side side, boolean stop) {
-        return side == Side.BUY ? stop ? stopBuyQueue : buyQueue :
-                                  stop ? stopSellQueue : sellQueue;
+    private LongHashMap<Order> getIndex(Side side) {
+        return side == Side.BUY ? buyIndex : sellIndex;
     }
 
-    private ListIterator<Order> exploreQueue(LinkedList<Order> queue, long orderId) {
-        var it = queue.listIterator();
-        while (it.hasNext()) {
-            if (it.next().getOrderId() == orderId) {
-                return it;
+    private LongHashMap<int[]> getShadowed(Side side) {
+        return side == Side.BUY ? buyShadowed : sellShadowed;
+    }
+
+    // The index holds one order per id and side. When the same id is queued twice, the
+    // order in the regular queue wins, as it would in a front-to-back search; the other
+    // one stays "shadowed" and is looked up again once the indexed order leaves the book.
+    // Shadowed orders are counted per id, so only the ids queued twice pay for the search.
+    private void link(Order order) {
+        if (isCounted(order)) {
+            order.countedQuantity = order.getTotalQuantity();
+            openingPriceCalculator.add(order.getSide(), order.level.getPrice(), order.countedQuantity);
+            if (order.getSide() == Side.SELL)
+                addSellQuantity(order.getShareholder(), order.countedQuantity);
+            if (depth != null) {
+                order.shownQuantity = order.getQuantity();
+                depth.change(order.getSide(), order.level.getPrice(), order.shownQuantity, 1);
             }
         }
-        return null;
+        linkOwners(order);
+        var index = getIndex(order.getSide());
+        var indexed = index.get(order.getOrderId());
+        if (indexed == null) {
+            index.put(order.getOrderId(), order);
+            return;
+        }
+        shadow(order.getSide(), order.getOrderId());
+        if (indexed instanceof StopLimitOrder && !(order instanceof StopLimitOrder))
+            index.put(order.getOrderId(), order);
     }
 
-    private ListIterator<Order> findOrderIteratorById(Side side, long orderId) {
-        var it = exploreQueue(getQueue(side), orderId);
-        if (it != null) {
-            return it;
+    private void unlink(Order order) {
+        if (isCounted(order)) {
+            openingPriceCalculator.remove(order.getSide(), order.level.getPrice(), order.countedQuantity);
+            if (order.getSide() == Side.SELL)
+                addSellQuantity(order.getShareholder(), -order.countedQuantity);
+            if (depth != null)
+                depth.change(order.getSide(), order.level.getPrice(), -order.shownQuantity, -1);
+        }
+        getQueue(order).remove(order);
+        unlinkOwners(order);
+        var index = getIndex(order.getSide());
+        if (index.get(order.getOrderId()) != order) {
+            unshadow(order.getSide(), order.getOrderId());
+            return;
+        }
+        index.remove(order.getOrderId());
+        if (getShadowed(order.getSide()).containsKey(order.getOrderId())) {
+            var shadowed = getQueue(order.getSide()).findByOrderId(order.getOrderId());
+            if (shadowed == null)
+                shadowed = getQueue(order.getSide(), true).findByOrderId(order.getOrderId());
+            index.put(order.getOrderId(), shadowed);
+            unshadow(order.getSide(), order.getOrderId());
         }
-        return exploreQueue(getQueue(side, true), orderId);
     }
 
-    public Order findByOrderId(Side side, long orderId) {
-        var it = findOrderIteratorById(side, orderId);
-        if (it != null){
-            it.previous();
-            return it.next();
+    private void shadow(Side side, long orderId) {
+        var shadowed = getShadowed(side);
+        int[] count = shadowed.get(orderId);
+        if (count == null)
+            shadowed.put(orderId, count = new int[1]);
+        count[0]++;
+    }
+
+    private void unshadow(Side side, long orderId) {
+        var shadowed = getShadowed(side);
+        if (--shadowed.get(orderId)[0] == 0)
+            shadowed.remove(orderId);
+    }
+
+    // Every order in the book, queued or stop, is chained to the other orders of its broker and
+    // to those of its shareholder, newest first.
+    private void linkOwners(Order order) {
+        Order brokerFirst = firstByBroker.put(order.getBroker(), order);
+        order.brokerPrevious = null;
+        order.brokerNext = brokerFirst;
+        if (brokerFirst != null)
+            brokerFirst.brokerPrevious = order;
+        Order shareholderFirst = firstByShareholder.put(order.getShareholder(), order);
+        order.shareholderPrevious = null;
+        order.shareholderNext = shareholderFirst;
+        if (shareholderFirst != null)
+            shareholderFirst.shareholderPrevious = order;
+    }
+
+    private void unlinkOwners(Order order) {
+        if (order.brokerPrevious != null)
+            order.brokerPrevious.brokerNext = order.brokerNext;
+        else if (order.brokerNext != null)
+            firstByBroker.put(order.getBroker(), order.brokerNext);
+        else
+            firstByBroker.remove(order.getBroker());
+        if (order.brokerNext != null)
+            order.brokerNext.brokerPrevious = order.brokerPrevious;
+        order.brokerPrevious = order.brokerNext = null;
+
+        if (order.shareholderPrevious != null)
+            order.shareholderPrevious.shareholderNext = order.shareholderNext;
+        else if (order.shareholderNext != null)
+            firstByShareholder.put(order.getShareholder(), order.shareholderNext);
+        else
+            firstByShareholder.remove(order.getShareholder());
+        if (order.shareholderNext != null)
+            order.shareholderNext.shareholderPrevious = order.shareholderPrevious;
+        order.shareholderPrevious = order.shareholderNext = null;
+    }
+
+    private static boolean isCounted(Order order) {
+        return !(order instanceof StopLimitOrder);
+    }
+
+    private void addSellQuantity(Shareholder shareholder, int amount) {
+        sellQuantityByShareholder.computeIfAbsent(shareholder, key -> new int[1])[0] += amount;
+    }
+
+    // Quantities of queued orders must change through the book, so that the depth and the
+    // per-shareholder sell totals follow them.
+    private void recount(Order order) {
+        if (!isCounted(order) || !isQueued(order))
+            return;
+        int delta = order.getTotalQuantity() - order.countedQuantity;
+        openingPriceCalculator.change(order.getSide(), order.level.getPrice(), delta);
+        if (order.getSide() == Side.SELL)
+            addSellQuantity(order.getShareholder(), delta);
+        order.countedQuantity = order.getTotalQuantity();
+        if (depth != null && order.getQuantity() != order.shownQuantity) {
+            depth.change(order.getSide(), order.level.getPrice(), order.getQuantity() - order.shownQuantity, 0);
+            order.shownQuantity = order.getQuantity();
+        }
+    }
+
+    private static boolean isQueued(Order order) {
+        return order.level != null;
+    }
+
+    public void decreaseQuantity(Order order, int amount) {
+        order.decreaseQuantity(amount);
+        recount(order);
+    }
+
+    void restoreQuantity(Order order, int quantity, int visibleQuantity) {
+        order.restoreQuantity(quantity, visibleQuantity);
+        recount(order);
+    }
+
+    public void updateOrder(Order order, EnterOrderRq updateOrderRq) {
+        if (order instanceof StopLimitOrder stopLimitOrder && stopLimitOrder.getStopPrice() != updateOrderRq.getStopPrice()) {
+            if (isQueued(order)) {
+                unlink(order);
+                order.updateFromRequest(updateOrderRq);
+                getQueue(order).add(order);
+                link(order);
+                return;
+            }
         }
-        return null;
+        order.updateFromRequest(updateOrderRq);
+        recount(order);
+    }
+
+    private OrderQueue getQueue(Side side) {
+        return side == Side.BUY ? buyQueue : sellQueue;
+    }
+
+    private OrderQueue getQueue(Side side, boolean stop) {
+        return side == Side.BUY ? stop ? stopBuyQueue : buyQueue :
+                                  stop ? stopSellQueue : sellQueue;
+    }
+
+    public Order findByOrderId(Side side, long orderId) {
+        return getIndex(side).get(orderId);
     }
 
     public boolean removeByOrderId(Side side, long orderId) {
-        var it = findOrderIteratorById(side, orderId);
-        if (it != null){
-            it.remove();
-            return true;
+        var order = getIndex(side).get(orderId);
+        if (order == null)
+            return false;
+        unlink(order);
+        return true;
+    }
+
+    void remove(Order order) {
+        if (isQueued(order))
+            unlink(order);
+    }
+
+    // Removes the queued and stop orders of the broker, newest first, and returns them.
+    public List<Order> removeByBroker(Broker broker) {
+        List<Order> removed = new ArrayList<>();
+        Order next;
+        for (Order order = firstByBroker.get(broker); order != null; order = next) {
+            next = order.brokerNext;
+            unlink(order);
+            removed.add(order);
         }
-        return false;
+        return removed;
+    }
+
+    public List<Order> removeByShareholder(Shareholder shareholder) {
+        List<Order> removed = new ArrayList<>();
+        Order next;
+        for (Order order = firstByShareholder.get(shareholder); order != null; order = next) {
+            next = order.shareholderNext;
+            unlink(order);
+            removed.add(order);
+        }
+        return removed;
+    }
+
+    public List<Order> removeAll() {
+        List<Order> removed = new ArrayList<>();
+        forEachOrder(removed::add);
+        for (Order order : removed)
+            unlink(order);
+        return removed;
     }
 
     public Order matchWithFirst(Order newOrder) {
-        var queue = getQueue(newOrder.getSide().opposite());
-        if (newOrder.matches(queue.getFirst()))
-            return queue.getFirst();
+        Order first = getQueue(newOrder.getSide().opposite()).first();
+        if (first != null && newOrder.matches(first))
+            return first;
         else
             return null;
     }
 
-    public StopLimitOrder activateFirst(Side side, int marketPrice) {
-        var queue = getQueue(side, true);
-        StopLimitOrder order;
-        if (!queue.isEmpty()) {
-            order = (StopLimitOrder) queue.getFirst();
-            if (order.isActivatable(marketPrice)) {
-                queue.removeFirst();
-                //return queue.pop();
-                return order;
-            }
+    public List<StopLimitOrder> activateAll(Side side, int marketPrice) {
+        List<StopLimitOrder> activatedOrders = new ArrayList<>();
+        for (var order : getQueue(side, true).ordersUpTo(marketPrice)) {
+            unlink(order);
+            activatedOrders.add((StopLimitOrder) order);
         }
-        return null;
+        return activatedOrders;
     }
 
     public void putBack(Order order) {
-        LinkedList<Order> queue = getQueue(order.getSide(), order instanceof StopLimitOrder);
+        assert !isQueued(order);
         order.queue();
-        queue.addFirst(order);
+        getQueue(order).addFirst(order);
+        link(order);
     }
 
     public void restoreOrder(Order order) {
@@ -114,32 +301,81 @@ public class OrderBook {
     }
 
     public Order removeFirst(Side side) {
-        try {
-            return getQueue(side).removeFirst();
-        } catch (NoSuchElementException ex) {
+        var order = getQueue(side).first();
+        if (order == null)
             return null;
-        }
+        unlink(order);
+        return order;
     }
 
     public int totalSellQuantityByShareholder(Shareholder shareholder) {
-        return sellQueue.stream()
-                .filter(order -> order.getShareholder().equals(shareholder))
-                .mapToInt(Order::getTotalQuantity)
-                .sum();
+        int[] total = sellQuantityByShareholder.get(shareholder);
+        return total == null ? 0 : total[0];
     }
 
     public int totalTradableQuantity(int tradePrice, Side side) {
-        var queue = getQueue(side);
-        return queue.stream()
-                .filter(order -> order.matches(tradePrice))
-                .mapToInt(Order::getTotalQuantity)
-                .sum();
-    }
-
-    public HashSet<Integer> allPrices() {
-        HashSet<Integer> prices = new HashSet<>();
-        prices.addAll(getSellQueue().stream().mapToInt(Order::getPrice).boxed().toList());
-        prices.addAll(getBuyQueue().stream().mapToInt(Order::getPrice).boxed().toList());
-        return prices;
+        if (side == Side.BUY)
+            return openingPriceCalculator.buyQuantityAtOrAbove(tradePrice);
+        return openingPriceCalculator.sellQuantityAtOrBelow(tradePrice);
+    }
+
+    public int openingPrice(int marketPrice) {
+        return openingPriceCalculator.openingPrice(marketPrice);
+    }
+
+    // Starts keeping the market depth of the book, which must not change meanwhile.
+    public MarketDepth trackDepth() {
+        if (depth != null)
+            return depth;
+        MarketDepth tracked = new MarketDepth();
+        for (Side side : Side.values()) {
+            getQueue(side).forEach(order -> {
+                order.shownQuantity = order.getQuantity();
+                tracked.change(side, order.level.getPrice(), order.shownQuantity, 1);
+            });
+        }
+        depth = tracked;
+        return depth;
+    }
+
+    public MarketDepth getDepth() {
+        return depth;
+    }
+
+    // Depth gauges; read from other threads, they may be slightly behind.
+    public int priceLevels(Side side) {
+        return getQueue(side).levelCount();
+    }
+
+    public int restingOrders(Side side) {
+        return getQueue(side).orderCount();
+    }
+
+    public int stopOrders(Side side) {
+        return getQueue(side, true).orderCount();
+    }
+
+    // Visits the buy, sell, stop buy and stop sell queues in turn, each in priority order.
+    public void forEachOrder(Consumer<Order> action) {
+        buyQueue.forEach(action);
+        sellQueue.forEach(action);
+        stopBuyQueue.forEach(action);
+        stopSellQueue.forEach(action);
+    }
+
+    public LinkedList<Order> getBuyQueue() {
+        return buyQueue.toList();
+    }
+
+    public LinkedList<Order> getSellQueue() {
+        return sellQueue.toList();
+    }
+
+    public LinkedList<Order> getStopBuyQueue() {
+        return stopBuyQueue.toList();
+    }
+
+    public LinkedList<Order> getStopSellQueue() {
+        return stopSellQueue.toList();
     }
 }
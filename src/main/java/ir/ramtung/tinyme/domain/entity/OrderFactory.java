@@ -16,6 +16,10 @@ public class OrderFactory {
         Security security = securityRepository.findSecurityByIsin(enterOrderRq.getSecurityIsin());
         Broker broker = brokerRepository.findBrokerById(enterOrderRq.getBrokerId());
         Shareholder shareholder = shareholderRepository.findShareholderById(enterOrderRq.getShareholderId());
+        return createOrder(enterOrderRq, security, broker, shareholder);
+    }
+
+    public Order createOrder(EnterOrderRq enterOrderRq, Security security, Broker broker, Shareholder shareholder) {
         Order order;
 
         if (enterOrderRq.getPeakSize() == 0)
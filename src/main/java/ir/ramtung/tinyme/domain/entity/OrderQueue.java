@@ -0,0 +1,97 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+class OrderQueue {
+    private final TreeMap<Integer, PriceLevel> levels;
+    private final ToIntFunction<Order> levelKey;
+    private int orderCount;
+
+    OrderQueue(Comparator<Integer> priority, ToIntFunction<Order> levelKey) {
+        this.levels = new TreeMap<>(priority);
+        this.levelKey = levelKey;
+    }
+
+    static OrderQueue of(Side side) {
+        return side == Side.BUY ? new OrderQueue(Comparator.reverseOrder(), Order::getPrice)
+                                : new OrderQueue(Comparator.naturalOrder(), Order::getPrice);
+    }
+
+    static OrderQueue ofStops(Side side) {
+        ToIntFunction<Order> stopPrice = order -> ((StopLimitOrder) order).getStopPrice();
+        return side == Side.BUY ? new OrderQueue(Comparator.naturalOrder(), stopPrice)
+                                : new OrderQueue(Comparator.reverseOrder(), stopPrice);
+    }
+
+    void add(Order order) {
+        levels.computeIfAbsent(levelKey.applyAsInt(order), PriceLevel::new).add(order);
+        orderCount++;
+    }
+
+    void addFirst(Order order) {
+        levels.computeIfAbsent(levelKey.applyAsInt(order), PriceLevel::new).addFirst(order);
+        orderCount++;
+    }
+
+    Order first() {
+        var best = levels.firstEntry();
+        return best == null ? null : best.getValue().first();
+    }
+
+    void remove(Order order) {
+        PriceLevel level = order.level;
+        level.unlink(order);
+        orderCount--;
+        if (level.isEmpty())
+            levels.remove(level.getPrice());
+    }
+
+    // Levels are kept in priority order, so the ones up to a key form a prefix of the queue;
+    // for stop queues these are exactly the orders activated by that market price.
+    List<Order> ordersUpTo(int key) {
+        List<Order> orders = new ArrayList<>();
+        for (PriceLevel level : levels.headMap(key, true).values())
+            for (var order = level.first(); order != null; order = order.next)
+                orders.add(order);
+        return orders;
+    }
+
+    Order findByOrderId(long orderId) {
+        for (PriceLevel level : levels.values())
+            for (var order = level.first(); order != null; order = order.next)
+                if (order.getOrderId() == orderId)
+                    return order;
+        return null;
+    }
+
+    int levelCount() {
+        return levels.size();
+    }
+
+    int orderCount() {
+        return orderCount;
+    }
+
+    boolean isEmpty() {
+        return levels.isEmpty();
+    }
+
+    Stream<Order> stream() {
+        return levels.values().stream().flatMap(PriceLevel::stream);
+    }
+
+    void forEach(Consumer<Order> action) {
+        for (PriceLevel level : levels.values())
+            level.forEach(action);
+    }
+
+    LinkedList<Order> toList() {
+        LinkedList<Order> orders = new LinkedList<>();
+        for (PriceLevel level : levels.values())
+            level.forEach(orders::add);
+        return orders;
+    }
+}
@@ -0,0 +1,73 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * The positions of one shareholder, as ints indexed by {@link Security#getId()}. Ids are
+ * split into pages of {@value #PAGE_SIZE}, and only the pages of securities the shareholder
+ * has held are allocated, so holding a few of many securities stays small.
+ * <p>
+ * Shards of different securities update the same shareholder at once. A page never moves
+ * once allocated; adding one copies only the table of pages, under a lock, so an update to
+ * another page at the same time is not lost. Values are changed with atomic adds.
+ */
+public class Positions {
+    private static final int PAGE_BITS = 4;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final VarHandle AMOUNT = MethodHandles.arrayElementVarHandle(int[].class);
+
+    public interface PositionConsumer {
+        void accept(int securityId, int amount);
+    }
+
+    private volatile int[][] pages = new int[0][];
+
+    public int get(int securityId) {
+        int[] page = page(securityId);
+        return page == null ? 0 : (int) AMOUNT.getVolatile(page, securityId & (PAGE_SIZE - 1));
+    }
+
+    public int add(int securityId, int amount) {
+        int[] page = page(securityId);
+        if (page == null)
+            page = allocate(securityId);
+        return (int) AMOUNT.getAndAdd(page, securityId & (PAGE_SIZE - 1), amount) + amount;
+    }
+
+    // Passes every nonzero position, in the order of security ids.
+    public void forEach(PositionConsumer consumer) {
+        int[][] table = pages;
+        for (int pageIndex = 0; pageIndex < table.length; pageIndex++) {
+            int[] page = table[pageIndex];
+            if (page == null)
+                continue;
+            for (int slot = 0; slot < PAGE_SIZE; slot++) {
+                int amount = (int) AMOUNT.getVolatile(page, slot);
+                if (amount != 0)
+                    consumer.accept((pageIndex << PAGE_BITS) | slot, amount);
+            }
+        }
+    }
+
+    private int[] page(int securityId) {
+        int[][] table = pages;
+        int pageIndex = securityId >>> PAGE_BITS;
+        return pageIndex < table.length ? table[pageIndex] : null;
+    }
+
+    private synchronized int[] allocate(int securityId) {
+        int pageIndex = securityId >>> PAGE_BITS;
+        int[][] table = pages;
+        if (pageIndex < table.length && table[pageIndex] != null)
+            return table[pageIndex];
+        if (pageIndex >= table.length)
+            table = Arrays.copyOf(table, pageIndex + 1);
+        else
+            table = table.clone();
+        table[pageIndex] = new int[PAGE_SIZE];
+        pages = table;
+        return table[pageIndex];
+    }
+}
@@ -0,0 +1,99 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// The orders at one price in time priority, linked through their own previous and next fields.
+class PriceLevel implements Iterable<Order> {
+    private final int price;
+    private Order head;
+    private Order tail;
+    private int size;
+
+    PriceLevel(int price) {
+        this.price = price;
+    }
+
+    int getPrice() {
+        return price;
+    }
+
+    void add(Order order) {
+        order.level = this;
+        if (tail == null)
+            head = order;
+        else {
+            tail.next = order;
+            order.previous = tail;
+        }
+        tail = order;
+        size++;
+    }
+
+    void addFirst(Order order) {
+        order.level = this;
+        if (head == null)
+            tail = order;
+        else {
+            head.previous = order;
+            order.next = head;
+        }
+        head = order;
+        size++;
+    }
+
+    Order first() {
+        return head;
+    }
+
+    void unlink(Order order) {
+        if (order.previous == null)
+            head = order.next;
+        else
+            order.previous.next = order.next;
+        if (order.next == null)
+            tail = order.previous;
+        else
+            order.next.previous = order.previous;
+        order.previous = order.next = null;
+        order.level = null;
+        size--;
+    }
+
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Stream<Order> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(iterator(), size, Spliterator.ORDERED), false);
+    }
+
+    @Override
+    public Iterator<Order> iterator() {
+        return new Iterator<>() {
+            private Order next = head;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Order next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Order order = next;
+                next = next.next;
+                return order;
+            }
+        };
+    }
+}
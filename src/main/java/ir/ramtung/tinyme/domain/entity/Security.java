@@ -4,9 +4,11 @@ import ir.ramtung.tinyme.messaging.exception.InvalidRequestException;
 import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
 import ir.ramtung.tinyme.domain.service.Matcher;
 import ir.ramtung.tinyme.messaging.Message;
 import ir.ramtung.tinyme.messaging.request.MatchingState;
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
@@ -19,6 +21,10 @@ import java.util.stream.Collectors;
 @Builder
 public class Security {
     private String isin;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.PACKAGE)
+    @Builder.Default
+    private int id = -1;
     @Builder.Default
     private int tickSize = 1;
     @Builder.Default
@@ -29,6 +35,17 @@ public class Security {
     private int marketPrice = 0;
     @Builder.Default
     private MatchingState matchingState = MatchingState.CONTINUOUS;
+    @Setter(AccessLevel.NONE)
+    @Builder.Default
+    private FillBuffer fillBuffer = new FillBuffer();
+    @Setter(AccessLevel.NONE)
+    @Builder.Default
+    private UndoLog undoLog = new UndoLog();
+
+    // The dense id the security repository gave the ISIN, or -1 if it is in none.
+    public int getId() {
+        return id;
+    }
 
     public MatchResult newOrder(Order order, Matcher matcher) {
         if (matchingState == MatchingState.AUCTION) {
@@ -42,15 +59,40 @@ public class Security {
     }
 
     public void deleteOrder(DeleteOrderRq deleteOrderRq) {
-        Order order = orderBook.findByOrderId(deleteOrderRq.getSide(), deleteOrderRq.getOrderId());
+        deleteOrder(orderBook.findByOrderId(deleteOrderRq.getSide(), deleteOrderRq.getOrderId()));
+    }
+
+    public void deleteOrder(Order order) {
         if (order.getSide() == Side.BUY)
             order.getBroker().increaseCreditBy(order.getValue());
         orderBook.removeByOrderId(order.getSide(), order.getOrderId());
     }
 
+    // Removes the queued and stop orders in the scope of the request. The credit reserved by
+    // the buy orders goes back to each broker in one add.
+    public CancelResult cancelOrders(MassCancelRq massCancelRq, Broker broker, Shareholder shareholder) {
+        List<Order> cancelled = switch (massCancelRq.getScope()) {
+            case SECURITY -> orderBook.removeAll();
+            case BROKER -> orderBook.removeByBroker(broker);
+            case SHAREHOLDER -> orderBook.removeByShareholder(shareholder);
+        };
+        Map<Broker, long[]> released = new HashMap<>();
+        for (Order order : cancelled)
+            if (order.getSide() == Side.BUY)
+                released.computeIfAbsent(order.getBroker(), key -> new long[1])[0] += order.getValue();
+        long releasedCredit = 0;
+        for (Map.Entry<Broker, long[]> entry : released.entrySet()) {
+            entry.getKey().increaseCreditBy(entry.getValue()[0]);
+            releasedCredit += entry.getValue()[0];
+        }
+        return new CancelResult(cancelled, releasedCredit);
+    }
+
     public MatchResult updateOrder(EnterOrderRq updateOrderRq, Matcher matcher) {
-        Order order = orderBook.findByOrderId(updateOrderRq.getSide(), updateOrderRq.getOrderId());
+        return updateOrder(updateOrderRq, orderBook.findByOrderId(updateOrderRq.getSide(), updateOrderRq.getOrderId()), matcher);
+    }
 
+    public MatchResult updateOrder(EnterOrderRq updateOrderRq, Order order, Matcher matcher) {
         if (order instanceof StopLimitOrder stopLimitOrder)
             stopLimitOrder.setRequestId(updateOrderRq.getRequestId());
 
@@ -59,16 +101,15 @@ public class Security {
             return new MatchResult(outcome, null);
 
         if (!order.losesPriority(updateOrderRq)) {
-            order.updateFromRequest(updateOrderRq);
+            orderBook.updateOrder(order, updateOrderRq);
             return MatchResult.executed(null, List.of());
         }
 
         updatingStarted(updateOrderRq, order);
 
         Order originalOrder = order.snapshot();
-        order.updateFromRequest(updateOrderRq);
-
         orderBook.removeByOrderId(updateOrderRq.getSide(), updateOrderRq.getOrderId());
+        order.updateFromRequest(updateOrderRq);
         MatchResult matchResult = matcher.execute(order);
         if (matchResult.outcome() != MatchingOutcome.OK) {
             orderBook.enqueue(originalOrder);
@@ -108,23 +149,7 @@ public class Security {
     }
 
     public int getOpeningPrice() {
-        HashSet<Integer> allPrices = orderBook.allPrices();
-        allPrices.add(marketPrice);
-        int openingPrice = allPrices.stream()
-                .map(price -> new HashMap<String, Integer>() {{
-                    put("tradableQuantity", tradableQuantity(price));
-                    put("priceDiff", Math.abs(marketPrice - price));
-                    put("price", price);
-                }})
-                .sorted(Comparator.comparing(
-                        (Map<String, Integer> priceInfo) -> -priceInfo.get("tradableQuantity"))
-                        .thenComparing(priceInfo -> priceInfo.get("priceDiff"))
-                        .thenComparing(priceInfo -> priceInfo.get("price")))
-                .map(priceInfo -> priceInfo.get("price"))
-                .findFirst()
-                .orElse(0);
-
-        return tradableQuantity(openingPrice) == 0 ? 0 : openingPrice;
+        return orderBook.openingPrice(marketPrice);
     }
 
     public int tradableQuantity(int openingPrice) {
@@ -135,17 +160,16 @@ public class Security {
         return tradableQuantity(getOpeningPrice());
     }
 
-    public StopLimitOrder triggerOrder() {
-        var stopLimitOrder = getOrderBook().activateFirst(Side.BUY, getMarketPrice());
-        if (stopLimitOrder == null)
-            stopLimitOrder = getOrderBook().activateFirst(Side.SELL, getMarketPrice());
-
-        return stopLimitOrder;
+    public List<StopLimitOrder> triggerOrders() {
+        List<StopLimitOrder> triggeredOrders = orderBook.activateAll(Side.BUY, marketPrice);
+        triggeredOrders.addAll(orderBook.activateAll(Side.SELL, marketPrice));
+        return triggeredOrders;
     }
 
     public void updateMarketPrice(MatchResult matchResult) {
-        if (!matchResult.trades().isEmpty()) {
-            marketPrice = matchResult.trades().getLast().getPrice();
+        FillBuffer fills = matchResult.fills();
+        if (!fills.isEmpty()) {
+            marketPrice = fills.price(fills.size() - 1);
         }
     }
 }
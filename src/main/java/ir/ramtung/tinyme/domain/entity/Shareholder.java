@@ -5,8 +5,8 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @ToString
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
@@ -18,22 +18,39 @@ public class Shareholder {
     @Getter
     private String name;
     @Getter
+    // Each security's shard writes only its own entry; shards share the positions.
     @Builder.Default
-    private Map<Security, Integer> positions = new HashMap<>();
+    private Positions positions = new Positions();
+    // Securities in no repository have no id to index the positions by, so they get an entry here.
+    @Builder.Default
+    private Map<Security, Integer> positionsWithoutId = new ConcurrentHashMap<>();
 
     public void incPosition(Security security, int amount) {
         assert amount >= 0;
-        positions.put(security, positions.getOrDefault(security, 0) + amount);
+        add(security, amount);
     }
 
     public void decPosition(Security security, int amount) {
         assert amount >= 0;
-        int currentPositions = positions.getOrDefault(security, 0);
-        if (currentPositions < amount)
+        if (getPosition(security) < amount)
             throw new IllegalArgumentException("Amount to be decreased is greater than shareholder's current position");
-        positions.put(security, currentPositions - amount);
+        add(security, -amount);
+    }
+
+    public int getPosition(Security security) {
+        if (security.getId() < 0)
+            return positionsWithoutId.getOrDefault(security, 0);
+        return positions.get(security.getId());
     }
+
     public boolean hasEnoughPositionsOn(Security security, int position) {
-        return positions.getOrDefault(security, 0) >= position;
+        return getPosition(security) >= position;
+    }
+
+    private void add(Security security, int amount) {
+        if (security.getId() < 0)
+            positionsWithoutId.merge(security, amount, Integer::sum);
+        else
+            positions.add(security.getId(), amount);
     }
 }
@@ -0,0 +1,117 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.util.Arrays;
+
+/**
+ * The changes one matching makes to the book and to broker credits, recorded as they
+ * happen so that a rejected matching is undone by replaying them backwards. Recording
+ * only writes a few array slots; nothing is copied unless a rollback actually runs.
+ */
+public class UndoLog {
+    private static final byte REMOVED = 0;
+    private static final byte ENQUEUED = 1;
+    private static final byte QUANTITY = 2;
+    private static final byte CREDIT = 3;
+    private static final int INITIAL_CAPACITY = 32;
+
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private Object[] targets = new Object[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+    private int[] visibleQuantities = new int[INITIAL_CAPACITY];
+    private int size;
+    private final CreditDecisions creditDecisions = new CreditDecisions();
+
+    public void orderRemoved(Order order) {
+        record(REMOVED, order, 0, 0);
+    }
+
+    public void orderEnqueued(Order order) {
+        record(ENQUEUED, order, 0, 0);
+    }
+
+    // Called before the quantity of the order changes.
+    public void quantityChanging(Order order) {
+        record(QUANTITY, order, order.getTotalQuantity(), order.getQuantity());
+    }
+
+    public void increaseCredit(Broker broker, long amount) {
+        broker.increaseCreditBy(amount);
+        record(CREDIT, broker, amount, 0);
+    }
+
+    public void decreaseCredit(Broker broker, long amount) {
+        broker.decreaseCreditBy(amount);
+        record(CREDIT, broker, -amount, 0);
+    }
+
+    // Reserves the credit, so that a rollback releases it; false if the broker has too little.
+    public boolean reserveCredit(Broker broker, long amount) {
+        if (creditDecisions.isReplaying()) {
+            if (!creditDecisions.next())
+                return false;
+            broker.decreaseCreditBy(amount);
+        } else if (!creditDecisions.decided(broker.tryReserveCredit(amount)))
+            return false;
+        record(CREDIT, broker, -amount, 0);
+        return true;
+    }
+
+    public boolean hasCredit(Broker broker, long amount) {
+        if (creditDecisions.isReplaying())
+            return creditDecisions.next();
+        return creditDecisions.decided(broker.hasEnoughCredit(amount));
+    }
+
+    public CreditDecisions getCreditDecisions() {
+        return creditDecisions;
+    }
+
+    public void rollback() {
+        for (int entry = size - 1; entry >= 0; entry--) {
+            switch (kinds[entry]) {
+                case REMOVED -> orderBookOf(entry).putBack((Order) targets[entry]);
+                case ENQUEUED -> orderBookOf(entry).remove((Order) targets[entry]);
+                case QUANTITY -> orderBookOf(entry).restoreQuantity((Order) targets[entry], (int) amounts[entry], visibleQuantities[entry]);
+                case CREDIT -> {
+                    Broker broker = (Broker) targets[entry];
+                    if (amounts[entry] >= 0)
+                        broker.decreaseCreditBy(amounts[entry]);
+                    else
+                        broker.increaseCreditBy(-amounts[entry]);
+                }
+            }
+        }
+        clear();
+    }
+
+    public void clear() {
+        Arrays.fill(targets, 0, size, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private OrderBook orderBookOf(int entry) {
+        return ((Order) targets[entry]).getSecurity().getOrderBook();
+    }
+
+    private void record(byte kind, Object target, long amount, int visibleQuantity) {
+        if (size == kinds.length)
+            grow();
+        kinds[size] = kind;
+        targets[size] = target;
+        amounts[size] = amount;
+        visibleQuantities[size] = visibleQuantity;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        targets = Arrays.copyOf(targets, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        visibleQuantities = Arrays.copyOf(visibleQuantities, capacity);
+    }
+}
@@ -0,0 +1,237 @@
+package ir.ramtung.tinyme.domain.service;
+
+import ir.ramtung.tinyme.domain.entity.MatchResult;
+import ir.ramtung.tinyme.domain.entity.MatchingOutcome;
+import ir.ramtung.tinyme.domain.entity.OrderBook;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.util.LatencyHistogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies of the stages of the order handler and counts of what came out of them, kept per
+ * security. A security is only handled by one thread at a time, so its metrics have a single
+ * writer; the totals are summed when they are read, through the methods here or over JMX.
+ * <p>
+ * When disabled, {@link #start} does not read the clock and recording returns at once.
+ */
+@Component
+@ManagedResource(objectName = "ir.ramtung.tinyme:name=EngineMetrics", description = "Order handler latencies and counters")
+public class EngineMetrics {
+    public static final EngineMetrics DISABLED = new EngineMetrics(null, false);
+
+    public enum Stage { VALIDATE, MATCH, PUBLISH, HANDLE }
+
+    public enum Counter { INVALID_REQUESTS, TRADES, STOP_ACTIVATIONS, ROLLBACKS }
+
+    private static final class SecurityMetrics {
+        final LatencyHistogram[] latencies = new LatencyHistogram[Stage.values().length];
+        final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+        final AtomicLongArray outcomes = new AtomicLongArray(MatchingOutcome.values().length);
+
+        SecurityMetrics() {
+            for (Stage stage : Stage.values())
+                latencies[stage.ordinal()] = new LatencyHistogram(stage.name().toLowerCase());
+        }
+
+        static void add(AtomicLongArray counts, int index, long amount) {
+            counts.lazySet(index, counts.get(index) + amount);
+        }
+    }
+
+    private final SecurityRepository securityRepository;
+    private final boolean enabled;
+    private volatile SecurityMetrics[] bySecurityId = new SecurityMetrics[0];
+    private final LongAdder invalidRequestsForUnknownSecurities = new LongAdder();
+
+    @Autowired
+    public EngineMetrics(SecurityRepository securityRepository, @Value("${metricsEnabled:false}") boolean enabled) {
+        this.securityRepository = securityRepository;
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute(description = "Whether latencies and counters are recorded")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // Records the time since start against the stage and returns the time now.
+    public long record(Security security, Stage stage, long start) {
+        if (!enabled)
+            return 0;
+        long now = System.nanoTime();
+        of(security).latencies[stage.ordinal()].record(now - start);
+        return now;
+    }
+
+    public void count(Security security, Counter counter, long amount) {
+        if (!enabled)
+            return;
+        SecurityMetrics.add(of(security).counters, counter.ordinal(), amount);
+    }
+
+    public void matched(Security security, MatchResult result, long start) {
+        if (!enabled)
+            return;
+        SecurityMetrics metrics = of(security);
+        metrics.latencies[Stage.MATCH.ordinal()].record(System.nanoTime() - start);
+        SecurityMetrics.add(metrics.outcomes, result.outcome().ordinal(), 1);
+        SecurityMetrics.add(metrics.counters, Counter.TRADES.ordinal(), result.fills().size());
+    }
+
+    // A request that failed validation; its security may not exist.
+    public void rejected(String isin, long start) {
+        if (!enabled)
+            return;
+        Security security = securityRepository.findSecurityByIsin(isin);
+        if (security == null) {
+            invalidRequestsForUnknownSecurities.increment();
+            return;
+        }
+        count(security, Counter.INVALID_REQUESTS, 1);
+        record(security, Stage.HANDLE, start);
+    }
+
+    private SecurityMetrics of(Security security) {
+        int id = security.getId();
+        SecurityMetrics[] metrics = bySecurityId;
+        if (id < metrics.length && metrics[id] != null)
+            return metrics[id];
+        return allocate(id);
+    }
+
+    private synchronized SecurityMetrics allocate(int id) {
+        SecurityMetrics[] metrics = bySecurityId;
+        if (id >= metrics.length) {
+            SecurityMetrics[] larger = new SecurityMetrics[Math.max(id + 1, metrics.length * 2)];
+            System.arraycopy(metrics, 0, larger, 0, metrics.length);
+            metrics = larger;
+        }
+        if (metrics[id] == null)
+            metrics[id] = new SecurityMetrics();
+        bySecurityId = metrics;
+        return metrics[id];
+    }
+
+    private SecurityMetrics find(String isin) {
+        Security security = securityRepository.findSecurityByIsin(isin);
+        if (security == null)
+            return null;
+        SecurityMetrics[] metrics = bySecurityId;
+        return security.getId() < metrics.length ? metrics[security.getId()] : null;
+    }
+
+    public Map<String, LatencyHistogram> latencies() {
+        Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram total = new LatencyHistogram(stage.name().toLowerCase());
+            for (SecurityMetrics metrics : bySecurityId)
+                if (metrics != null)
+                    total.add(metrics.latencies[stage.ordinal()]);
+            latencies.put(total.getName(), total);
+        }
+        return latencies;
+    }
+
+    public Map<String, LatencyHistogram> latencies(String isin) {
+        Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+        SecurityMetrics metrics = find(isin);
+        if (metrics != null)
+            for (LatencyHistogram histogram : metrics.latencies)
+                latencies.put(histogram.getName(), histogram);
+        return latencies;
+    }
+
+    public Map<String, Long> counters() {
+        long[] counters = new long[Counter.values().length];
+        long[] outcomes = new long[MatchingOutcome.values().length];
+        for (SecurityMetrics metrics : bySecurityId) {
+            if (metrics == null)
+                continue;
+            for (int counter = 0; counter < counters.length; counter++)
+                counters[counter] += metrics.counters.get(counter);
+            for (int outcome = 0; outcome < outcomes.length; outcome++)
+                outcomes[outcome] += metrics.outcomes.get(outcome);
+        }
+        counters[Counter.INVALID_REQUESTS.ordinal()] += invalidRequestsForUnknownSecurities.sum();
+        return toMap(counters, outcomes);
+    }
+
+    public Map<String, Long> counters(String isin) {
+        SecurityMetrics metrics = find(isin);
+        long[] counters = new long[Counter.values().length];
+        long[] outcomes = new long[MatchingOutcome.values().length];
+        if (metrics != null) {
+            for (int counter = 0; counter < counters.length; counter++)
+                counters[counter] = metrics.counters.get(counter);
+            for (int outcome = 0; outcome < outcomes.length; outcome++)
+                outcomes[outcome] = metrics.outcomes.get(outcome);
+        }
+        return toMap(counters, outcomes);
+    }
+
+    private static Map<String, Long> toMap(long[] counters, long[] outcomes) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Counter counter : Counter.values())
+            map.put(counter.name().toLowerCase(), counters[counter.ordinal()]);
+        for (MatchingOutcome outcome : MatchingOutcome.values())
+            map.put("outcome." + outcome.name().toLowerCase(), outcomes[outcome.ordinal()]);
+        return map;
+    }
+
+    // Price levels and orders on each side of the book; empty for an unknown security.
+    public Map<String, Integer> bookDepth(String isin) {
+        Map<String, Integer> depth = new LinkedHashMap<>();
+        Security security = securityRepository.findSecurityByIsin(isin);
+        if (security == null)
+            return depth;
+        OrderBook orderBook = security.getOrderBook();
+        for (Side side : Side.values()) {
+            String prefix = side.name().toLowerCase();
+            depth.put(prefix + ".levels", orderBook.priceLevels(side));
+            depth.put(prefix + ".orders", orderBook.restingOrders(side));
+            depth.put(prefix + ".stopOrders", orderBook.stopOrders(side));
+        }
+        return depth;
+    }
+
+    @ManagedAttribute(description = "Latency percentiles of each stage over all securities")
+    public String[] getLatencies() {
+        return latencies().values().stream().map(LatencyHistogram::toString).toArray(String[]::new);
+    }
+
+    @ManagedAttribute(description = "Trades, invalid requests, stop activations, rollbacks and matching outcomes")
+    public Map<String, Long> getCounters() {
+        return counters();
+    }
+
+    @ManagedOperation(description = "Latency percentiles of each stage for one security")
+    public String[] securityLatencies(String isin) {
+        return latencies(isin).values().stream().map(LatencyHistogram::toString).toArray(String[]::new);
+    }
+
+    @ManagedOperation(description = "Counters of one security")
+    public Map<String, Long> securityCounters(String isin) {
+        return counters(isin);
+    }
+
+    @ManagedOperation(description = "Price levels, resting orders and stop orders on each side of a book")
+    public Map<String, Integer> securityBookDepth(String isin) {
+        return bookDepth(isin);
+    }
+}
@@ -7,18 +7,27 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 
 @Service
 public class Matcher {
     @Autowired
     private MatchingControlList controls;
+    @Autowired
+    private EngineMetrics metrics = EngineMetrics.DISABLED;
 
     public MatchResult match(Order newOrder,  int openingPrice) {
+        newOrder.getSecurity().getUndoLog().clear();
+        return matchLogged(newOrder, openingPrice);
+    }
+
+    // Matches on top of what the undo log already holds for the order, so a rejection also
+    // undoes the reservations made before matching started.
+    private MatchResult matchLogged(Order newOrder, int openingPrice) {
         OrderBook orderBook = newOrder.getSecurity().getOrderBook();
-        LinkedList<Trade> trades = new LinkedList<>();
+        FillBuffer fills = newOrder.getSecurity().getFillBuffer();
+        UndoLog undoLog = newOrder.getSecurity().getUndoLog();
+        fills.clear();
 
         while (orderBook.hasOrderOfType(newOrder.getSide().opposite()) && newOrder.getQuantity() > 0) {
             Order matchingOrder = orderBook.matchWithFirst(newOrder);
@@ -26,73 +35,81 @@ public class Matcher {
                 break;
 
             int price = openingPrice == 0 ? matchingOrder.getPrice() : openingPrice;
-            Trade trade = new Trade(newOrder.getSecurity(), price, Math.min(newOrder.getQuantity(), matchingOrder.getQuantity()), newOrder, matchingOrder);
+            int fill = fills.add(price, Math.min(newOrder.getQuantity(), matchingOrder.getQuantity()), newOrder, matchingOrder);
 
-            MatchingOutcome outcome = controls.canTrade(newOrder, trade);
+            MatchingOutcome outcome = controls.canTrade(newOrder, fills, fill);
             if (outcome != MatchingOutcome.OK) {
-                controls.rollbackTrades(newOrder, trades);
-                rollbackTrades(newOrder, trades);
+                fills.removeLast();
+                undoLog.rollback();
+                metrics.count(newOrder.getSecurity(), EngineMetrics.Counter.ROLLBACKS, 1);
                 return new MatchResult(outcome, newOrder);
             }
 
-            trades.add(trade);
-            controls.tradeAccepted(newOrder, trade);
+            controls.tradeAccepted(newOrder, fills, fill);
 
             if (newOrder.getQuantity() >= matchingOrder.getQuantity()) {
                 newOrder.decreaseQuantity(matchingOrder.getQuantity());
                 orderBook.removeFirst(matchingOrder.getSide());
+                undoLog.orderRemoved(matchingOrder);
                 if (matchingOrder instanceof IcebergOrder icebergOrder) {
+                    undoLog.quantityChanging(icebergOrder);
                     icebergOrder.decreaseQuantity(matchingOrder.getQuantity());
                     icebergOrder.replenish();
-                    if (icebergOrder.getQuantity() > 0)
+                    if (icebergOrder.getQuantity() > 0) {
                         orderBook.enqueue(icebergOrder);
+                        undoLog.orderEnqueued(icebergOrder);
+                    }
                 }
             } else {
-                matchingOrder.decreaseQuantity(newOrder.getQuantity());
+                undoLog.quantityChanging(matchingOrder);
+                orderBook.decreaseQuantity(matchingOrder, newOrder.getQuantity());
                 newOrder.makeQuantityZero();
             }
         }
         if (newOrder instanceof IcebergOrder icebergOrder && newOrder.getStatus() != OrderStatus.NEW && newOrder.getQuantity() == 0)
             icebergOrder.replenish();
-        return MatchResult.executed(newOrder, trades);
+        return MatchResult.executed(newOrder, fills);
     }
 
     public MatchResult match(Order newOrder) {
         return match(newOrder, 0);
     }
 
-    private void rollbackTrades(Order newOrder, LinkedList<Trade> trades) {
-        ListIterator<Trade> it = trades.listIterator(trades.size());
-        while (it.hasPrevious()) {
-            if (newOrder.getSide() == Side.BUY)
-                newOrder.getSecurity().getOrderBook().restoreOrder(it.previous().getSell());
-            else
-                newOrder.getSecurity().getOrderBook().restoreOrder(it.previous().getBuy());
-        }
+    public MatchResult execute(Order order, int openingPrice) {
+        long start = metrics.start();
+        MatchResult result = executeUntimed(order, openingPrice);
+        metrics.matched(order.getSecurity(), result, start);
+        return result;
     }
 
-    public MatchResult execute(Order order, int openingPrice) {
+    private MatchResult executeUntimed(Order order, int openingPrice) {
+        UndoLog undoLog = order.getSecurity().getUndoLog();
+        undoLog.clear();
         MatchingOutcome outcome = controls.canStartMatching(order);
-        if (outcome != MatchingOutcome.OK)
+        if (outcome != MatchingOutcome.OK) {
+            undoLog.rollback();
             return new MatchResult(outcome, order);
+        }
 
         controls.matchingStarted(order);
 
         outcome = controls.canContinueMatching(order);
         if (outcome != MatchingOutcome.OK) {
+            undoLog.clear();
             return new MatchResult(outcome, order);
         }
 
-        MatchResult result = match(order, openingPrice);
+        MatchResult result = matchLogged(order, openingPrice);
         if (result.outcome() != MatchingOutcome.OK)
             return result;
 
         outcome = controls.canAcceptMatching(order, result);
         if (outcome != MatchingOutcome.OK) {
-            controls.rollbackTrades(order, result.trades());
-            rollbackTrades(order, result.trades());
+            order.getSecurity().getUndoLog().rollback();
+            metrics.count(order.getSecurity(), EngineMetrics.Counter.ROLLBACKS, 1);
             return new MatchResult(outcome, order);
         }
+        order.getSecurity().getUndoLog().clear();
 
         if (result.remainder().getQuantity() > 0) {
             order.getSecurity().getOrderBook().enqueue(result.remainder());
@@ -2,9 +2,14 @@ package ir.ramtung.tinyme.domain.service;
 
 import ir.ramtung.tinyme.domain.entity.*;
 import ir.ramtung.tinyme.domain.service.publisher.PublisherList;
+import ir.ramtung.tinyme.domain.service.validation.LegValidation;
+import ir.ramtung.tinyme.domain.service.validation.ValidationContext;
 import ir.ramtung.tinyme.domain.service.validation.ValidationList;
 import ir.ramtung.tinyme.messaging.exception.InvalidRequestException;
 import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.Message;
+import ir.ramtung.tinyme.messaging.event.MassCancelHandledEvent;
+import ir.ramtung.tinyme.messaging.event.OrderBatchHandledEvent;
 import ir.ramtung.tinyme.messaging.request.*;
 import ir.ramtung.tinyme.repository.BrokerRepository;
 import ir.ramtung.tinyme.repository.Repositories;
@@ -30,6 +35,8 @@ public class OrderHandler {
     private ValidationList validations;
     @Autowired
     private PublisherList publishers;
+    @Autowired
+    private EngineMetrics metrics = EngineMetrics.DISABLED;
 
     public OrderHandler(SecurityRepository securityRepository, BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, EventPublisher eventPublisher, Matcher matcher) {
         this.securityRepository = securityRepository;
@@ -48,71 +55,188 @@ public class OrderHandler {
     }
 
     public void handleEnterOrder(EnterOrderRq enterOrderRq) {
+        handleEnterOrder(enterOrderRq, eventPublisher);
+    }
+
+    public void handleEnterOrder(EnterOrderRq enterOrderRq, EventPublisher eventPublisher) {
+        long start = metrics.start();
         try {
-            validations.validate(enterOrderRq, repositories);
-            Security security = securityRepository.findSecurityByIsin(enterOrderRq.getSecurityIsin());
-            MatchResult matchResult;
-            if (enterOrderRq.getRequestType() == OrderEntryType.NEW_ORDER)
-                matchResult = security.newOrder(orderFactory.createOrder(enterOrderRq), matcher);
-            else
-                matchResult = security.updateOrder(enterOrderRq, matcher);
-
-            publishers.enterOrderRqHandled(enterOrderRq, matchResult, security, eventPublisher);
-            if (matchResult.outcome().isError())
-                return;
-
-            checkNewActivation(security);
+            ValidationContext context = validations.validate(enterOrderRq, repositories);
+            metrics.record(context.getSecurity(), EngineMetrics.Stage.VALIDATE, start);
+            enterOrder(enterOrderRq, context, eventPublisher);
+            metrics.record(context.getSecurity(), EngineMetrics.Stage.HANDLE, start);
         } catch (InvalidRequestException ex) {
             publishers.invalidRequestExceptionOccured(enterOrderRq.getRequestId(), enterOrderRq.getOrderId(), ex, eventPublisher);
+            metrics.rejected(enterOrderRq.getSecurityIsin(), start);
         }
     }
 
+    // Enters a validated request; returns whether matching accepted it.
+    private boolean enterOrder(EnterOrderRq enterOrderRq, ValidationContext context, EventPublisher eventPublisher) {
+        Security security = context.getSecurity();
+        MatchResult matchResult;
+        if (enterOrderRq.getRequestType() == OrderEntryType.NEW_ORDER)
+            matchResult = security.newOrder(orderFactory.createOrder(enterOrderRq, security, context.getBroker(), context.getShareholder()), matcher);
+        else
+            matchResult = security.updateOrder(enterOrderRq, context.getOrder(), matcher);
+
+        long publishing = metrics.start();
+        publishers.enterOrderRqHandled(enterOrderRq, matchResult, security, eventPublisher);
+        metrics.record(security, EngineMetrics.Stage.PUBLISH, publishing);
+        if (matchResult.outcome().isError())
+            return false;
+
+        checkNewActivation(security, eventPublisher);
+        return true;
+    }
+
     public void handleDeleteOrder(DeleteOrderRq deleteOrderRq) {
+        handleDeleteOrder(deleteOrderRq, eventPublisher);
+    }
+
+    public void handleDeleteOrder(DeleteOrderRq deleteOrderRq, EventPublisher eventPublisher) {
+        long start = metrics.start();
         try {
-            validations.validate(deleteOrderRq, repositories);
-            Security security = securityRepository.findSecurityByIsin(deleteOrderRq.getSecurityIsin());
-            security.deleteOrder(deleteOrderRq);
-            publishers.deleteOrderRqHandled(deleteOrderRq, security, eventPublisher);
+            ValidationContext context = validations.validate(deleteOrderRq, repositories);
+            metrics.record(context.getSecurity(), EngineMetrics.Stage.VALIDATE, start);
+            deleteOrder(deleteOrderRq, context, eventPublisher);
+            metrics.record(context.getSecurity(), EngineMetrics.Stage.HANDLE, start);
         } catch (InvalidRequestException ex) {
             publishers.invalidRequestExceptionOccured(deleteOrderRq.getRequestId(), deleteOrderRq.getOrderId(), ex, eventPublisher);
+            metrics.rejected(deleteOrderRq.getSecurityIsin(), start);
+        }
+    }
+
+    private void deleteOrder(DeleteOrderRq deleteOrderRq, ValidationContext context, EventPublisher eventPublisher) {
+        Security security = context.getSecurity();
+        security.deleteOrder(context.getOrder());
+        long publishing = metrics.start();
+        publishers.deleteOrderRqHandled(deleteOrderRq, security, eventPublisher);
+        metrics.record(security, EngineMetrics.Stage.PUBLISH, publishing);
+    }
+
+    public void handleEnterOrderBatch(EnterOrderBatchRq batchRq) {
+        handleEnterOrderBatch(batchRq, eventPublisher);
+    }
+
+    public void handleEnterOrderBatch(EnterOrderBatchRq batchRq, EventPublisher eventPublisher) {
+        long start = metrics.start();
+        Security security = securityRepository.findSecurityByIsin(batchRq.getSecurityIsin());
+        List<LegValidation> legs = validations.validate(batchRq, repositories);
+        if (security != null)
+            metrics.record(security, EngineMetrics.Stage.VALIDATE, start);
+        int accepted = 0;
+        int leg = 0;
+        for (DeleteOrderRq deleteOrderRq : batchRq.getDeletes()) {
+            List<String> errors = legErrors(legs.get(leg), deleteOrderRq.getSide(), deleteOrderRq.getOrderId(), true);
+            if (errors.isEmpty()) {
+                deleteOrder(deleteOrderRq, legs.get(leg).context(), eventPublisher);
+                accepted++;
+            } else
+                publishers.invalidRequestExceptionOccured(deleteOrderRq.getRequestId(), deleteOrderRq.getOrderId(), new InvalidRequestException(errors), eventPublisher);
+            leg++;
+        }
+        for (EnterOrderRq enterOrderRq : batchRq.getOrders()) {
+            boolean update = enterOrderRq.getRequestType() == OrderEntryType.UPDATE_ORDER;
+            List<String> errors = legErrors(legs.get(leg), enterOrderRq.getSide(), enterOrderRq.getOrderId(), update);
+            if (errors.isEmpty()) {
+                if (enterOrder(enterOrderRq, legs.get(leg).context(), eventPublisher))
+                    accepted++;
+            } else
+                publishers.invalidRequestExceptionOccured(enterOrderRq.getRequestId(), enterOrderRq.getOrderId(), new InvalidRequestException(errors), eventPublisher);
+            leg++;
+        }
+        eventPublisher.publish(new OrderBatchHandledEvent(batchRq.getRequestId(), batchRq.getSecurityIsin(), accepted, legs.size() - accepted));
+        if (security != null)
+            metrics.record(security, EngineMetrics.Stage.HANDLE, start);
+    }
+
+    // Legs are validated before any of them is applied, so an order a leg refers to may have
+    // left the book through an earlier leg since.
+    private static List<String> legErrors(LegValidation leg, Side side, long orderId, boolean refersToQueuedOrder) {
+        if (!leg.isValid())
+            return leg.errors();
+        ValidationContext context = leg.context();
+        if (refersToQueuedOrder && context.getSecurity().getOrderBook().findByOrderId(side, orderId) != context.getOrder())
+            return List.of(Message.ORDER_ID_NOT_FOUND);
+        return List.of();
+    }
+
+    public void handleMassCancel(MassCancelRq massCancelRq) {
+        handleMassCancel(massCancelRq, eventPublisher);
+    }
+
+    public void handleMassCancel(MassCancelRq massCancelRq, EventPublisher eventPublisher) {
+        long start = metrics.start();
+        try {
+            ValidationContext context = validations.validate(massCancelRq, repositories);
+            Security security = context.getSecurity();
+            metrics.record(security, EngineMetrics.Stage.VALIDATE, start);
+            CancelResult result = security.cancelOrders(massCancelRq, context.getBroker(), context.getShareholder());
+            long publishing = metrics.start();
+            publishers.massCancelRqHandled(massCancelRq, result.cancelledOrders(), security, eventPublisher);
+            eventPublisher.publish(new MassCancelHandledEvent(massCancelRq.getRequestId(), massCancelRq.getSecurityIsin(),
+                    result.cancelledOrders().size(), result.releasedCredit()));
+            metrics.record(security, EngineMetrics.Stage.PUBLISH, publishing);
+            metrics.record(security, EngineMetrics.Stage.HANDLE, start);
+        } catch (InvalidRequestException ex) {
+            publishers.invalidRequestExceptionOccured(massCancelRq.getRequestId(), 0, ex, eventPublisher);
+            metrics.rejected(massCancelRq.getSecurityIsin(), start);
         }
     }
 
     public void handleChangeMatchingState(ChangeMatchingStateRq changeMatchingStateRq) {
+        handleChangeMatchingState(changeMatchingStateRq, eventPublisher);
+    }
+
+    public void handleChangeMatchingState(ChangeMatchingStateRq changeMatchingStateRq, EventPublisher eventPublisher) {
+        long start = metrics.start();
         try {
-            validations.validate(changeMatchingStateRq, repositories);
-            Security security = securityRepository.findSecurityByIsin(changeMatchingStateRq.getSecurityIsin());
+            Security security = validations.validate(changeMatchingStateRq, repositories).getSecurity();
+            metrics.record(security, EngineMetrics.Stage.VALIDATE, start);
             List<Trade> trades = security.changeMatchingState(changeMatchingStateRq, matcher);
+            long publishing = metrics.start();
             publishers.changeMatchingStateRqHandled(changeMatchingStateRq, trades, eventPublisher);
-            checkNewActivation(security);
-        } catch (InvalidRequestException ignored) {
+            metrics.record(security, EngineMetrics.Stage.PUBLISH, publishing);
+            checkNewActivation(security, eventPublisher);
+            metrics.record(security, EngineMetrics.Stage.HANDLE, start);
+        } catch (InvalidRequestException ex) {
+            metrics.rejected(changeMatchingStateRq.getSecurityIsin(), start);
         }
     }
 
+    // Where the credit checks of requests on the security are recorded and replayed; null if it does not exist.
+    public CreditDecisions creditDecisions(String securityIsin) {
+        Security security = securityIsin == null ? null : securityRepository.findSecurityByIsin(securityIsin);
+        return security == null ? null : security.getUndoLog().getCreditDecisions();
+    }
+
     public void checkNewActivation(Security security) {
-        List<StopLimitOrder> activatedOrders = activateOrders(security);
+        checkNewActivation(security, eventPublisher);
+    }
+
+    private void checkNewActivation(Security security, EventPublisher eventPublisher) {
+        List<StopLimitOrder> activatedOrders = activateOrders(security, eventPublisher);
         while (!activatedOrders.isEmpty())
-            activatedOrders = executeActivatedOrders(security, activatedOrders);
+            activatedOrders = executeActivatedOrders(security, activatedOrders, eventPublisher);
 
     }
 
-    private List<StopLimitOrder> activateOrders(Security security) {
-        List<StopLimitOrder> activatedOrders = new LinkedList<>();
-        StopLimitOrder order;
-        while ((order = security.triggerOrder()) != null) {
-            activatedOrders.add(order);
+    private List<StopLimitOrder> activateOrders(Security security, EventPublisher eventPublisher) {
+        List<StopLimitOrder> activatedOrders = security.triggerOrders();
+        metrics.count(security, EngineMetrics.Counter.STOP_ACTIVATIONS, activatedOrders.size());
+        for (StopLimitOrder order : activatedOrders)
             publishers.queuedOrderActivated(order, eventPublisher);
-        }
         return activatedOrders;
     }
 
-    private List<StopLimitOrder> executeActivatedOrders(Security security, List<StopLimitOrder> activatedOrders) {
+    private List<StopLimitOrder> executeActivatedOrders(Security security, List<StopLimitOrder> activatedOrders, EventPublisher eventPublisher) {
         List<StopLimitOrder> nextActivatedOrders = new LinkedList<>();
         if (security.getMatchingState() == MatchingState.CONTINUOUS) {
             for (StopLimitOrder order : activatedOrders) {
                 MatchResult matchResult = matcher.execute(order.activate());
                 publishers.activatedOrderExecuted(order, matchResult, eventPublisher);
-                nextActivatedOrders.addAll(activateOrders(security));
+                nextActivatedOrders.addAll(activateOrders(security, eventPublisher));
             }
         } else {
             for (StopLimitOrder order : activatedOrders)
@@ -4,73 +4,61 @@ import ir.ramtung.tinyme.domain.entity.*;
 import ir.ramtung.tinyme.messaging.request.MatchingState;
 import org.springframework.stereotype.Component;
 
-import java.util.LinkedList;
-
+/**
+ * Buyers pay for their trades and for the part of their orders left in the book. The money is
+ * reserved when it is checked, so a broker trading in several shards at once never spends the
+ * same credit twice. Reservations made while matching go through the undo log of the security
+ * and are released if the matching is rejected.
+ */
 @Component
 public class CreditControl implements MatchingControl {
     @Override
-    public MatchingOutcome canTrade(Order newOrder, Trade trade) {
-        if ((newOrder.getSide() == Side.SELL) || (newOrder.getSide() == Side.BUY && trade.buyerHasEnoughCredit())) {
-            return MatchingOutcome.OK;
-        } else return MatchingOutcome.NOT_ENOUGH_CREDIT;
+    public MatchingOutcome canTrade(Order newOrder, FillBuffer fills, int fill) {
+        if (newOrder.getSide() == Side.BUY &&
+                !newOrder.getSecurity().getUndoLog().reserveCredit(fills.buy(fill).getBroker(), fills.value(fill)))
+            return MatchingOutcome.NOT_ENOUGH_CREDIT;
+        return MatchingOutcome.OK;
     }
 
     @Override
-    public void tradeAccepted(Order newOrder, Trade trade) {
-        if (newOrder.getSide() == Side.BUY)
-            trade.decreaseBuyersCredit();
-        trade.increaseSellersCredit();
+    public void tradeAccepted(Order newOrder, FillBuffer fills, int fill) {
+        newOrder.getSecurity().getUndoLog().increaseCredit(fills.sell(fill).getBroker(), fills.value(fill));
     }
 
     @Override
     public MatchingOutcome canAcceptMatching(Order order, MatchResult result) {
         if (result.remainder().getQuantity() > 0) {
             if (order.getSide() == Side.BUY) {
-                if (!order.getBroker().hasEnoughCredit(order.getValue()))
+                if (!order.getSecurity().getUndoLog().reserveCredit(order.getBroker(), order.getValue()))
                     return MatchingOutcome.NOT_ENOUGH_CREDIT;
             }
         }
         return MatchingOutcome.OK;
     }
 
-    @Override
-    public void matchingAccepted(Order order, MatchResult result) {
-        if (order.getSide() == Side.BUY) {
-            order.getBroker().decreaseCreditBy(order.getValue());
-        }
-    }
-
-    @Override
-    public void rollbackTrades(Order newOrder, LinkedList<Trade> trades) {
-        if (newOrder.getSide() == Side.BUY) {
-            newOrder.getBroker().increaseCreditBy(trades.stream().mapToLong(Trade::getTradedValue).sum());
-            trades.forEach(trade -> trade.getSell().getBroker().decreaseCreditBy(trade.getTradedValue()));
-        }
-        else
-            newOrder.getBroker().decreaseCreditBy(trades.stream().mapToLong(Trade::getTradedValue).sum());
-    }
-
+    // A buy stop order that is not activatable waits in the book, so its credit is reserved
+    // here, through the undo log in case a later control rejects the order.
     @Override
     public MatchingOutcome canStartMatching(Order order) {
-        if (order instanceof StopLimitOrder &&
-                order.getSide() == Side.BUY &&
-                !order.getBroker().hasEnoughCredit(order.getValue()))
-            return MatchingOutcome.NOT_ENOUGH_CREDIT;
+        if (order instanceof StopLimitOrder stopLimitOrder && order.getSide() == Side.BUY) {
+            if (stopLimitOrder.isActivatable(order.getSecurity().getMarketPrice())
+                    ? !order.getSecurity().getUndoLog().hasCredit(order.getBroker(), order.getValue())
+                    : !order.getSecurity().getUndoLog().reserveCredit(order.getBroker(), order.getValue()))
+                return MatchingOutcome.NOT_ENOUGH_CREDIT;
+        }
         return MatchingOutcome.OK;
     }
 
     @Override
     public void matchingStarted(Order order) {
         if (order.getSide() == Side.BUY) {
-            if (order instanceof StopLimitOrder stopLimitOrder && !stopLimitOrder.isActivatable(order.getSecurity().getMarketPrice()))
-                order.getBroker().decreaseCreditBy(order.getValue());
             if (order.getSecurity().getMatchingState() == MatchingState.CONTINUOUS && order.getStatus() == OrderStatus.ACTIVATED)
-                order.getBroker().increaseCreditBy(order.getValue());
+                order.getBroker().releaseCredit(order.getValue());
         }
     }
 
     @Override
     public void marketOpenned(Order order) {
-        order.getBroker().increaseCreditBy(order.getValue());
+        order.getBroker().releaseCredit(order.getValue());
     }
 }
@@ -1,11 +1,9 @@
 package ir.ramtung.tinyme.domain.service.control;
 
+import ir.ramtung.tinyme.domain.entity.FillBuffer;
 import ir.ramtung.tinyme.domain.entity.MatchResult;
 import ir.ramtung.tinyme.domain.entity.MatchingOutcome;
 import ir.ramtung.tinyme.domain.entity.Order;
-import ir.ramtung.tinyme.domain.entity.Trade;
-
-import java.util.LinkedList;
 
 public interface MatchingControl {
     default MatchingOutcome canStartMatching(Order order) { return MatchingOutcome.OK; }
@@ -14,10 +12,8 @@ public interface MatchingControl {
     default MatchingOutcome canAcceptMatching(Order order, MatchResult result) { return MatchingOutcome.OK; }
     default void matchingAccepted(Order order, MatchResult result) {}
 
-    default MatchingOutcome canTrade(Order newOrder, Trade trade) { return MatchingOutcome.OK; }
-    default void tradeAccepted(Order newOrder, Trade trade) {}
-
-    default void rollbackTrades(Order newOrder, LinkedList<Trade> trades) {}
+    default MatchingOutcome canTrade(Order newOrder, FillBuffer fills, int fill) { return MatchingOutcome.OK; }
+    default void tradeAccepted(Order newOrder, FillBuffer fills, int fill) {}
 
     default void marketOpenned(Order order){}
 }
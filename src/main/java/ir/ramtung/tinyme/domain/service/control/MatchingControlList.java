@@ -1,13 +1,12 @@
 package ir.ramtung.tinyme.domain.service.control;
 
+import ir.ramtung.tinyme.domain.entity.FillBuffer;
 import ir.ramtung.tinyme.domain.entity.MatchResult;
 import ir.ramtung.tinyme.domain.entity.MatchingOutcome;
 import ir.ramtung.tinyme.domain.entity.Order;
-import ir.ramtung.tinyme.domain.entity.Trade;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.LinkedList;
 import java.util.List;
 
 @Component
@@ -56,18 +55,18 @@ public class MatchingControlList {
         }
     }
 
-    public MatchingOutcome canTrade(Order newOrder, Trade trade) {
+    public MatchingOutcome canTrade(Order newOrder, FillBuffer fills, int fill) {
         for (MatchingControl control : controlList) {
-            MatchingOutcome outcome = control.canTrade(newOrder, trade);
+            MatchingOutcome outcome = control.canTrade(newOrder, fills, fill);
             if (outcome != MatchingOutcome.OK)
                 return outcome;
         }
         return MatchingOutcome.OK;
     }
 
-    public void tradeAccepted(Order newOrder, Trade trade) {
+    public void tradeAccepted(Order newOrder, FillBuffer fills, int fill) {
         for (MatchingControl control : controlList) {
-            control.tradeAccepted(newOrder, trade);
+            control.tradeAccepted(newOrder, fills, fill);
         }
     }
 
@@ -75,10 +74,4 @@ public class MatchingControlList {
         for (MatchingControl control : controlList)
             control.marketOpenned(order);
     }
-
-    public void rollbackTrades(Order newOrder, LinkedList<Trade> trades) {
-        for (MatchingControl control2 : controlList) {
-            control2.rollbackTrades(newOrder, trades);
-        }
-    }
 }
@@ -13,9 +13,10 @@ public class OwnershipControl implements MatchingControl {
         return MatchingOutcome.OK;
     }
     public void matchingAccepted(Order order, MatchResult result) {
-        for (Trade trade : result.trades()) {
-            trade.getBuy().getShareholder().incPosition(trade.getSecurity(), trade.getQuantity());
-            trade.getSell().getShareholder().decPosition(trade.getSecurity(), trade.getQuantity());
+        FillBuffer fills = result.fills();
+        for (int fill = 0; fill < fills.size(); fill++) {
+            fills.buy(fill).getShareholder().incPosition(order.getSecurity(), fills.quantity(fill));
+            fills.sell(fill).getShareholder().decPosition(order.getSecurity(), fills.quantity(fill));
         }
     }
 }
@@ -1,15 +1,25 @@
 package ir.ramtung.tinyme.domain.service.publisher;
 
+import ir.ramtung.tinyme.domain.entity.Order;
 import ir.ramtung.tinyme.domain.entity.Security;
 import ir.ramtung.tinyme.messaging.EventPublisher;
 import ir.ramtung.tinyme.messaging.event.OrderDeletedEvent;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 public class OrderDeletedPublisher implements Publisher {
     @Override
     public void deleteOrderRqHandled(DeleteOrderRq deleteOrderRq, Security security, EventPublisher eventPublisher) {
         eventPublisher.publish(new OrderDeletedEvent(deleteOrderRq.getRequestId(), deleteOrderRq.getOrderId()));
     }
+
+    @Override
+    public void massCancelRqHandled(MassCancelRq massCancelRq, List<Order> cancelledOrders, Security security, EventPublisher eventPublisher) {
+        for (Order order : cancelledOrders)
+            eventPublisher.publish(new OrderDeletedEvent(massCancelRq.getRequestId(), order.getOrderId()));
+    }
 }
@@ -9,20 +9,18 @@ import ir.ramtung.tinyme.messaging.event.OrderExecutedEvent;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import org.springframework.stereotype.Component;
 
-import java.util.stream.Collectors;
-
 @Component
 public class OrderExecutedPublisher implements Publisher {
     @Override
     public void enterOrderRqHandled(EnterOrderRq enterOrderRq, MatchResult matchResult, Security security, EventPublisher eventPublisher) {
-        if (!matchResult.trades().isEmpty()) {
-            eventPublisher.publish(new OrderExecutedEvent(enterOrderRq.getRequestId(), enterOrderRq.getOrderId(), matchResult.trades().stream().map(TradeDTO::new).collect(Collectors.toList())));
+        if (!matchResult.fills().isEmpty()) {
+            eventPublisher.publish(new OrderExecutedEvent(enterOrderRq.getRequestId(), enterOrderRq.getOrderId(), TradeDTO.of(matchResult.fills())));
         }
     }
 
     @Override
     public void activatedOrderExecuted(StopLimitOrder order, MatchResult matchResult, EventPublisher eventPublisher) {
-        if (!matchResult.trades().isEmpty())
-            eventPublisher.publish(new OrderExecutedEvent(order.getRequestId(), order.getOrderId(), matchResult.trades().stream().map(TradeDTO::new).collect(Collectors.toList())));
+        if (!matchResult.fills().isEmpty())
+            eventPublisher.publish(new OrderExecutedEvent(order.getRequestId(), order.getOrderId(), TradeDTO.of(matchResult.fills())));
     }
 }
@@ -1,6 +1,7 @@
 package ir.ramtung.tinyme.domain.service.publisher;
 
 import ir.ramtung.tinyme.domain.entity.MatchResult;
+import ir.ramtung.tinyme.domain.entity.Order;
 import ir.ramtung.tinyme.domain.entity.Security;
 import ir.ramtung.tinyme.domain.entity.StopLimitOrder;
 import ir.ramtung.tinyme.domain.entity.Trade;
@@ -9,6 +10,7 @@ import ir.ramtung.tinyme.messaging.exception.InvalidRequestException;
 import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
 
 import java.util.List;
 
@@ -16,6 +18,7 @@ public interface Publisher {
     default void invalidRequestExceptionOccured(long requestId, long orderId, InvalidRequestException ex, EventPublisher eventPublisher) {}
     default void enterOrderRqHandled(EnterOrderRq enterOrderRq, MatchResult matchResult, Security security, EventPublisher eventPublisher) {}
     default void deleteOrderRqHandled(DeleteOrderRq deleteOrderRq, Security security, EventPublisher eventPublisher) {}
+    default void massCancelRqHandled(MassCancelRq massCancelRq, List<Order> cancelledOrders, Security security, EventPublisher eventPublisher) {}
     default void changeMatchingStateRqHandled(ChangeMatchingStateRq changeMatchingStateRq, List<Trade> trades, EventPublisher eventPublisher) {}
     default void queuedOrderActivated(StopLimitOrder order, EventPublisher eventPublisher) {}
     default void activatedOrderExecuted(StopLimitOrder order, MatchResult matchResult,EventPublisher eventPublisher) {}
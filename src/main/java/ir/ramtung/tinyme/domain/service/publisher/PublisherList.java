@@ -1,6 +1,7 @@
 package ir.ramtung.tinyme.domain.service.publisher;
 
 import ir.ramtung.tinyme.domain.entity.MatchResult;
+import ir.ramtung.tinyme.domain.entity.Order;
 import ir.ramtung.tinyme.domain.entity.Security;
 import ir.ramtung.tinyme.domain.entity.StopLimitOrder;
 import ir.ramtung.tinyme.domain.entity.Trade;
@@ -9,6 +10,7 @@ import ir.ramtung.tinyme.messaging.exception.InvalidRequestException;
 import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -44,6 +46,11 @@ public class PublisherList {
             publisher.deleteOrderRqHandled(deleteOrderRq, security, eventPublisher);
     }
 
+    public void massCancelRqHandled(MassCancelRq massCancelRq, List<Order> cancelledOrders, Security security, EventPublisher eventPublisher) {
+        for (Publisher publisher : publishers)
+            publisher.massCancelRqHandled(massCancelRq, cancelledOrders, security, eventPublisher);
+    }
+
     public void activatedOrderExecuted(StopLimitOrder order, MatchResult matchResult,EventPublisher eventPublisher) {
         for (Publisher publisher : publishers)
             publisher.activatedOrderExecuted(order, matchResult, eventPublisher);
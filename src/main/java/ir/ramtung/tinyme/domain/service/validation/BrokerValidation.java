@@ -2,7 +2,8 @@ package ir.ramtung.tinyme.domain.service.validation;
 
 import ir.ramtung.tinyme.messaging.Message;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
-import ir.ramtung.tinyme.repository.Repositories;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelScope;
 import org.springframework.stereotype.Component;
 
 import java.util.LinkedList;
@@ -11,9 +12,17 @@ import java.util.List;
 @Component
 public class BrokerValidation implements Validation {
     @Override
-    public List<String> validate(EnterOrderRq enterOrderRq, Repositories repositories) {
+    public List<String> validate(EnterOrderRq enterOrderRq, ValidationContext context) {
         List<String> errors = new LinkedList<>();
-        if (repositories.getBrokerRepository().findBrokerById(enterOrderRq.getBrokerId()) == null)
+        if (context.getBroker() == null)
+            errors.add(Message.UNKNOWN_BROKER_ID);
+        return errors;
+    }
+
+    @Override
+    public List<String> validate(MassCancelRq massCancelRq, ValidationContext context) {
+        List<String> errors = new LinkedList<>();
+        if (massCancelRq.getScope() == MassCancelScope.BROKER && context.getBroker() == null)
             errors.add(Message.UNKNOWN_BROKER_ID);
         return errors;
     }
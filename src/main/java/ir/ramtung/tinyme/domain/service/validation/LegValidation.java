@@ -0,0 +1,15 @@
+package ir.ramtung.tinyme.domain.service.validation;
+
+import java.util.LinkedList;
+import java.util.List;
+
+// The context and the errors of one leg of a batch.
+public record LegValidation(ValidationContext context, List<String> errors) {
+    public LegValidation(ValidationContext context) {
+        this(context, new LinkedList<>());
+    }
+
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+}
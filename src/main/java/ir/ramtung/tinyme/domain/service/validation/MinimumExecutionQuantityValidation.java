@@ -5,7 +5,6 @@ import ir.ramtung.tinyme.domain.entity.Security;
 import ir.ramtung.tinyme.messaging.Message;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import ir.ramtung.tinyme.messaging.request.MatchingState;
-import ir.ramtung.tinyme.repository.Repositories;
 import org.springframework.stereotype.Component;
 
 import java.util.LinkedList;
@@ -14,7 +13,7 @@ import java.util.List;
 @Component
 public class MinimumExecutionQuantityValidation implements Validation {
     @Override
-    public List<String> validate(EnterOrderRq enterOrderRq, Repositories repositories) {
+    public List<String> validate(EnterOrderRq enterOrderRq, ValidationContext context) {
         List<String> errors = new LinkedList<>();
 
         if (enterOrderRq.getMinimumExecutionQuantity() < 0)
@@ -22,12 +21,12 @@ public class MinimumExecutionQuantityValidation implements Validation {
         if (enterOrderRq.getMinimumExecutionQuantity() > enterOrderRq.getQuantity())
             errors.add(Message.MINIMUM_EXECUTION_QUANTITY_NOT_LESS_THAN_OR_EQUAL_TO_QUANTITY);
 
-        Security security = repositories.getSecurityRepository().findSecurityByIsin(enterOrderRq.getSecurityIsin());
+        Security security = context.getSecurity();
         if (security != null) {
             if (security.getMatchingState() == MatchingState.AUCTION && enterOrderRq.getMinimumExecutionQuantity() > 0)
                 errors.add(Message.CANNOT_SPECIFY_MINIMUM_EXECUTION_QUANTITY_IN_THE_AUCTION_STATE);
 
-            Order order = security.getOrderBook().findByOrderId(enterOrderRq.getSide(), enterOrderRq.getOrderId());
+            Order order = context.getOrder();
             if (order != null && order.getMinimumExecutionQuantity() != enterOrderRq.getMinimumExecutionQuantity())
                 errors.add(Message.MINIMUM_EXECUTION_QUANTITY_OF_UPDATE_ORDER_HAS_CHANGED);
         }
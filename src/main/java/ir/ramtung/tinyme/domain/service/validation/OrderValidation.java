@@ -6,7 +6,6 @@ import ir.ramtung.tinyme.messaging.Message;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
 import ir.ramtung.tinyme.messaging.request.OrderEntryType;
-import ir.ramtung.tinyme.repository.Repositories;
 import org.springframework.stereotype.Component;
 
 import java.util.LinkedList;
@@ -15,7 +14,7 @@ import java.util.List;
 @Component
 public class OrderValidation implements Validation {
     @Override
-    public List<String> validate(EnterOrderRq enterOrderRq, Repositories repositories) {
+    public List<String> validate(EnterOrderRq enterOrderRq, ValidationContext context) {
         List<String> errors = new LinkedList<>();
 
         if (enterOrderRq.getOrderId() <= 0)
@@ -25,9 +24,9 @@ public class OrderValidation implements Validation {
         if (enterOrderRq.getPrice() <= 0)
             errors.add(Message.ORDER_PRICE_NOT_POSITIVE);
 
-        Security security = repositories.getSecurityRepository().findSecurityByIsin(enterOrderRq.getSecurityIsin());
+        Security security = context.getSecurity();
         if (security != null && enterOrderRq.getRequestType() == OrderEntryType.UPDATE_ORDER) {
-            Order order = security.getOrderBook().findByOrderId(enterOrderRq.getSide(), enterOrderRq.getOrderId());
+            Order order = context.getOrder();
             if (order == null)
                 errors.add(Message.ORDER_ID_NOT_FOUND);
         }
@@ -35,15 +34,15 @@ public class OrderValidation implements Validation {
     }
 
     @Override
-    public List<String> validate(DeleteOrderRq deleteOrderRq, Repositories repositories) {
+    public List<String> validate(DeleteOrderRq deleteOrderRq, ValidationContext context) {
         List<String> errors = new LinkedList<>();
 
         if (deleteOrderRq.getOrderId() <= 0)
             errors.add(Message.INVALID_ORDER_ID);
 
-        Security security = repositories.getSecurityRepository().findSecurityByIsin(deleteOrderRq.getSecurityIsin());
+        Security security = context.getSecurity();
         if (security != null) {
-            Order order = security.getOrderBook().findByOrderId(deleteOrderRq.getSide(), deleteOrderRq.getOrderId());
+            Order order = context.getOrder();
             if (order == null)
                 errors.add(Message.ORDER_ID_NOT_FOUND);
         }
@@ -5,7 +5,6 @@ import ir.ramtung.tinyme.domain.entity.Order;
 import ir.ramtung.tinyme.domain.entity.Security;
 import ir.ramtung.tinyme.messaging.Message;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
-import ir.ramtung.tinyme.repository.Repositories;
 import org.springframework.stereotype.Component;
 
 import java.util.LinkedList;
@@ -14,15 +13,15 @@ import java.util.List;
 @Component
 public class PeakSizeValidation implements Validation {
     @Override
-    public List<String> validate(EnterOrderRq enterOrderRq, Repositories repositories) {
+    public List<String> validate(EnterOrderRq enterOrderRq, ValidationContext context) {
         List<String> errors = new LinkedList<>();
 
         if (enterOrderRq.getPeakSize() < 0 || enterOrderRq.getPeakSize() >= enterOrderRq.getQuantity())
             errors.add(Message.INVALID_PEAK_SIZE);
 
-        Security security = repositories.getSecurityRepository().findSecurityByIsin(enterOrderRq.getSecurityIsin());
+        Security security = context.getSecurity();
         if (security != null) {
-            Order order = security.getOrderBook().findByOrderId(enterOrderRq.getSide(), enterOrderRq.getOrderId());
+            Order order = context.getOrder();
             if ((order instanceof IcebergOrder) && enterOrderRq.getPeakSize() == 0)
                 errors.add(Message.INVALID_PEAK_SIZE);
             if (order != null && !(order instanceof IcebergOrder) && enterOrderRq.getPeakSize() != 0)
@@ -5,7 +5,7 @@ import ir.ramtung.tinyme.messaging.Message;
 import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
-import ir.ramtung.tinyme.repository.Repositories;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
 import org.springframework.stereotype.Component;
 
 import java.util.LinkedList;
@@ -14,10 +14,10 @@ import java.util.List;
 @Component
 public class SecurityValidation implements Validation {
     @Override
-    public List<String> validate(EnterOrderRq enterOrderRq, Repositories repositories) {
+    public List<String> validate(EnterOrderRq enterOrderRq, ValidationContext context) {
         List<String> errors = new LinkedList<>();
 
-        Security security = repositories.getSecurityRepository().findSecurityByIsin(enterOrderRq.getSecurityIsin());
+        Security security = context.getSecurity();
         if (security == null)
             errors.add(Message.UNKNOWN_SECURITY_ISIN);
         else {
@@ -30,18 +30,28 @@ public class SecurityValidation implements Validation {
     }
 
     @Override
-    public List<String> validate(DeleteOrderRq deleteOrderRq, Repositories repositories) {
+    public List<String> validate(DeleteOrderRq deleteOrderRq, ValidationContext context) {
         List<String> errors = new LinkedList<>();
-        if (repositories.getSecurityRepository().findSecurityByIsin(deleteOrderRq.getSecurityIsin()) == null)
+        if (context.getSecurity() == null)
             errors.add(Message.UNKNOWN_SECURITY_ISIN);
         return errors;
     }
 
     @Override
-    public List<String> validate(ChangeMatchingStateRq changeMatchingStateRq, Repositories repositories) {
+    public List<String> validate(ChangeMatchingStateRq changeMatchingStateRq, ValidationContext context) {
         List<String> errors = new LinkedList<>();
-        if (repositories.getSecurityRepository().findSecurityByIsin(changeMatchingStateRq.getSecurityIsin()) == null)
+        if (context.getSecurity() == null)
             errors.add(Message.UNKNOWN_SECURITY_ISIN);
         return errors;
     }
+
+    @Override
+    public List<String> validate(MassCancelRq massCancelRq, ValidationContext context) {
+        List<String> errors = new LinkedList<>();
+        if (context.getSecurity() == null)
+            errors.add(Message.UNKNOWN_SECURITY_ISIN);
+        if (massCancelRq.getScope() == null)
+            errors.add(Message.MASS_CANCEL_SCOPE_NOT_GIVEN);
+        return errors;
+    }
 }
@@ -2,7 +2,8 @@ package ir.ramtung.tinyme.domain.service.validation;
 
 import ir.ramtung.tinyme.messaging.Message;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
-import ir.ramtung.tinyme.repository.Repositories;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelScope;
 import org.springframework.stereotype.Component;
 
 import java.util.LinkedList;
@@ -11,9 +12,17 @@ import java.util.List;
 @Component
 public class ShareholderValidation implements Validation {
     @Override
-    public List<String> validate(EnterOrderRq enterOrderRq, Repositories repositories) {
+    public List<String> validate(EnterOrderRq enterOrderRq, ValidationContext context) {
         List<String> errors = new LinkedList<>();
-        if (repositories.getShareholderRepository().findShareholderById(enterOrderRq.getShareholderId()) == null)
+        if (context.getShareholder() == null)
+            errors.add(Message.UNKNOWN_SHAREHOLDER_ID);
+        return errors;
+    }
+
+    @Override
+    public List<String> validate(MassCancelRq massCancelRq, ValidationContext context) {
+        List<String> errors = new LinkedList<>();
+        if (massCancelRq.getScope() == MassCancelScope.SHAREHOLDER && context.getShareholder() == null)
             errors.add(Message.UNKNOWN_SHAREHOLDER_ID);
         return errors;
     }
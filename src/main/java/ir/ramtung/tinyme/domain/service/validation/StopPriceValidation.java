@@ -6,8 +6,8 @@ import ir.ramtung.tinyme.domain.entity.StopLimitOrder;
 import ir.ramtung.tinyme.messaging.Message;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
 import ir.ramtung.tinyme.messaging.request.MatchingState;
-import ir.ramtung.tinyme.repository.Repositories;
 import org.springframework.stereotype.Component;
 
 import java.util.LinkedList;
@@ -16,7 +16,7 @@ import java.util.List;
 @Component
 public class StopPriceValidation implements Validation {
     @Override
-    public List<String> validate(EnterOrderRq enterOrderRq, Repositories repositories) {
+    public List<String> validate(EnterOrderRq enterOrderRq, ValidationContext context) {
         List<String> errors = new LinkedList<>();
 
         if (enterOrderRq.getStopPrice() > 0) {
@@ -26,12 +26,12 @@ public class StopPriceValidation implements Validation {
                 errors.add(Message.STOP_LIMIT_ORDER_CAN_NOT_BE_ICEBERG_ORDER);
         }
 
-        Security security = repositories.getSecurityRepository().findSecurityByIsin(enterOrderRq.getSecurityIsin());
+        Security security = context.getSecurity();
         if (security != null) {
             if (security.getMatchingState() == MatchingState.AUCTION && enterOrderRq.getStopPrice() != 0)
                 errors.add(Message.CANNOT_SUBMIT_OR_UPDATE_STOP_LIMIT_ORDER_IN_THE_AUCTION_STATE);
 
-            Order order = security.getOrderBook().findByOrderId(enterOrderRq.getSide(), enterOrderRq.getOrderId());
+            Order order = context.getOrder();
             if (order != null && !(order instanceof StopLimitOrder) && enterOrderRq.getStopPrice() > 0)
                     errors.add(Message.CANNOT_SPECIFY_STOP_PRICE_FOR_A_ACTIVATED_ORDER);
         }
@@ -40,13 +40,25 @@ public class StopPriceValidation implements Validation {
     }
 
     @Override
-    public List<String> validate(DeleteOrderRq deleteOrderRq, Repositories repositories) {
+    public List<String> validate(DeleteOrderRq deleteOrderRq, ValidationContext context) {
         List<String> errors = new LinkedList<>();
 
-        Security security = repositories.getSecurityRepository().findSecurityByIsin(deleteOrderRq.getSecurityIsin());
+        Security security = context.getSecurity();
         if (security != null && security.getMatchingState() == MatchingState.AUCTION)
                 errors.add(Message.CANNOT_DELETE_STOP_LIMIT_ORDER_IN_THE_AUCTION_STATE);
 
         return errors;
     }
+
+    // Held to the same rule as a single delete.
+    @Override
+    public List<String> validate(MassCancelRq massCancelRq, ValidationContext context) {
+        List<String> errors = new LinkedList<>();
+
+        Security security = context.getSecurity();
+        if (security != null && security.getMatchingState() == MatchingState.AUCTION)
+            errors.add(Message.CANNOT_DELETE_STOP_LIMIT_ORDER_IN_THE_AUCTION_STATE);
+
+        return errors;
+    }
 }
@@ -0,0 +1,64 @@
+package ir.ramtung.tinyme.domain.service.validation;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Order;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelScope;
+import ir.ramtung.tinyme.repository.Repositories;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The entities a request refers to, looked up once before validation starts.
+ * Any of them is {@code null} when the request names an unknown one.
+ */
+@Getter
+@AllArgsConstructor
+public class ValidationContext {
+    private final Security security;
+    private final Broker broker;
+    private final Shareholder shareholder;
+    private final Order order;
+
+    public static ValidationContext of(EnterOrderRq enterOrderRq, Repositories repositories) {
+        return of(enterOrderRq, repositories.getSecurityRepository().findSecurityByIsin(enterOrderRq.getSecurityIsin()), repositories);
+    }
+
+    // For a request whose security is already looked up.
+    public static ValidationContext of(EnterOrderRq enterOrderRq, Security security, Repositories repositories) {
+        Order order = security == null ? null : security.getOrderBook().findByOrderId(enterOrderRq.getSide(), enterOrderRq.getOrderId());
+        return new ValidationContext(security,
+                repositories.getBrokerRepository().findBrokerById(enterOrderRq.getBrokerId()),
+                repositories.getShareholderRepository().findShareholderById(enterOrderRq.getShareholderId()),
+                order);
+    }
+
+    public static ValidationContext of(DeleteOrderRq deleteOrderRq, Repositories repositories) {
+        return of(deleteOrderRq, repositories.getSecurityRepository().findSecurityByIsin(deleteOrderRq.getSecurityIsin()));
+    }
+
+    public static ValidationContext of(DeleteOrderRq deleteOrderRq, Security security) {
+        Order order = security == null ? null : security.getOrderBook().findByOrderId(deleteOrderRq.getSide(), deleteOrderRq.getOrderId());
+        return new ValidationContext(security, null, null, order);
+    }
+
+    public static ValidationContext of(ChangeMatchingStateRq changeMatchingStateRq, Repositories repositories) {
+        Security security = repositories.getSecurityRepository().findSecurityByIsin(changeMatchingStateRq.getSecurityIsin());
+        return new ValidationContext(security, null, null, null);
+    }
+
+    // Only the broker or the shareholder the scope names is looked up.
+    public static ValidationContext of(MassCancelRq massCancelRq, Repositories repositories) {
+        Security security = repositories.getSecurityRepository().findSecurityByIsin(massCancelRq.getSecurityIsin());
+        Broker broker = massCancelRq.getScope() == MassCancelScope.BROKER
+                ? repositories.getBrokerRepository().findBrokerById(massCancelRq.getBrokerId()) : null;
+        Shareholder shareholder = massCancelRq.getScope() == MassCancelScope.SHAREHOLDER
+                ? repositories.getShareholderRepository().findShareholderById(massCancelRq.getShareholderId()) : null;
+        return new ValidationContext(security, broker, shareholder, null);
+    }
+}
@@ -1,13 +1,17 @@
 package ir.ramtung.tinyme.domain.service.validation;
 
+import ir.ramtung.tinyme.domain.entity.Security;
 import ir.ramtung.tinyme.messaging.exception.InvalidRequestException;
 import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderBatchRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
 import ir.ramtung.tinyme.repository.Repositories;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -16,31 +20,75 @@ public class ValidationList {
     @Autowired
     private List<Validation> validations;
 
-    public void validate (EnterOrderRq enterOrderRq, Repositories repositories) throws InvalidRequestException {
+    public ValidationContext validate (EnterOrderRq enterOrderRq, Repositories repositories) throws InvalidRequestException {
+        ValidationContext context = ValidationContext.of(enterOrderRq, repositories);
         List<String> errors = new LinkedList<>();
         for (Validation validation : validations) {
-            errors.addAll(validation.validate(enterOrderRq, repositories));
+            errors.addAll(validation.validate(enterOrderRq, context));
         }
         if (!errors.isEmpty())
             throw new InvalidRequestException(errors);
+        return context;
     }
 
-    public void validate (DeleteOrderRq deleteOrderRq, Repositories repositories) throws InvalidRequestException {
+    public ValidationContext validate (DeleteOrderRq deleteOrderRq, Repositories repositories) throws InvalidRequestException {
+        ValidationContext context = ValidationContext.of(deleteOrderRq, repositories);
         List<String> errors = new LinkedList<>();
         for (Validation validation : validations) {
-            errors.addAll(validation.validate(deleteOrderRq, repositories));
+            errors.addAll(validation.validate(deleteOrderRq, context));
         }
         if (!errors.isEmpty())
             throw new InvalidRequestException(errors);
+        return context;
     }
 
-    public void validate (ChangeMatchingStateRq changeMatchingStateRq, Repositories repositories) throws InvalidRequestException {
+    public ValidationContext validate (ChangeMatchingStateRq changeMatchingStateRq, Repositories repositories) throws InvalidRequestException {
+        ValidationContext context = ValidationContext.of(changeMatchingStateRq, repositories);
         List<String> errors = new LinkedList<>();
         for (Validation validation : validations) {
-            errors.addAll(validation.validate(changeMatchingStateRq, repositories));
+            errors.addAll(validation.validate(changeMatchingStateRq, context));
         }
         if (!errors.isEmpty())
             throw new InvalidRequestException(errors);
+        return context;
     }
 
+    public ValidationContext validate (MassCancelRq massCancelRq, Repositories repositories) throws InvalidRequestException {
+        ValidationContext context = ValidationContext.of(massCancelRq, repositories);
+        List<String> errors = new LinkedList<>();
+        for (Validation validation : validations) {
+            errors.addAll(validation.validate(massCancelRq, context));
+        }
+        if (!errors.isEmpty())
+            throw new InvalidRequestException(errors);
+        return context;
+    }
+
+    // Validates the legs of a batch in one pass over the validations, the deletes first and
+    // then the orders, all against the book as it is now. The security is looked up once; a
+    // leg naming another one is taken as naming an unknown security.
+    public List<LegValidation> validate(EnterOrderBatchRq batchRq, Repositories repositories) {
+        Security security = repositories.getSecurityRepository().findSecurityByIsin(batchRq.getSecurityIsin());
+        List<LegValidation> legs = new ArrayList<>(batchRq.getDeletes().size() + batchRq.getOrders().size());
+        for (DeleteOrderRq deleteOrderRq : batchRq.getDeletes())
+            legs.add(new LegValidation(ValidationContext.of(deleteOrderRq, legSecurity(deleteOrderRq.getSecurityIsin(), batchRq, security))));
+        for (EnterOrderRq enterOrderRq : batchRq.getOrders())
+            legs.add(new LegValidation(ValidationContext.of(enterOrderRq, legSecurity(enterOrderRq.getSecurityIsin(), batchRq, security), repositories)));
+        for (Validation validation : validations) {
+            int leg = 0;
+            for (DeleteOrderRq deleteOrderRq : batchRq.getDeletes()) {
+                LegValidation legValidation = legs.get(leg++);
+                legValidation.errors().addAll(validation.validate(deleteOrderRq, legValidation.context()));
+            }
+            for (EnterOrderRq enterOrderRq : batchRq.getOrders()) {
+                LegValidation legValidation = legs.get(leg++);
+                legValidation.errors().addAll(validation.validate(enterOrderRq, legValidation.context()));
+            }
+        }
+        return legs;
+    }
+
+    private static Security legSecurity(String legIsin, EnterOrderBatchRq batchRq, Security security) {
+        return legIsin == null || legIsin.equals(batchRq.getSecurityIsin()) ? security : null;
+    }
 }
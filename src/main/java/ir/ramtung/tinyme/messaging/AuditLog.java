@@ -0,0 +1,190 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.util.RingBuffer;
+import ir.ramtung.tinyme.util.WaitStrategy;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * The trail of every request received and every event published, kept off the threads that
+ * handle them. {@link #record} only puts the message and the time into a pre-allocated ring
+ * slot; a background writer encodes it with the {@link BinaryCodec} and appends it to the
+ * audit file, starting a new file once one grows past its limit. Nothing is formatted as text
+ * until the trail is read back with {@link #read}, or printed by {@link #main}.
+ * <p>
+ * A record is its length, the epoch milliseconds it was recorded at, and the encoded message.
+ * Files are named after the audit file and a count. Messages must not change once recorded.
+ * Without a file the log records nothing.
+ */
+@Component
+public class AuditLog {
+    public static final AuditLog DISABLED = new AuditLog((Path) null, 1, 0);
+
+    private static final int HEADER_BYTES = 12;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private static final class Slot {
+        Object message;
+        long time;
+    }
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final Path path;
+    private final long fileBytes;
+    private final RingBuffer<Slot> ringBuffer;
+    private ByteBuffer writeBuffer;
+    private ByteBuffer encodeBuffer;
+    private FileChannel channel;
+    private long fileIndex;
+    private volatile boolean running;
+
+    @Autowired
+    public AuditLog(@Value("${auditFile:}") String file,
+                    @Value("${auditRingSize:8192}") int ringSize,
+                    @Value("${auditFileMegabytes:256}") long fileMegabytes) {
+        this(file == null || file.isBlank() ? null : Path.of(file), ringSize, fileMegabytes << 20);
+    }
+
+    public AuditLog(Path path, int ringSize, long fileBytes) {
+        this.path = path;
+        this.fileBytes = fileBytes;
+        this.ringBuffer = path == null ? null : new RingBuffer<>(ringSize, Slot::new, WaitStrategy.PARKING);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (path == null)
+            return;
+        writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        encodeBuffer = BinaryCodec.newBuffer();
+        List<Long> indexes = indexes(path);
+        fileIndex = indexes.isEmpty() ? 0 : indexes.get(indexes.size() - 1) + 1;
+        channel = FileChannel.open(file(path, fileIndex), CREATE, WRITE, TRUNCATE_EXISTING);
+        ringBuffer.start(ringBuffer.stage("audit", this::write));
+        running = true;
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    public void record(Object message) {
+        if (!running)
+            return;
+        long sequence = ringBuffer.next();
+        Slot slot = ringBuffer.get(sequence);
+        slot.message = message;
+        slot.time = System.currentTimeMillis();
+        ringBuffer.publish(sequence);
+    }
+
+    private void write(Slot slot, long sequence, boolean endOfBatch) {
+        try {
+            encodeBuffer = BinaryCodec.encode(slot.message, encodeBuffer);
+            slot.message = null;
+            if (writeBuffer.remaining() < HEADER_BYTES + encodeBuffer.remaining())
+                flush();
+            if (writeBuffer.remaining() < HEADER_BYTES + encodeBuffer.remaining())
+                writeBuffer = ByteBuffer.allocateDirect(HEADER_BYTES + encodeBuffer.remaining());
+            writeBuffer.putInt(encodeBuffer.remaining()).putLong(slot.time).put(encodeBuffer);
+            if (endOfBatch)
+                flush();
+        } catch (IOException | RuntimeException ex) {
+            writeBuffer.clear();
+            log.log(Level.SEVERE, "Could not write the audit log", ex);
+        }
+    }
+
+    private void flush() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining())
+            channel.write(writeBuffer);
+        writeBuffer.clear();
+        if (channel.size() >= fileBytes) {
+            channel.close();
+            channel = FileChannel.open(file(path, ++fileIndex), CREATE, WRITE, TRUNCATE_EXISTING);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (!running)
+            return;
+        running = false;
+        try {
+            ringBuffer.halt();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        channel.force(false);
+        channel.close();
+    }
+
+    // Hands every record of the trail to the consumer, oldest first; a record cut short at the
+    // end of a file, as a crash may leave, ends that file.
+    public static int read(Path path, BiConsumer<Instant, Object> consumer) throws IOException {
+        int count = 0;
+        for (long index : indexes(path)) {
+            MappedByteBuffer records;
+            try (FileChannel file = FileChannel.open(file(path, index), READ)) {
+                records = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            }
+            while (records.remaining() >= HEADER_BYTES) {
+                int length = records.getInt();
+                long time = records.getLong();
+                if (length <= 0 || length > records.remaining())
+                    break;
+                ByteBuffer record = records.slice(records.position(), length);
+                records.position(records.position() + length);
+                consumer.accept(Instant.ofEpochMilli(time), BinaryCodec.decode(record));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Prints the audit trail whose file is given as the argument, one record a line.
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: AuditLog <auditFile>");
+            System.exit(2);
+        }
+        read(Path.of(args[0]), (time, message) -> System.out.println(time + " " + message));
+    }
+
+    private static Path file(Path path, long index) {
+        return path.resolveSibling(path.getFileName() + "." + index);
+    }
+
+    private static List<Long> indexes(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName() + ".";
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.length() > prefix.length()
+                            && name.substring(prefix.length()).chars().allMatch(Character::isDigit))
+                    .map(name -> Long.parseLong(name.substring(prefix.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
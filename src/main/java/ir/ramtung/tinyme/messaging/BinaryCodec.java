@@ -0,0 +1,374 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.CreditDecisions;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-layout binary encoding of the requests and events, for BytesMessages, and of the
+ * {@link CreditDecisions} the journal keeps with the requests. A message is
+ * the schema version byte and a message type byte followed by the fields in declaration
+ * order, big-endian: enums as their ordinal byte (-1 for null), times as epoch second and
+ * nanos in UTC, strings and lists as a short count (-1 for null) and their elements.
+ * Changing a layout means bumping {@link #SCHEMA_VERSION}.
+ */
+public final class BinaryCodec {
+    public static final byte SCHEMA_VERSION = 1;
+    // Value of the _type property that marks a binary message, next to the class names JSON uses.
+    public static final String MESSAGE_TYPE = "tinyme.binary";
+
+    private static final byte ENTER_ORDER_RQ = 1;
+    private static final byte DELETE_ORDER_RQ = 2;
+    private static final byte CHANGE_MATCHING_STATE_RQ = 3;
+    private static final byte ENTER_ORDER_BATCH_RQ = 4;
+    private static final byte MASS_CANCEL_RQ = 5;
+    private static final byte CREDIT_DECISIONS = 6;
+    private static final byte ORDER_ACCEPTED = 10;
+    private static final byte ORDER_ACTIVATED = 11;
+    private static final byte ORDER_DELETED = 12;
+    private static final byte ORDER_UPDATED = 13;
+    private static final byte ORDER_REJECTED = 14;
+    private static final byte ORDER_EXECUTED = 15;
+    private static final byte TRADE = 16;
+    private static final byte OPENING_PRICE = 17;
+    private static final byte SECURITY_STATE_CHANGED = 18;
+    private static final byte ORDER_BATCH_HANDLED = 19;
+    private static final byte MASS_CANCEL_HANDLED = 20;
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private BinaryCodec() {
+    }
+
+    public static ByteBuffer newBuffer() {
+        return ByteBuffer.allocate(INITIAL_CAPACITY);
+    }
+
+    // Encodes into the buffer, or into a larger one if it does not fit, and returns the
+    // buffer holding the message, flipped for reading. Callers keep it for the next message.
+    public static ByteBuffer encode(Object message, ByteBuffer buffer) {
+        while (true) {
+            buffer.clear();
+            try {
+                write(message, buffer);
+                return buffer.flip();
+            } catch (BufferOverflowException ex) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    public static Object decode(ByteBuffer buffer) {
+        byte version = buffer.get();
+        if (version != SCHEMA_VERSION)
+            throw new IllegalArgumentException("Unsupported schema version " + version);
+        byte type = buffer.get();
+        return switch (type) {
+            case ENTER_ORDER_RQ -> readEnterOrderRq(buffer);
+            case DELETE_ORDER_RQ -> readDeleteOrderRq(buffer);
+            case CHANGE_MATCHING_STATE_RQ -> new ChangeMatchingStateRq(readString(buffer), readEnum(buffer, MatchingState.values()));
+            case ENTER_ORDER_BATCH_RQ -> readEnterOrderBatchRq(buffer);
+            case MASS_CANCEL_RQ -> new MassCancelRq(buffer.getLong(), readString(buffer), readEnum(buffer, MassCancelScope.values()), buffer.getLong(), buffer.getLong());
+            case CREDIT_DECISIONS -> readCreditDecisions(buffer);
+            default -> readEvent(type, buffer);
+        };
+    }
+
+    private static void write(Object message, ByteBuffer buffer) {
+        buffer.put(SCHEMA_VERSION);
+        if (message instanceof EnterOrderRq rq) {
+            buffer.put(ENTER_ORDER_RQ);
+            writeEnterOrderRq(buffer, rq);
+        } else if (message instanceof DeleteOrderRq rq) {
+            buffer.put(DELETE_ORDER_RQ);
+            writeDeleteOrderRq(buffer, rq);
+        } else if (message instanceof ChangeMatchingStateRq rq) {
+            buffer.put(CHANGE_MATCHING_STATE_RQ);
+            writeString(buffer, rq.getSecurityIsin());
+            writeEnum(buffer, rq.getTargetState());
+        } else if (message instanceof EnterOrderBatchRq rq) {
+            buffer.put(ENTER_ORDER_BATCH_RQ);
+            buffer.putLong(rq.getRequestId());
+            writeString(buffer, rq.getSecurityIsin());
+            writeCount(buffer, rq.getDeletes());
+            if (rq.getDeletes() != null)
+                for (DeleteOrderRq delete : rq.getDeletes())
+                    writeDeleteOrderRq(buffer, delete);
+            writeCount(buffer, rq.getOrders());
+            if (rq.getOrders() != null)
+                for (EnterOrderRq order : rq.getOrders())
+                    writeEnterOrderRq(buffer, order);
+        } else if (message instanceof MassCancelRq rq) {
+            buffer.put(MASS_CANCEL_RQ);
+            buffer.putLong(rq.getRequestId());
+            writeString(buffer, rq.getSecurityIsin());
+            writeEnum(buffer, rq.getScope());
+            buffer.putLong(rq.getBrokerId());
+            buffer.putLong(rq.getShareholderId());
+        } else if (message instanceof CreditDecisions decisions) {
+            buffer.put(CREDIT_DECISIONS);
+            writeCreditDecisions(buffer, decisions);
+        } else if (message instanceof Event event) {
+            writeEvent(event, buffer);
+        } else
+            throw new IllegalArgumentException("No binary layout for " + message.getClass().getSimpleName());
+    }
+
+    private static void writeEvent(Event event, ByteBuffer buffer) {
+        if (event instanceof OrderAcceptedEvent e)
+            writeOrderEvent(buffer, ORDER_ACCEPTED, e, e.getRequestId(), e.getOrderId());
+        else if (event instanceof OrderActivatedEvent e)
+            writeOrderEvent(buffer, ORDER_ACTIVATED, e, e.getRequestId(), e.getOrderId());
+        else if (event instanceof OrderDeletedEvent e)
+            writeOrderEvent(buffer, ORDER_DELETED, e, e.getRequestId(), e.getOrderId());
+        else if (event instanceof OrderUpdatedEvent e)
+            writeOrderEvent(buffer, ORDER_UPDATED, e, e.getRequestId(), e.getOrderId());
+        else if (event instanceof OrderRejectedEvent e) {
+            writeOrderEvent(buffer, ORDER_REJECTED, e, e.getRequestId(), e.getOrderId());
+            writeCount(buffer, e.getErrors());
+            if (e.getErrors() != null)
+                for (String error : e.getErrors())
+                    writeString(buffer, error);
+        } else if (event instanceof OrderExecutedEvent e) {
+            writeOrderEvent(buffer, ORDER_EXECUTED, e, e.getRequestId(), e.getOrderId());
+            writeCount(buffer, e.getTrades());
+            if (e.getTrades() != null)
+                for (TradeDTO trade : e.getTrades()) {
+                    writeString(buffer, trade.securityIsin());
+                    buffer.putInt(trade.price());
+                    buffer.putInt(trade.quantity());
+                    buffer.putLong(trade.buyOrderId());
+                    buffer.putLong(trade.sellOrderId());
+                }
+        } else if (event instanceof TradeEvent e) {
+            buffer.put(TRADE);
+            writeTime(buffer, e.getTime());
+            writeString(buffer, e.getSecurityIsin());
+            buffer.putInt(e.getPrice());
+            buffer.putInt(e.getQuantity());
+            buffer.putLong(e.getBuyId());
+            buffer.putLong(e.getSellId());
+        } else if (event instanceof OpeningPriceEvent e) {
+            buffer.put(OPENING_PRICE);
+            writeTime(buffer, e.getTime());
+            writeString(buffer, e.getSecurityIsin());
+            buffer.putInt(e.getOpeningPrice());
+            buffer.putInt(e.getTradableQuantity());
+        } else if (event instanceof SecurityStateChangedEvent e) {
+            buffer.put(SECURITY_STATE_CHANGED);
+            writeTime(buffer, e.getTime());
+            writeString(buffer, e.getSecurityIsin());
+            writeEnum(buffer, e.getState());
+        } else if (event instanceof OrderBatchHandledEvent e) {
+            buffer.put(ORDER_BATCH_HANDLED);
+            writeTime(buffer, e.getTime());
+            buffer.putLong(e.getRequestId());
+            writeString(buffer, e.getSecurityIsin());
+            buffer.putInt(e.getAcceptedLegs());
+            buffer.putInt(e.getRejectedLegs());
+        } else if (event instanceof MassCancelHandledEvent e) {
+            buffer.put(MASS_CANCEL_HANDLED);
+            writeTime(buffer, e.getTime());
+            buffer.putLong(e.getRequestId());
+            writeString(buffer, e.getSecurityIsin());
+            buffer.putInt(e.getCancelledOrders());
+            buffer.putLong(e.getReleasedCredit());
+        } else
+            throw new IllegalArgumentException("No binary layout for " + event.getClass().getSimpleName());
+    }
+
+    private static void writeOrderEvent(ByteBuffer buffer, byte type, Event event, long requestId, long orderId) {
+        buffer.put(type);
+        writeTime(buffer, event.getTime());
+        buffer.putLong(requestId);
+        buffer.putLong(orderId);
+    }
+
+    private static void writeEnterOrderRq(ByteBuffer buffer, EnterOrderRq rq) {
+        writeEnum(buffer, rq.getRequestType());
+        buffer.putLong(rq.getRequestId());
+        writeString(buffer, rq.getSecurityIsin());
+        buffer.putLong(rq.getOrderId());
+        writeTime(buffer, rq.getEntryTime());
+        writeEnum(buffer, rq.getSide());
+        buffer.putInt(rq.getQuantity());
+        buffer.putInt(rq.getPrice());
+        buffer.putLong(rq.getBrokerId());
+        buffer.putLong(rq.getShareholderId());
+        buffer.putInt(rq.getPeakSize());
+        buffer.putInt(rq.getMinimumExecutionQuantity());
+        buffer.putInt(rq.getStopPrice());
+    }
+
+    private static void writeDeleteOrderRq(ByteBuffer buffer, DeleteOrderRq rq) {
+        buffer.putLong(rq.getRequestId());
+        writeString(buffer, rq.getSecurityIsin());
+        writeEnum(buffer, rq.getSide());
+        buffer.putLong(rq.getOrderId());
+        writeTime(buffer, rq.getEntryTime());
+    }
+
+    private static DeleteOrderRq readDeleteOrderRq(ByteBuffer buffer) {
+        return new DeleteOrderRq(buffer.getLong(), readString(buffer), readEnum(buffer, Side.values()), buffer.getLong(), readTime(buffer));
+    }
+
+    private static EnterOrderBatchRq readEnterOrderBatchRq(ByteBuffer buffer) {
+        long requestId = buffer.getLong();
+        String securityIsin = readString(buffer);
+        int count = buffer.getShort();
+        List<DeleteOrderRq> deletes = count < 0 ? null : new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            deletes.add(readDeleteOrderRq(buffer));
+        count = buffer.getShort();
+        List<EnterOrderRq> orders = count < 0 ? null : new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            orders.add(readEnterOrderRq(buffer));
+        return new EnterOrderBatchRq(requestId, securityIsin, deletes, orders);
+    }
+
+    private static EnterOrderRq readEnterOrderRq(ByteBuffer buffer) {
+        OrderEntryType requestType = readEnum(buffer, OrderEntryType.values());
+        long requestId = buffer.getLong();
+        String securityIsin = readString(buffer);
+        long orderId = buffer.getLong();
+        LocalDateTime entryTime = readTime(buffer);
+        Side side = readEnum(buffer, Side.values());
+        int quantity = buffer.getInt();
+        int price = buffer.getInt();
+        long brokerId = buffer.getLong();
+        long shareholderId = buffer.getLong();
+        int peakSize = buffer.getInt();
+        int minimumExecutionQuantity = buffer.getInt();
+        int stopPrice = buffer.getInt();
+        EnterOrderRq rq;
+        if (requestType == OrderEntryType.UPDATE_ORDER)
+            rq = EnterOrderRq.createUpdateOrderRq(requestId, securityIsin, orderId, entryTime, side, quantity, price, brokerId, shareholderId, peakSize, minimumExecutionQuantity, stopPrice);
+        else
+            rq = EnterOrderRq.createNewOrderRq(requestId, securityIsin, orderId, entryTime, side, quantity, price, brokerId, shareholderId, peakSize, minimumExecutionQuantity, stopPrice);
+        rq.setRequestType(requestType);
+        return rq;
+    }
+
+    // A count and the outcomes packed eight to a byte, the first in the lowest bit.
+    private static void writeCreditDecisions(ByteBuffer buffer, CreditDecisions decisions) {
+        buffer.putInt(decisions.size());
+        for (int first = 0; first < decisions.size(); first += 8) {
+            int bits = 0;
+            for (int i = first; i < Math.min(first + 8, decisions.size()); i++)
+                if (decisions.outcome(i))
+                    bits |= 1 << (i - first);
+            buffer.put((byte) bits);
+        }
+    }
+
+    private static CreditDecisions readCreditDecisions(ByteBuffer buffer) {
+        CreditDecisions decisions = new CreditDecisions();
+        int count = buffer.getInt();
+        int bits = 0;
+        for (int i = 0; i < count; i++) {
+            if (i % 8 == 0)
+                bits = buffer.get();
+            decisions.add((bits & 1 << i % 8) != 0);
+        }
+        return decisions;
+    }
+
+    private static Event readEvent(byte type, ByteBuffer buffer) {
+        LocalDateTime time = readTime(buffer);
+        Event event = switch (type) {
+            case ORDER_ACCEPTED -> new OrderAcceptedEvent(buffer.getLong(), buffer.getLong());
+            case ORDER_ACTIVATED -> new OrderActivatedEvent(buffer.getLong(), buffer.getLong());
+            case ORDER_DELETED -> new OrderDeletedEvent(buffer.getLong(), buffer.getLong());
+            case ORDER_UPDATED -> new OrderUpdatedEvent(buffer.getLong(), buffer.getLong());
+            case ORDER_REJECTED -> {
+                long requestId = buffer.getLong();
+                long orderId = buffer.getLong();
+                int count = buffer.getShort();
+                List<String> errors = count < 0 ? null : new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    errors.add(readString(buffer));
+                yield new OrderRejectedEvent(requestId, orderId, errors);
+            }
+            case ORDER_EXECUTED -> {
+                long requestId = buffer.getLong();
+                long orderId = buffer.getLong();
+                int count = buffer.getShort();
+                List<TradeDTO> trades = count < 0 ? null : new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    trades.add(new TradeDTO(readString(buffer), buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong()));
+                yield new OrderExecutedEvent(requestId, orderId, trades);
+            }
+            case TRADE -> new TradeEvent(readString(buffer), buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong());
+            case OPENING_PRICE -> new OpeningPriceEvent(readString(buffer), buffer.getInt(), buffer.getInt());
+            case SECURITY_STATE_CHANGED -> new SecurityStateChangedEvent(readString(buffer), readEnum(buffer, MatchingState.values()));
+            case ORDER_BATCH_HANDLED -> new OrderBatchHandledEvent(buffer.getLong(), readString(buffer), buffer.getInt(), buffer.getInt());
+            case MASS_CANCEL_HANDLED -> new MassCancelHandledEvent(buffer.getLong(), readString(buffer), buffer.getInt(), buffer.getLong());
+            default -> throw new IllegalArgumentException("Unknown message type " + type);
+        };
+        event.setTime(time);
+        return event;
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0)
+            return null;
+        if (!buffer.hasArray()) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void writeCount(ByteBuffer buffer, List<?> list) {
+        buffer.putShort(list == null ? -1 : (short) list.size());
+    }
+
+    private static void writeEnum(ByteBuffer buffer, Enum<?> value) {
+        buffer.put(value == null ? -1 : (byte) value.ordinal());
+    }
+
+    private static <T extends Enum<T>> T readEnum(ByteBuffer buffer, T[] values) {
+        byte ordinal = buffer.get();
+        return ordinal < 0 ? null : values[ordinal];
+    }
+
+    private static void writeTime(ByteBuffer buffer, LocalDateTime time) {
+        if (time == null) {
+            buffer.putLong(NO_TIME);
+            return;
+        }
+        buffer.putLong(time.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(time.getNano());
+    }
+
+    private static LocalDateTime readTime(ByteBuffer buffer) {
+        long seconds = buffer.getLong();
+        if (seconds == NO_TIME)
+            return null;
+        return LocalDateTime.ofEpochSecond(seconds, buffer.getInt(), ZoneOffset.UTC);
+    }
+}
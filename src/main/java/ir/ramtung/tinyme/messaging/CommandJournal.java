@@ -0,0 +1,234 @@
+package ir.ramtung.tinyme.messaging;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Write-ahead log of the requests given to the order handler since the last save: replaying
+ * the journal over the saved state rebuilds the books, credits and positions. A request is
+ * durable only once the batch it is in has been committed; the listener has taken it off the
+ * queue by then, so a crash before the commit loses it, though none of its events have been
+ * published. A record is the {@link BinaryCodec} encoding of a request after its
+ * length and CRC32. {@link #append} gathers records in a buffer and {@link #commit} writes
+ * them and forces them to disk together, once per batch of requests; a record too large for
+ * the buffer is written on its own. A torn record left at the end by a crash is dropped when
+ * the journal is opened.
+ * <p>
+ * The journal is a sequence of segment files named after the journal file and their
+ * generation. {@link #roll} starts the next generation, so that a snapshot taken at that
+ * point can {@link #discardBefore} the segments it covers.
+ * <p>
+ * Appends and rolls come from one thread; replay happens while nothing is appended. Without
+ * a file the journal keeps nothing.
+ */
+@Component
+public class CommandJournal {
+    private static final int HEADER_BYTES = 8;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final Path path;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer writeBuffer;
+    private ByteBuffer encodeBuffer;
+    private FileChannel channel;
+    private volatile long generation;
+    private boolean unforced;
+
+    @Autowired
+    public CommandJournal(@Value("${journalFile:}") String file) {
+        this(file == null || file.isBlank() ? null : Path.of(file));
+    }
+
+    public CommandJournal(Path path) {
+        this.path = path;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (path == null)
+            return;
+        writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        encodeBuffer = BinaryCodec.newBuffer();
+        List<Long> generations = generations();
+        generation = generations.isEmpty() ? 0 : generations.get(generations.size() - 1);
+        channel = FileChannel.open(segment(generation), CREATE, READ, WRITE);
+        long end = validEnd(channel);
+        if (end < channel.size()) {
+            log.warning("Dropping " + (channel.size() - end) + " bytes of a torn record at the end of " + segment(generation));
+            channel.truncate(end);
+        }
+        channel.position(end);
+    }
+
+    public boolean isEnabled() {
+        return channel != null;
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    // Hands the journaled requests of every segment to the handler in the order they were appended.
+    public int replay(Consumer<Object> handler) throws IOException {
+        if (channel == null)
+            return 0;
+        int count = 0;
+        for (long segmentGeneration : generations()) {
+            if (segmentGeneration == generation) {
+                count += replay(channel, channel.position(), handler);
+                continue;
+            }
+            try (FileChannel segment = FileChannel.open(segment(segmentGeneration), READ)) {
+                count += replay(segment, validEnd(segment), handler);
+            }
+        }
+        return count;
+    }
+
+    private static int replay(FileChannel segment, long end, Consumer<Object> handler) throws IOException {
+        MappedByteBuffer records = segment.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        int count = 0;
+        while (records.hasRemaining()) {
+            int length = records.getInt();
+            records.getInt();
+            ByteBuffer record = records.slice(records.position(), length);
+            records.position(records.position() + length);
+            handler.accept(BinaryCodec.decode(record));
+            count++;
+        }
+        return count;
+    }
+
+    public void append(Object request) throws IOException {
+        if (channel == null)
+            return;
+        encodeBuffer = BinaryCodec.encode(request, encodeBuffer);
+        int length = encodeBuffer.remaining();
+        if (writeBuffer.remaining() < HEADER_BYTES + length)
+            write();
+        crc.reset();
+        crc.update(encodeBuffer.array(), 0, length);
+        writeBuffer.putInt(length).putInt((int) crc.getValue());
+        if (writeBuffer.remaining() < length) {
+            writeBuffer.flip();
+            writeDirectly(new ByteBuffer[] {writeBuffer, encodeBuffer});
+            writeBuffer.clear();
+            return;
+        }
+        writeBuffer.put(encodeBuffer);
+    }
+
+    // Writes the appended requests and forces them to disk; only then are they durable.
+    public void commit() throws IOException {
+        if (channel == null)
+            return;
+        write();
+        if (unforced) {
+            channel.force(false);
+            unforced = false;
+        }
+    }
+
+    // Commits the current segment and starts the next one; returns its generation.
+    public long roll() throws IOException {
+        if (channel == null)
+            return generation;
+        commit();
+        channel.close();
+        channel = FileChannel.open(segment(generation + 1), CREATE, READ, WRITE, TRUNCATE_EXISTING);
+        return ++generation;
+    }
+
+    // Deletes the segments before a generation, once the state they lead to is saved elsewhere.
+    public void discardBefore(long firstKept) throws IOException {
+        if (path == null)
+            return;
+        for (long segmentGeneration : generations())
+            if (segmentGeneration < firstKept)
+                Files.deleteIfExists(segment(segmentGeneration));
+    }
+
+    // Empties the journal once everything in it has been saved elsewhere.
+    public void reset() throws IOException {
+        if (channel == null)
+            return;
+        discardBefore(roll());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (channel == null)
+            return;
+        commit();
+        channel.close();
+        channel = null;
+    }
+
+    private Path segment(long segmentGeneration) {
+        return path.resolveSibling(path.getFileName() + "." + segmentGeneration);
+    }
+
+    private List<Long> generations() throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName() + ".";
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.length() > prefix.length()
+                            && name.substring(prefix.length()).chars().allMatch(Character::isDigit))
+                    .map(name -> Long.parseLong(name.substring(prefix.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private void write() throws IOException {
+        writeBuffer.flip();
+        if (writeBuffer.hasRemaining())
+            unforced = true;
+        while (writeBuffer.hasRemaining())
+            channel.write(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    // A record larger than the write buffer goes out behind its header without being copied.
+    private void writeDirectly(ByteBuffer[] parts) throws IOException {
+        unforced = true;
+        while (parts[parts.length - 1].hasRemaining())
+            channel.write(parts);
+    }
+
+    private long validEnd(FileChannel segment) throws IOException {
+        MappedByteBuffer records = segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size());
+        while (records.remaining() >= HEADER_BYTES) {
+            int start = records.position();
+            int length = records.getInt();
+            int checksum = records.getInt();
+            if (length <= 0 || length > records.remaining())
+                return start;
+            crc.reset();
+            crc.update(records.slice(records.position(), length));
+            if ((int) crc.getValue() != checksum)
+                return start;
+            records.position(records.position() + length);
+        }
+        return records.position();
+    }
+}
@@ -0,0 +1,25 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.MarketDepth;
+import ir.ramtung.tinyme.domain.entity.Side;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public record DepthLevelDTO(
+    Side side,
+    int price,
+    int quantity,
+    int orders) {
+
+    public DepthLevelDTO(MarketDepth.Level level) {
+        this(level.side(), level.price(), level.quantity(), level.orders());
+    }
+
+    public static List<DepthLevelDTO> of(List<MarketDepth.Level> levels) {
+        List<DepthLevelDTO> dtos = new ArrayList<>(levels.size());
+        for (MarketDepth.Level level : levels)
+            dtos.add(new DepthLevelDTO(level));
+        return dtos;
+    }
+}
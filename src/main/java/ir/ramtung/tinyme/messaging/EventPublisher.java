@@ -1,25 +1,84 @@
 package ir.ramtung.tinyme.messaging;
 
 import ir.ramtung.tinyme.messaging.event.Event;
+import jakarta.jms.BytesMessage;
+import jakarta.jms.Destination;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.stereotype.Component;
 
-import java.util.logging.Logger;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 @Component
 public class EventPublisher {
-    private final Logger log = Logger.getLogger(this.getClass().getName());
     private final JmsTemplate jmsTemplate;
+    private final JmsTemplate batchTemplate;
     @Value("${responseQueue}")
     private String responseQueue;
+    @Value("${wireFormat:JSON}")
+    private WireFormat wireFormat = WireFormat.JSON;
+    // Reused for every binary message; batches are sent one at a time.
+    private ByteBuffer encodeBuffer = BinaryCodec.newBuffer();
+    private AuditLog auditLog = AuditLog.DISABLED;
 
     public EventPublisher(JmsTemplate jmsTemplate) {
         this.jmsTemplate = jmsTemplate;
+        this.batchTemplate = jmsTemplate == null ? null : transactedCopyOf(jmsTemplate);
+    }
+
+    @Autowired(required = false)
+    public void setAuditLog(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    private static JmsTemplate transactedCopyOf(JmsTemplate jmsTemplate) {
+        JmsTemplate template = new JmsTemplate();
+        template.setConnectionFactory(jmsTemplate.getConnectionFactory());
+        template.setMessageConverter(jmsTemplate.getMessageConverter());
+        template.setDestinationResolver(jmsTemplate.getDestinationResolver());
+        template.setSessionTransacted(true);
+        return template;
     }
 
     public void publish(Event event) {
-        log.info("Published : " + event);
+        if (wireFormat == WireFormat.BINARY) {
+            publish(List.of(event));
+            return;
+        }
+        auditLog.record(event);
         jmsTemplate.convertAndSend(responseQueue, event);
     }
+
+    // Sends the events in order as separate messages, committed together in one transaction.
+    public synchronized void publish(List<Event> events) {
+        if (events.isEmpty())
+            return;
+        for (Event event : events)
+            auditLog.record(event);
+        batchTemplate.execute(session -> {
+            Destination destination = batchTemplate.getDestinationResolver().resolveDestinationName(session, responseQueue, false);
+            try (MessageProducer producer = session.createProducer(destination)) {
+                for (Event event : events)
+                    producer.send(toMessage(event, session));
+            }
+            session.commit();
+            return null;
+        }, true);
+    }
+
+    private Message toMessage(Event event, Session session) throws JMSException {
+        if (wireFormat == WireFormat.JSON)
+            return batchTemplate.getMessageConverter().toMessage(event, session);
+        encodeBuffer = BinaryCodec.encode(event, encodeBuffer);
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(encodeBuffer.array(), 0, encodeBuffer.limit());
+        message.setStringProperty("_type", BinaryCodec.MESSAGE_TYPE);
+        return message;
+    }
 }
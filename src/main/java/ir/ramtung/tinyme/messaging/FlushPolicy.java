@@ -0,0 +1,17 @@
+package ir.ramtung.tinyme.messaging;
+
+/**
+ * When the publish stage sends the events it has gathered: as soon as no more requests are
+ * waiting in the ring, or once maxEvents events or maxDelayNanos of waiting have piled up
+ * during a burst. A request's events are never split between two sends.
+ */
+public record FlushPolicy(int maxEvents, long maxDelayNanos) {
+    public FlushPolicy {
+        if (maxEvents <= 0 || maxDelayNanos < 0)
+            throw new IllegalArgumentException("Invalid flush policy");
+    }
+
+    public boolean shouldFlush(int pendingEvents, long pendingNanos, boolean endOfBatch) {
+        return endOfBatch || pendingEvents >= maxEvents || pendingNanos >= maxDelayNanos;
+    }
+}
@@ -0,0 +1,175 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.MarketDepth;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.event.DepthSnapshotEvent;
+import ir.ramtung.tinyme.messaging.event.DepthUpdateEvent;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.TopOfBookEvent;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Market data of every book on a topic of its own: the levels changed since the previous
+ * update, sequenced per security, every update interval, and the top of the book with a depth
+ * snapshot every snapshot interval. Updates are drained from the {@link MarketDepth} the books
+ * keep, so a level that changes many times in an interval, or while sending falls behind, is
+ * sent once as it is then; nothing queues up here. Messages are not persistent and expire, so
+ * the broker drops stale ones instead of queueing them for a slow consumer.
+ * <p>
+ * A consumer applies the updates after the sequence of a snapshot; a gap in the sequence
+ * means updates were lost, and the next snapshot brings it back in step. Without a topic
+ * nothing is tracked or sent.
+ */
+@Component
+public class MarketDataPublisher implements SmartLifecycle {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final SecurityRepository securityRepository;
+    private final JmsTemplate template;
+    private final String topic;
+    private final long updateMillis;
+    private final long snapshotMillis;
+    private final int snapshotLevels;
+    private final Map<String, MarketDepth> depths = new LinkedHashMap<>();
+    private final List<MarketDepth.Level> updates = new ArrayList<>();
+    private ScheduledExecutorService executor;
+    private long lastSnapshotNanos;
+    private volatile boolean running;
+
+    @Autowired
+    public MarketDataPublisher(JmsTemplate jmsTemplate, SecurityRepository securityRepository,
+                               @Value("${marketDataTopic:}") String topic,
+                               @Value("${marketDataUpdateMillis:100}") long updateMillis,
+                               @Value("${marketDataSnapshotMillis:1000}") long snapshotMillis,
+                               @Value("${marketDataLevels:10}") int snapshotLevels,
+                               @Value("${marketDataTimeToLiveMillis:5000}") long timeToLiveMillis) {
+        this.securityRepository = securityRepository;
+        this.topic = topic == null || topic.isBlank() ? null : topic;
+        this.updateMillis = updateMillis;
+        this.snapshotMillis = snapshotMillis;
+        this.snapshotLevels = snapshotLevels;
+        this.template = jmsTemplate == null || this.topic == null ? null : topicCopyOf(jmsTemplate, timeToLiveMillis);
+    }
+
+    private static JmsTemplate topicCopyOf(JmsTemplate jmsTemplate, long timeToLiveMillis) {
+        JmsTemplate template = new JmsTemplate();
+        template.setConnectionFactory(jmsTemplate.getConnectionFactory());
+        template.setMessageConverter(jmsTemplate.getMessageConverter());
+        template.setDestinationResolver(jmsTemplate.getDestinationResolver());
+        template.setPubSubDomain(true);
+        template.setExplicitQosEnabled(true);
+        template.setDeliveryPersistent(false);
+        template.setTimeToLive(timeToLiveMillis);
+        return template;
+    }
+
+    public boolean isEnabled() {
+        return topic != null;
+    }
+
+    // Started before the request pipeline replays the journal, so that the depth follows it.
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 2;
+    }
+
+    @Override
+    public void start() {
+        if (isEnabled()) {
+            attach();
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "market-data");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::tick, updateMillis, updateMillis, TimeUnit.MILLISECONDS);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (executor == null)
+            return;
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(5, TimeUnit.SECONDS))
+                publish(true);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Starts tracking the depth of every book; the books must not change meanwhile.
+    public void attach() {
+        for (Security security : securityRepository.allSecurities())
+            depths.put(security.getIsin(), security.getOrderBook().trackDepth());
+    }
+
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            boolean snapshot = now - lastSnapshotNanos >= snapshotMillis * 1_000_000;
+            if (snapshot)
+                lastSnapshotNanos = now;
+            publish(snapshot);
+        } catch (RuntimeException ex) {
+            log.log(Level.WARNING, "Could not publish market data", ex);
+        }
+    }
+
+    // Sends the levels of every book changed since the last call and, when asked to, the top
+    // of every book and its snapshot.
+    public void publish(boolean snapshot) {
+        for (Map.Entry<String, MarketDepth> entry : depths.entrySet()) {
+            String isin = entry.getKey();
+            MarketDepth depth = entry.getValue();
+            List<MarketDepth.Level> bids = null;
+            List<MarketDepth.Level> asks = null;
+            long sequence;
+            updates.clear();
+            synchronized (depth) {
+                sequence = depth.drain(updates);
+                if (snapshot) {
+                    bids = depth.levels(Side.BUY, snapshotLevels);
+                    asks = depth.levels(Side.SELL, snapshotLevels);
+                }
+            }
+            if (!updates.isEmpty())
+                send(new DepthUpdateEvent(isin, sequence, DepthLevelDTO.of(updates)));
+            if (snapshot) {
+                MarketDepth.Level bid = bids.isEmpty() ? null : bids.get(0);
+                MarketDepth.Level ask = asks.isEmpty() ? null : asks.get(0);
+                send(new TopOfBookEvent(isin, sequence,
+                        bid == null ? 0 : bid.price(), bid == null ? 0 : bid.quantity(),
+                        ask == null ? 0 : ask.price(), ask == null ? 0 : ask.quantity()));
+                send(new DepthSnapshotEvent(isin, sequence, DepthLevelDTO.of(bids), DepthLevelDTO.of(asks)));
+            }
+        }
+    }
+
+    protected void send(Event event) {
+        template.convertAndSend(topic, event);
+    }
+}
@@ -1,31 +1,45 @@
 package ir.ramtung.tinyme.messaging;
 
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderBatchRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
-import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import jakarta.jms.TextMessage;
 import org.springframework.jms.annotation.JmsListener;
 import org.springframework.stereotype.Component;
 
-import java.util.logging.Logger;
-
 @Component
 public class RequestDispatcher {
-    private final Logger log = Logger.getLogger(this.getClass().getName());
-    private final OrderHandler orderHandler;
+    private final RequestPipeline requestPipeline;
 
-    public RequestDispatcher(OrderHandler orderHandler) {
-        this.orderHandler = orderHandler;
+    public RequestDispatcher(RequestPipeline requestPipeline) {
+        this.requestPipeline = requestPipeline;
     }
 
     @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.EnterOrderRq'")
-    public void receiveEnterOrderRq(EnterOrderRq enterOrderRq) {
-        log.info("Received message: " + enterOrderRq);
-        orderHandler.handleEnterOrder(enterOrderRq);
+    public void receiveEnterOrderRq(TextMessage message) throws JMSException {
+        requestPipeline.submit(EnterOrderRq.class, message.getText());
     }
 
     @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.DeleteOrderRq'")
-    public void receiveDeleteOrderRq(DeleteOrderRq deleteOrderRq) {
-        log.info("Received message: " + deleteOrderRq);
-        orderHandler.handleDeleteOrder(deleteOrderRq);
+    public void receiveDeleteOrderRq(TextMessage message) throws JMSException {
+        requestPipeline.submit(DeleteOrderRq.class, message.getText());
+    }
+
+    @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.EnterOrderBatchRq'")
+    public void receiveEnterOrderBatchRq(TextMessage message) throws JMSException {
+        requestPipeline.submit(EnterOrderBatchRq.class, message.getText());
+    }
+
+    @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.MassCancelRq'")
+    public void receiveMassCancelRq(TextMessage message) throws JMSException {
+        requestPipeline.submit(MassCancelRq.class, message.getText());
+    }
+
+    @JmsListener(destination = "${requestQueue}", selector = "_type='" + BinaryCodec.MESSAGE_TYPE + "'")
+    public void receiveBinaryRq(BytesMessage message) throws JMSException {
+        requestPipeline.submit(message);
     }
 }
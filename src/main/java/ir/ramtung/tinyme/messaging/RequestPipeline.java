@@ -0,0 +1,540 @@
+package ir.ramtung.tinyme.messaging;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.ramtung.tinyme.domain.entity.CreditDecisions;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderBatchRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
+import ir.ramtung.tinyme.repository.SnapshotStore;
+import ir.ramtung.tinyme.util.LatencyHistogram;
+import ir.ramtung.tinyme.util.RingBuffer;
+import ir.ramtung.tinyme.util.WaitStrategy;
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Carries requests from the JMS listener threads to the order handler and their events
+ * back out, through a pre-allocated ring buffer with one thread per stage:
+ * <ol>
+ * <li>decode: parses the JSON text or the {@link BinaryCodec} bytes and picks the shard
+ * from the security ISIN;</li>
+ * <li>match: one single-threaded shard per group of securities validates and handles the
+ * requests of its securities in arrival order, collecting the events they raise;</li>
+ * <li>journal: after matching, appends the requests to the {@link CommandJournal}, each after
+ * the outcomes of the credit checks it made, and forces them to disk once per batch;</li>
+ * <li>publish: gathers the events of consecutive requests in arrival order and sends them
+ * to JMS in one transaction whenever the {@link FlushPolicy} says so, so no event leaves
+ * before its request is journaled.</li>
+ * </ol>
+ * A request is taken off its queue once it is in the ring, before it is journaled, so a
+ * crash may lose the requests of the batch being committed; as none of their events have
+ * left, no client has seen them handled. If the journal fails, nothing more is published.
+ * Validation stays in the shard with matching, as it reads the book that the requests ahead
+ * of it may still change. A shard only writes its own securities; brokers and shareholders
+ * are shared (see {@code Broker} and {@code Shareholder}), and the repositories are filled
+ * before requests arrive. On start, the journal is replayed through the order handler one
+ * request at a time, in arrival order, before anything new is taken. Shards race for the
+ * credit of a shared broker, so replay takes the journaled outcomes of the credit checks
+ * (see {@link CreditDecisions}) rather than making them again in arrival order.
+ * <p>
+ * A snapshot goes through the ring as an entry of its own: every shard stops at it and the
+ * last one to arrive copies the repositories. When the journal gets to it, the journal starts
+ * a new generation and the copy is written to the {@link SnapshotStore} on a background
+ * thread while the shards go on.
+ */
+@Component
+public class RequestPipeline implements SmartLifecycle {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final OrderHandler orderHandler;
+    private final EventPublisher eventPublisher;
+    private final CommandJournal journal;
+    private final SnapshotStore snapshotStore;
+    private final long snapshotIntervalSeconds;
+    private final CyclicBarrier snapshotBarrier;
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+    private volatile CompletableFuture<Void> snapshotWritten;
+    private ByteBuffer capturedSnapshot;
+    private RuntimeException captureFailure;
+    private ScheduledExecutorService snapshotExecutor;
+    private final int shardCount;
+    private final RingBuffer<Slot> ringBuffer;
+    private final LatencyHistogram decodeLatency = new LatencyHistogram("decode");
+    private final LatencyHistogram[] matchLatency;
+    private final LatencyHistogram journalLatency = new LatencyHistogram("journal");
+    private final LatencyHistogram publishLatency = new LatencyHistogram("publish");
+    private final LatencyHistogram totalLatency = new LatencyHistogram("total");
+    private final FlushPolicy flushPolicy;
+    private final List<Event> pendingEvents = new ArrayList<>();
+    private AuditLog auditLog = AuditLog.DISABLED;
+    private long[] pendingReceivedAt = new long[64];
+    private int pendingRequests;
+    private long pendingSince;
+    private long uncommittedFrom = -1;
+    private boolean journalFailed;
+    private volatile boolean running;
+
+    private static class Slot {
+        Class<?> type;
+        String text;
+        ByteBuffer bytes = BinaryCodec.newBuffer();
+        boolean binary;
+        boolean snapshot;
+        boolean unjournaled;
+        Object request;
+        int shard;
+        long receivedAt;
+        final List<Event> events = new ArrayList<>();
+        final CreditDecisions credit = new CreditDecisions();
+
+        void clear() {
+            type = null;
+            text = null;
+            binary = false;
+            snapshot = false;
+            unjournaled = false;
+            request = null;
+            events.clear();
+            credit.clear();
+        }
+    }
+
+    private static class EventCollector extends EventPublisher {
+        private List<Event> events;
+
+        EventCollector() {
+            super(null);
+        }
+
+        @Override
+        public void publish(Event event) {
+            events.add(event);
+        }
+    }
+
+    @Autowired
+    public RequestPipeline(OrderHandler orderHandler, EventPublisher eventPublisher,
+                           CommandJournal journal, SnapshotStore snapshotStore,
+                           @Value("${executionShards:4}") int shardCount,
+                           @Value("${ringBufferSize:4096}") int ringBufferSize,
+                           @Value("${waitStrategy:PARKING}") WaitStrategy waitStrategy,
+                           @Value("${publishBatchSize:256}") int publishBatchSize,
+                           @Value("${publishMaxDelayMicros:1000}") long publishMaxDelayMicros,
+                           @Value("${snapshotIntervalSeconds:0}") long snapshotIntervalSeconds) {
+        this(orderHandler, eventPublisher, journal, snapshotStore, shardCount, ringBufferSize, waitStrategy,
+                new FlushPolicy(publishBatchSize, publishMaxDelayMicros * 1000), snapshotIntervalSeconds);
+    }
+
+    public RequestPipeline(OrderHandler orderHandler, EventPublisher eventPublisher,
+                           CommandJournal journal, SnapshotStore snapshotStore, int shardCount, int ringBufferSize,
+                           WaitStrategy waitStrategy, FlushPolicy flushPolicy, long snapshotIntervalSeconds) {
+        if (shardCount <= 0)
+            throw new IllegalArgumentException("executionShards must be positive");
+        this.orderHandler = orderHandler;
+        this.eventPublisher = eventPublisher;
+        this.journal = journal;
+        this.snapshotStore = snapshotStore;
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+        this.shardCount = shardCount;
+        this.flushPolicy = flushPolicy;
+        ringBuffer = new RingBuffer<>(ringBufferSize, Slot::new, waitStrategy);
+        matchLatency = new LatencyHistogram[shardCount];
+        for (int shard = 0; shard < shardCount; shard++)
+            matchLatency[shard] = new LatencyHistogram("match-" + shard);
+        snapshotBarrier = new CyclicBarrier(shardCount, this::captureSnapshot);
+    }
+
+    @Autowired(required = false)
+    public void setAuditLog(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    // Started before and stopped after the JMS listeners, and stopped before the beans are destroyed.
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 1;
+    }
+
+    @Override
+    public void start() {
+        replayJournal();
+        RingBuffer.Stage decodeStage = ringBuffer.stage("decode", this::decode);
+        RingBuffer.Stage[] matchStages = new RingBuffer.Stage[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            int id = shard;
+            EventCollector collector = new EventCollector();
+            matchStages[shard] = ringBuffer.stage("shard-" + shard, (slot, sequence, endOfBatch) -> {
+                if (slot.snapshot)
+                    awaitSnapshot();
+                else
+                    match(slot, id, collector);
+            }, decodeStage);
+        }
+        RingBuffer.Stage journalStage = ringBuffer.stage("journal", this::journal, matchStages);
+        RingBuffer.Stage publishStage = ringBuffer.stage("publish", this::publish, journalStage);
+        ringBuffer.start(publishStage);
+        if (snapshotStore.isEnabled()) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (snapshotIntervalSeconds > 0)
+                snapshotExecutor.scheduleAtFixedRate(this::snapshot, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        try {
+            shutdown();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void replayJournal() {
+        JournalReplay replay = new JournalReplay();
+        try {
+            journal.replay(replay);
+            if (replay.requests > 0)
+                log.info("Replayed " + replay.requests + " journaled requests");
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not replay the journal", ex);
+        }
+    }
+
+    // Hands each journaled request to the handler with the credit decisions journaled before it.
+    private class JournalReplay implements Consumer<Object> {
+        private final EventCollector discarded = new EventCollector();
+        private CreditDecisions journaledCredit;
+        private int requests;
+
+        JournalReplay() {
+            discarded.events = new ArrayList<>();
+        }
+
+        @Override
+        public void accept(Object record) {
+            if (record instanceof CreditDecisions decisions) {
+                journaledCredit = decisions;
+                return;
+            }
+            CreditDecisions decisions = orderHandler.creditDecisions(securityIsinOf(record));
+            if (decisions != null && journaledCredit != null)
+                decisions.replay(journaledCredit);
+            else if (decisions != null)
+                decisions.record();
+            journaledCredit = null;
+            handle(record, discarded);
+            discarded.events.clear();
+            requests++;
+        }
+    }
+
+    public void submit(Class<?> type, String text) {
+        long sequence = ringBuffer.next();
+        Slot slot = ringBuffer.get(sequence);
+        slot.type = type;
+        slot.text = text;
+        slot.receivedAt = System.nanoTime();
+        ringBuffer.publish(sequence);
+    }
+
+    public void submit(BytesMessage message) throws JMSException {
+        long sequence = ringBuffer.next();
+        Slot slot = ringBuffer.get(sequence);
+        try {
+            int length = (int) message.getBodyLength();
+            if (slot.bytes.capacity() < length)
+                slot.bytes = ByteBuffer.allocate(Integer.highestOneBit(length) * 2);
+            slot.bytes.clear();
+            message.readBytes(slot.bytes.array(), length);
+            slot.bytes.limit(length);
+            slot.binary = true;
+        } finally {
+            slot.receivedAt = System.nanoTime();
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    public void submit(Object request) {
+        long sequence = ringBuffer.next();
+        Slot slot = ringBuffer.get(sequence);
+        slot.request = request;
+        slot.receivedAt = System.nanoTime();
+        ringBuffer.publish(sequence);
+    }
+
+    // Takes a snapshot after the requests submitted so far, unless one is still being written.
+    public CompletableFuture<Void> snapshot() {
+        if (snapshotExecutor == null || !snapshotting.compareAndSet(false, true))
+            return CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        snapshotWritten = written;
+        long sequence = ringBuffer.next();
+        Slot slot = ringBuffer.get(sequence);
+        slot.snapshot = true;
+        slot.receivedAt = System.nanoTime();
+        ringBuffer.publish(sequence);
+        return written;
+    }
+
+    public int shardOf(String securityIsin) {
+        if (securityIsin == null)
+            return 0;
+        return Math.floorMod(securityIsin.hashCode(), shardCount);
+    }
+
+    public Map<String, LatencyHistogram> latencies() {
+        Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+        latencies.put(decodeLatency.getName(), decodeLatency);
+        for (LatencyHistogram histogram : matchLatency)
+            latencies.put(histogram.getName(), histogram);
+        latencies.put(journalLatency.getName(), journalLatency);
+        latencies.put(publishLatency.getName(), publishLatency);
+        latencies.put(totalLatency.getName(), totalLatency);
+        return latencies;
+    }
+
+    public void shutdown() throws InterruptedException {
+        running = false;
+        ringBuffer.halt();
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdown();
+            snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        for (LatencyHistogram histogram : latencies().values())
+            log.info(histogram.toString());
+    }
+
+    private void decode(Slot slot, long sequence, boolean endOfBatch) {
+        if (slot.snapshot)
+            return;
+        long start = System.nanoTime();
+        if (slot.text != null) {
+            try {
+                slot.request = objectMapper.readValue(slot.text, slot.type);
+            } catch (JsonProcessingException ex) {
+                log.log(Level.WARNING, "Could not decode " + slot.type.getSimpleName() + ": " + slot.text, ex);
+            }
+        } else if (slot.binary) {
+            try {
+                slot.request = BinaryCodec.decode(slot.bytes);
+            } catch (RuntimeException ex) {
+                log.log(Level.WARNING, "Could not decode binary request of " + slot.bytes.limit() + " bytes", ex);
+            }
+        }
+        if (slot.request != null) {
+            auditLog.record(slot.request);
+            slot.shard = shardOf(securityIsinOf(slot.request));
+        }
+        decodeLatency.record(System.nanoTime() - start);
+    }
+
+    private void match(Slot slot, int shard, EventCollector collector) {
+        if (slot.request == null || slot.shard != shard)
+            return;
+        long start = System.nanoTime();
+        collector.events = slot.events;
+        CreditDecisions decisions = orderHandler.creditDecisions(securityIsinOf(slot.request));
+        if (decisions != null)
+            decisions.record();
+        try {
+            handle(slot.request, collector);
+        } finally {
+            collector.events = null;
+            if (decisions != null)
+                slot.credit.copyFrom(decisions);
+            matchLatency[shard].record(System.nanoTime() - start);
+        }
+    }
+
+    private void handle(Object request, EventPublisher publisher) {
+        if (request instanceof EnterOrderRq enterOrderRq)
+            orderHandler.handleEnterOrder(enterOrderRq, publisher);
+        else if (request instanceof DeleteOrderRq deleteOrderRq)
+            orderHandler.handleDeleteOrder(deleteOrderRq, publisher);
+        else if (request instanceof EnterOrderBatchRq batchRq)
+            orderHandler.handleEnterOrderBatch(batchRq, publisher);
+        else if (request instanceof MassCancelRq massCancelRq)
+            orderHandler.handleMassCancel(massCancelRq, publisher);
+        else if (request instanceof ChangeMatchingStateRq changeMatchingStateRq)
+            orderHandler.handleChangeMatchingState(changeMatchingStateRq, publisher);
+    }
+
+    // Once the journal fails, the requests since the last commit and all that follow stay
+    // unjournaled and their events are withheld, as they would not survive a restart.
+    private void journal(Slot slot, long sequence, boolean endOfBatch) {
+        if (uncommittedFrom < 0)
+            uncommittedFrom = sequence;
+        long start = System.nanoTime();
+        boolean rolled = false;
+        try {
+            if (!journalFailed) {
+                if (slot.request != null) {
+                    if (!slot.credit.isEmpty())
+                        journal.append(slot.credit);
+                    journal.append(slot.request);
+                }
+                if (slot.snapshot) {
+                    long generation = journal.roll();
+                    rolled = true;
+                    uncommittedFrom = sequence + 1;
+                    writeSnapshot(generation);
+                }
+                if (endOfBatch)
+                    journal.commit();
+            }
+        } catch (IOException ex) {
+            journalFailed = true;
+            log.log(Level.SEVERE, "Could not journal request " + sequence + "; no more events will be published", ex);
+        } finally {
+            if (slot.request != null)
+                journalLatency.record(System.nanoTime() - start);
+        }
+        if (!journalFailed) {
+            if (endOfBatch)
+                uncommittedFrom = -1;
+            return;
+        }
+        if (slot.snapshot && !rolled)
+            abandonSnapshot(new IllegalStateException("The journal has failed"));
+        for (long uncommitted = uncommittedFrom; uncommitted <= sequence; uncommitted++)
+            ringBuffer.get(uncommitted).unjournaled = true;
+        uncommittedFrom = sequence + 1;
+    }
+
+    private void publish(Slot slot, long sequence, boolean endOfBatch) {
+        if (slot.request != null) {
+            if (pendingRequests == 0)
+                pendingSince = System.nanoTime();
+            if (!slot.unjournaled)
+                pendingEvents.addAll(slot.events);
+            if (pendingRequests == pendingReceivedAt.length)
+                pendingReceivedAt = Arrays.copyOf(pendingReceivedAt, pendingRequests * 2);
+            pendingReceivedAt[pendingRequests++] = slot.receivedAt;
+        }
+        slot.clear();
+        if (pendingRequests > 0 && flushPolicy.shouldFlush(pendingEvents.size(), System.nanoTime() - pendingSince, endOfBatch))
+            flush();
+    }
+
+    private void flush() {
+        long start = System.nanoTime();
+        try {
+            eventPublisher.publish(pendingEvents);
+        } catch (RuntimeException ex) {
+            log.log(Level.SEVERE, "Could not publish " + pendingEvents.size() + " events", ex);
+        } finally {
+            long end = System.nanoTime();
+            publishLatency.record(end - start);
+            for (int request = 0; request < pendingRequests; request++)
+                totalLatency.record(end - pendingReceivedAt[request]);
+            pendingEvents.clear();
+            pendingRequests = 0;
+        }
+    }
+
+    private void awaitSnapshot() {
+        try {
+            snapshotBarrier.await();
+        } catch (InterruptedException | BrokenBarrierException ex) {
+            log.log(Level.SEVERE, "Snapshot abandoned", ex);
+            snapshotBarrier.reset();
+        }
+    }
+
+    // Runs on the last shard to reach the snapshot entry, while the others wait for it. The
+    // journal is behind the shards, so the generation it starts at this entry is the next one.
+    private void captureSnapshot() {
+        try {
+            capturedSnapshot = snapshotStore.capture(journal.generation() + 1);
+        } catch (RuntimeException ex) {
+            log.log(Level.SEVERE, "Could not take a snapshot", ex);
+            captureFailure = ex;
+        }
+    }
+
+    // Runs on the journal stage once it has started the generation that follows the snapshot.
+    private void writeSnapshot(long generation) {
+        CompletableFuture<Void> written = snapshotWritten;
+        ByteBuffer snapshot = capturedSnapshot;
+        RuntimeException failure = captureFailure;
+        if (snapshot == null) {
+            abandonSnapshot(failure != null ? failure : new IllegalStateException("Snapshot abandoned"));
+            return;
+        }
+        capturedSnapshot = null;
+        captureFailure = null;
+        snapshotExecutor.execute(() -> writeSnapshot(snapshot, generation, written));
+    }
+
+    private void abandonSnapshot(RuntimeException failure) {
+        CompletableFuture<Void> written = snapshotWritten;
+        capturedSnapshot = null;
+        captureFailure = null;
+        snapshotting.set(false);
+        written.completeExceptionally(failure);
+    }
+
+    private void writeSnapshot(ByteBuffer snapshot, long generation, CompletableFuture<Void> written) {
+        try {
+            long start = System.nanoTime();
+            snapshotStore.write(snapshot);
+            journal.discardBefore(generation);
+            log.info("Snapshot of " + snapshot.limit() + " bytes written in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+            written.complete(null);
+        } catch (IOException ex) {
+            log.log(Level.SEVERE, "Could not write a snapshot", ex);
+            written.completeExceptionally(ex);
+        } finally {
+            snapshotting.set(false);
+        }
+    }
+
+    private static String securityIsinOf(Object request) {
+        if (request instanceof EnterOrderRq enterOrderRq)
+            return enterOrderRq.getSecurityIsin();
+        if (request instanceof DeleteOrderRq deleteOrderRq)
+            return deleteOrderRq.getSecurityIsin();
+        if (request instanceof EnterOrderBatchRq batchRq)
+            return batchRq.getSecurityIsin();
+        if (request instanceof MassCancelRq massCancelRq)
+            return massCancelRq.getSecurityIsin();
+        if (request instanceof ChangeMatchingStateRq changeMatchingStateRq)
+            return changeMatchingStateRq.getSecurityIsin();
+        return null;
+    }
+}
@@ -1,7 +1,11 @@
 package ir.ramtung.tinyme.messaging;
 
+import ir.ramtung.tinyme.domain.entity.FillBuffer;
 import ir.ramtung.tinyme.domain.entity.Trade;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public record TradeDTO(
     String securityIsin,
     int price,
@@ -12,4 +16,15 @@ public record TradeDTO(
     public TradeDTO(Trade trade) {
         this(trade.getSecurity().getIsin(), trade.getPrice(), trade.getQuantity(), trade.getBuy().getOrderId(), trade.getSell().getOrderId());
     }
+
+    public TradeDTO(FillBuffer fills, int fill) {
+        this(fills.buy(fill).getSecurity().getIsin(), fills.price(fill), fills.quantity(fill), fills.buy(fill).getOrderId(), fills.sell(fill).getOrderId());
+    }
+
+    public static List<TradeDTO> of(FillBuffer fills) {
+        List<TradeDTO> trades = new ArrayList<>(fills.size());
+        for (int fill = 0; fill < fills.size(); fill++)
+            trades.add(new TradeDTO(fills, fill));
+        return trades;
+    }
 }
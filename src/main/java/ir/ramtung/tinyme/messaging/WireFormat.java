@@ -0,0 +1,8 @@
+package ir.ramtung.tinyme.messaging;
+
+public enum WireFormat {
+    // TEXT messages converted by MessagingConfig's Jackson converter; easy to read while debugging.
+    JSON,
+    // BytesMessages laid out by BinaryCodec.
+    BINARY
+}
@@ -0,0 +1,21 @@
+package ir.ramtung.tinyme.messaging.event;
+
+import ir.ramtung.tinyme.messaging.DepthLevelDTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// The best levels of each side of a book, as of the update with the same sequence.
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class DepthSnapshotEvent extends Event {
+    private String securityIsin;
+    private long sequence;
+    private List<DepthLevelDTO> bids;
+    private List<DepthLevelDTO> asks;
+}
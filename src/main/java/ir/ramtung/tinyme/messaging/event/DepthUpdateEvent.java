@@ -0,0 +1,20 @@
+package ir.ramtung.tinyme.messaging.event;
+
+import ir.ramtung.tinyme.messaging.DepthLevelDTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// The levels of a book changed since the previous update; a level with no orders is gone.
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class DepthUpdateEvent extends Event {
+    private String securityIsin;
+    private long sequence;
+    private List<DepthLevelDTO> levels;
+}
@@ -0,0 +1,18 @@
+package ir.ramtung.tinyme.messaging.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+// Follows the order deleted events of a mass cancel; the credit is what the cancelled buy orders gave back.
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class MassCancelHandledEvent extends Event {
+    private long requestId;
+    private String securityIsin;
+    private int cancelledOrders;
+    private long releasedCredit;
+}
@@ -0,0 +1,18 @@
+package ir.ramtung.tinyme.messaging.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+// Follows the events of the legs of a batch; a leg is rejected when it fails validation or matching.
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class OrderBatchHandledEvent extends Event {
+    private long requestId;
+    private String securityIsin;
+    private int acceptedLegs;
+    private int rejectedLegs;
+}
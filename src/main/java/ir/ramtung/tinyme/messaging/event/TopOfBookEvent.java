@@ -0,0 +1,20 @@
+package ir.ramtung.tinyme.messaging.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+// The best bid and ask of a book, as of the update with the same sequence; zero on an empty side.
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class TopOfBookEvent extends Event {
+    private String securityIsin;
+    private long sequence;
+    private int bidPrice;
+    private int bidQuantity;
+    private int askPrice;
+    private int askQuantity;
+}
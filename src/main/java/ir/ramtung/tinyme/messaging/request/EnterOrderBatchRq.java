@@ -0,0 +1,24 @@
+package ir.ramtung.tinyme.messaging.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Many deletes, new orders and updates on one security, handled together: every leg is
+ * validated against the book as it is before the batch, then the deletes are applied and then
+ * the orders, each in the order given. A leg gets the events it would get on its own, under its
+ * own request id; an {@link ir.ramtung.tinyme.messaging.event.OrderBatchHandledEvent} follows.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EnterOrderBatchRq {
+    private long requestId;
+    private String securityIsin;
+    private List<DeleteOrderRq> deletes = new ArrayList<>();
+    private List<EnterOrderRq> orders = new ArrayList<>();
+}
@@ -0,0 +1,22 @@
+package ir.ramtung.tinyme.messaging.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cancels at once the orders of a security: all of them, those of a broker, or those of a
+ * shareholder, as the scope says. Queued and stop orders alike are cancelled; like a single
+ * delete, it is rejected during an auction. Each cancelled order gets an order deleted event
+ * under this request id; a {@link ir.ramtung.tinyme.messaging.event.MassCancelHandledEvent} follows.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MassCancelRq {
+    private long requestId;
+    private String securityIsin;
+    private MassCancelScope scope;
+    private long brokerId;
+    private long shareholderId;
+}
@@ -0,0 +1,7 @@
+package ir.ramtung.tinyme.messaging.request;
+
+public enum MassCancelScope {
+    SECURITY,
+    BROKER,
+    SHAREHOLDER
+}
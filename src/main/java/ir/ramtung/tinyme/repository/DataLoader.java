@@ -3,6 +3,8 @@ package ir.ramtung.tinyme.repository;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.CommandJournal;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,28 +12,43 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.nio.file.Files;
 import java.time.LocalDateTime;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.StringJoiner;
 import java.util.logging.Logger;
 
+/**
+ * Loads the repositories from CSV files at startup and saves them back on shutdown. Rows are
+ * streamed through buffered readers and writers, one at a time, and every order goes straight
+ * into its book, so memory does not grow with the size of the files.
+ * <p>
+ * Order rows keep everything needed to rebuild any kind of order in the regular and stop
+ * queues. The columns after displayedQuantity, and those after lotSize in securities, were
+ * added later and are optional: files without them load as before.
+ */
 @Component
 @Profile("!test")
 public class DataLoader {
+    private static final String ORDER_BOOK_HEADER = "orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,peakSize,displayedQuantity," +
+            "initialQuantity,minimumExecutionQuantity,stopPrice,requestId";
+
     private final Logger log = Logger.getLogger(this.getClass().getName());
     private final BrokerRepository brokerRepository;
     private final ShareholderRepository shareholderRepository;
     private final SecurityRepository securityRepository;
+    private final CommandJournal journal;
+    private final SnapshotStore snapshotStore;
 
-    public DataLoader(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository) {
+    public DataLoader(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository,
+                      CommandJournal journal, SnapshotStore snapshotStore) {
         this.brokerRepository = brokerRepository;
         this.shareholderRepository = shareholderRepository;
         this.securityRepository = securityRepository;
+        this.journal = journal;
+        this.snapshotStore = snapshotStore;
     }
 
     @Value("classpath:persistence/broker.csv")
@@ -47,6 +64,10 @@ public class DataLoader {
 
     @PostConstruct
     public void loadAll() throws Exception {
+        if (snapshotStore.exists()) {
+            journal.discardBefore(snapshotStore.load());
+            return;
+        }
         loadBrokers();
         loadShareholders();
         loadSecurities();
@@ -57,24 +78,44 @@ public class DataLoader {
     @PreDestroy
     public void saveAll() throws Exception {
         System.out.print("Saving persistent data ...");
+        if (snapshotStore.isEnabled()) {
+            long generation = journal.roll();
+            snapshotStore.write(snapshotStore.capture(generation));
+            journal.discardBefore(generation);
+            System.out.println(", done!");
+            return;
+        }
         saveBrokers();
         saveShareholdersAndPositions();
         saveSecuritiesAndOrderBooks();
+        // The saved files now hold everything the journal would replay.
+        journal.reset();
         System.out.println(", done!");
     }
 
+    private static CSVReader csvReader(Resource resource) throws IOException {
+        Reader reader = Files.newBufferedReader(resource.getFile().toPath());
+        return new CSVReaderBuilder(reader).withSkipLines(1).build();
+    }
+
+    private static PrintWriter csvWriter(Resource resource) throws IOException {
+        return new PrintWriter(Files.newBufferedWriter(resource.getFile().toPath()));
+    }
+
+    private static String column(String[] line, int index, String otherwise) {
+        return index < line.length && !line[index].isEmpty() ? line[index] : otherwise;
+    }
+
     private void loadBrokers() throws Exception {
         brokerRepository.clear();
-      try (Reader reader = new FileReader(brokerCsvResource.getFile())) {
-            try (CSVReader csvReader = new CSVReaderBuilder(reader).withSkipLines(1).build()) {
-                String[] line;
-                while ((line = csvReader.readNext()) != null) {
-                    brokerRepository.addBroker(Broker.builder()
-                            .brokerId(Long.parseLong(line[0]))
-                            .name(line[1])
-                            .credit(Long.parseLong(line[0]))
-                            .build());
-                }
+        try (CSVReader csvReader = csvReader(brokerCsvResource)) {
+            String[] line;
+            while ((line = csvReader.readNext()) != null) {
+                brokerRepository.addBroker(Broker.builder()
+                        .brokerId(Long.parseLong(line[0]))
+                        .name(line[1])
+                        .credit(Long.parseLong(line[2]))
+                        .build());
             }
         }
         log.info("Brokers loaded");
@@ -82,15 +123,13 @@ public class DataLoader {
 
     private void loadShareholders() throws Exception {
         shareholderRepository.clear();
-        try (Reader reader = new FileReader(shareholderCsvResource.getFile())) {
-            try (CSVReader csvReader = new CSVReaderBuilder(reader).withSkipLines(1).build()) {
-                String[] line;
-                while ((line = csvReader.readNext()) != null) {
-                    shareholderRepository.addShareholder(Shareholder.builder()
-                            .shareholderId(Long.parseLong(line[0]))
-                            .name(line[1])
-                            .build());
-                }
+        try (CSVReader csvReader = csvReader(shareholderCsvResource)) {
+            String[] line;
+            while ((line = csvReader.readNext()) != null) {
+                shareholderRepository.addShareholder(Shareholder.builder()
+                        .shareholderId(Long.parseLong(line[0]))
+                        .name(line[1])
+                        .build());
             }
         }
         log.info("Shareholders loaded");
@@ -98,87 +137,76 @@ public class DataLoader {
 
     private void loadSecurities() throws Exception {
         securityRepository.clear();
-        try (Reader reader = new FileReader(securityCsvResource.getFile())) {
-            try (CSVReader csvReader = new CSVReaderBuilder(reader).withSkipLines(1).build()) {
-                String[] line;
-                while ((line = csvReader.readNext()) != null) {
-                    securityRepository.addSecurity(Security.builder()
-                            .isin(line[0])
-                            .tickSize(Integer.parseInt(line[1]))
-                            .lotSize(Integer.parseInt(line[2]))
-                            .build());
-                }
+        try (CSVReader csvReader = csvReader(securityCsvResource)) {
+            String[] line;
+            while ((line = csvReader.readNext()) != null) {
+//isin,tickSize,lotSize,marketPrice,matchingState
+//0    1        2       3           4
+                securityRepository.addSecurity(Security.builder()
+                        .isin(line[0])
+                        .tickSize(Integer.parseInt(line[1]))
+                        .lotSize(Integer.parseInt(line[2]))
+                        .marketPrice(Integer.parseInt(column(line, 3, "0")))
+                        .matchingState(MatchingState.valueOf(column(line, 4, MatchingState.CONTINUOUS.name())))
+                        .build());
             }
         }
         log.info("Securities loaded");
     }
 
     private void loadPositions() throws Exception {
-        try (Reader reader = new FileReader(positionCsvResource.getFile())) {
-            try (CSVReader csvReader = new CSVReaderBuilder(reader).withSkipLines(1).build()) {
-                String[] line;
-                while ((line = csvReader.readNext()) != null) {
-                    Shareholder shareholder = shareholderRepository.findShareholderById(Long.parseLong(line[0]));
-                    Security security = securityRepository.findSecurityByIsin(line[1]);
-                    shareholder.incPosition(security, Integer.parseInt(line[2]));
-                }
+        try (CSVReader csvReader = csvReader(positionCsvResource)) {
+            String[] line;
+            while ((line = csvReader.readNext()) != null) {
+                Shareholder shareholder = shareholderRepository.findShareholderById(Long.parseLong(line[0]));
+                Security security = securityRepository.findSecurityByIsin(line[1]);
+                shareholder.incPosition(security, Integer.parseInt(line[2]));
             }
         }
         log.info("Positions loaded");
     }
 
+    // Rows are saved in queue order, so enqueuing them as they come keeps time priority.
     private void loadOrderBook() throws Exception {
-        LinkedList<Order> orders = new LinkedList<>();
-        try (Reader reader = new FileReader(orderBookCsvResource.getFile())) {
-            try (CSVReader csvReader = new CSVReaderBuilder(reader).withSkipLines(1).build()) {
-                String[] line;
-                while ((line = csvReader.readNext()) != null) {
-                    Security security = securityRepository.findSecurityByIsin(line[1]);
-                    Broker broker = brokerRepository.findBrokerById(Long.parseLong(line[5]));
-                    Shareholder shareholder = shareholderRepository.findShareholderById(Long.parseLong(line[6]));
-//orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,peakSize,displayedQuantity
-//0       1    2    3        4     5        6             7         8        9
-                    int peakSize = Integer.parseInt(line[8]);
-                    Order order;
-                    if (peakSize == 0) {
-                        order = new Order(
-                                Long.parseLong(line[0]),
-                                security,
-                                Side.parse(line[2]),
-                                Integer.parseInt(line[3]),
-                                Integer.parseInt(line[4]),
-                                broker,
-                                shareholder,
-                                LocalDateTime.parse(line[7]),
-                                OrderStatus.QUEUED);
-                    } else {
-                        order = new IcebergOrder(
-                                Long.parseLong(line[0]),
-                                security,
-                                Side.parse(line[2]),
-                                Integer.parseInt(line[3]),
-                                Integer.parseInt(line[4]),
-                                broker,
-                                shareholder,
-                                LocalDateTime.parse(line[7]),
-                                Integer.parseInt(line[8]),
-                                Integer.parseInt(line[9]),
-                                OrderStatus.QUEUED);
-                    }
-                    orders.addFirst(order);
-                }
+        int count = 0;
+        try (CSVReader csvReader = csvReader(orderBookCsvResource)) {
+            String[] line;
+            while ((line = csvReader.readNext()) != null) {
+                Order order = parseOrder(line);
+                order.getSecurity().getOrderBook().enqueue(order);
+                count++;
             }
         }
-        Iterator<Order> it = orders.descendingIterator();
-        while (it.hasNext()) {
-            Order order = it.next();
-            order.getSecurity().getOrderBook().enqueue(order);
-        }
-        log.info("Order Book loaded");
+        log.info("Order Book loaded with " + count + " orders");
+    }
+
+    private Order parseOrder(String[] line) {
+//orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,peakSize,displayedQuantity,initialQuantity,minimumExecutionQuantity,stopPrice,requestId
+//0       1    2    3        4     5        6             7         8        9                 10              11                       12        13
+        long orderId = Long.parseLong(line[0]);
+        Security security = securityRepository.findSecurityByIsin(line[1]);
+        Side side = Side.parse(line[2]);
+        int quantity = Integer.parseInt(line[3]);
+        int price = Integer.parseInt(line[4]);
+        Broker broker = brokerRepository.findBrokerById(Long.parseLong(line[5]));
+        Shareholder shareholder = shareholderRepository.findShareholderById(Long.parseLong(line[6]));
+        LocalDateTime entryTime = LocalDateTime.parse(line[7]);
+        int peakSize = Integer.parseInt(line[8]);
+        int initialQuantity = Integer.parseInt(column(line, 10, line[3]));
+        int minimumExecutionQuantity = Integer.parseInt(column(line, 11, "0"));
+        int stopPrice = Integer.parseInt(column(line, 12, "0"));
+        if (stopPrice != 0)
+            return new StopLimitOrder(Long.parseLong(column(line, 13, "0")), orderId, security, side, quantity, price,
+                    broker, shareholder, entryTime, OrderStatus.QUEUED, stopPrice);
+        if (peakSize != 0)
+            return new IcebergOrder(orderId, security, side, initialQuantity, quantity, price, broker, shareholder,
+                    entryTime, peakSize, Integer.parseInt(line[9]), OrderStatus.QUEUED, minimumExecutionQuantity);
+        return new Order(orderId, security, side, initialQuantity, quantity, price, broker, shareholder,
+                entryTime, OrderStatus.QUEUED, minimumExecutionQuantity);
     }
 
     private void saveBrokers() throws Exception {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(brokerCsvResource.getFile()))) {
+        try (PrintWriter writer = csvWriter(brokerCsvResource)) {
             writer.println("brokerId,name,credit");
             for (Broker broker : brokerRepository.allBrokers()) {
                 StringJoiner joiner = new StringJoiner(",");
@@ -192,44 +220,41 @@ public class DataLoader {
     }
 
     private void saveShareholdersAndPositions() throws Exception {
-        try (PrintWriter shareholderWriter = new PrintWriter(new FileWriter(shareholderCsvResource.getFile()))) {
+        try (PrintWriter shareholderWriter = csvWriter(shareholderCsvResource);
+             PrintWriter positionWriter = csvWriter(positionCsvResource)) {
             shareholderWriter.println("shareholderId,name");
-            try (PrintWriter positionWriter = new PrintWriter(new FileWriter(positionCsvResource.getFile()))) {
-                positionWriter.println("shareholderId,isin,positions");
-                for (Shareholder shareholder : shareholderRepository.allShareholders()) {
-                    StringJoiner joiner = new StringJoiner(",");
-                    joiner.add(String.valueOf(shareholder.getShareholderId()))
-                            .add(shareholder.getName());
-                    shareholderWriter.println(joiner);
-                    for (var entry : shareholder.getPositions().entrySet()) {
-                        StringJoiner posJoiner = new StringJoiner(",");
-                        posJoiner.add(String.valueOf(shareholder.getShareholderId()))
-                                .add(entry.getKey().getIsin())
-                                .add(String.valueOf(entry.getValue()));
-                        positionWriter.println(posJoiner);
-                    }
-                }
+            positionWriter.println("shareholderId,isin,positions");
+            for (Shareholder shareholder : shareholderRepository.allShareholders()) {
+                StringJoiner joiner = new StringJoiner(",");
+                joiner.add(String.valueOf(shareholder.getShareholderId()))
+                        .add(shareholder.getName());
+                shareholderWriter.println(joiner);
+                shareholder.getPositions().forEach((securityId, amount) -> {
+                    StringJoiner posJoiner = new StringJoiner(",");
+                    posJoiner.add(String.valueOf(shareholder.getShareholderId()))
+                            .add(securityRepository.findSecurityById(securityId).getIsin())
+                            .add(String.valueOf(amount));
+                    positionWriter.println(posJoiner);
+                });
             }
         }
         log.info("Shareholders and Positions saved");
     }
 
     private void saveSecuritiesAndOrderBooks() throws Exception {
-        try (PrintWriter securityWriter = new PrintWriter(new FileWriter(securityCsvResource.getFile()))) {
-            securityWriter.println("isin,tickSize,lotSize");
-            try (PrintWriter orderBookWriter = new PrintWriter(new FileWriter(orderBookCsvResource.getFile()))) {
-                orderBookWriter.println("orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,status,peakSize,displayedQuantity");
-                for (Security security : securityRepository.allSecurities()) {
-                    StringJoiner joiner = new StringJoiner(",");
-                    joiner.add(security.getIsin())
-                            .add(String.valueOf(security.getTickSize()))
-                            .add(String.valueOf(security.getLotSize()));
-                    securityWriter.println(joiner);
-                    for (Order order : security.getOrderBook().getBuyQueue())
-                        orderBookWriter.println(getCSVString(order));
-                    for (Order order : security.getOrderBook().getSellQueue())
-                        orderBookWriter.println(getCSVString(order));
-                }
+        try (PrintWriter securityWriter = csvWriter(securityCsvResource);
+             PrintWriter orderBookWriter = csvWriter(orderBookCsvResource)) {
+            securityWriter.println("isin,tickSize,lotSize,marketPrice,matchingState");
+            orderBookWriter.println(ORDER_BOOK_HEADER);
+            for (Security security : securityRepository.allSecurities()) {
+                StringJoiner joiner = new StringJoiner(",");
+                joiner.add(security.getIsin())
+                        .add(String.valueOf(security.getTickSize()))
+                        .add(String.valueOf(security.getLotSize()))
+                        .add(String.valueOf(security.getMarketPrice()))
+                        .add(security.getMatchingState().name());
+                securityWriter.println(joiner);
+                security.getOrderBook().forEachOrder(order -> orderBookWriter.println(getCSVString(order)));
             }
         }
         log.info("Securities and OrderBook saved");
@@ -240,7 +265,7 @@ public class DataLoader {
         orderJoiner.add(String.valueOf(order.getOrderId()))
                 .add(order.getSecurity().getIsin())
                 .add(order.getSide().toString())
-                .add(String.valueOf(order.getQuantity()))
+                .add(String.valueOf(order.getTotalQuantity()))
                 .add(String.valueOf(order.getPrice()))
                 .add(String.valueOf(order.getBroker().getBrokerId()))
                 .add(String.valueOf(order.getShareholder().getShareholderId()))
@@ -251,6 +276,14 @@ public class DataLoader {
         } else {
             orderJoiner.add("0").add("0");
         }
+        orderJoiner.add(String.valueOf(order.getInitialQuantity()))
+                .add(String.valueOf(order.getMinimumExecutionQuantity()));
+        if (order instanceof StopLimitOrder stopLimitOrder) {
+            orderJoiner.add(String.valueOf(stopLimitOrder.getStopPrice()))
+                    .add(String.valueOf(stopLimitOrder.getRequestId()));
+        } else {
+            orderJoiner.add("0").add("0");
+        }
         return orderJoiner.toString();
     }
 
@@ -1,26 +1,38 @@
 package ir.ramtung.tinyme.repository;
 
+import ir.ramtung.tinyme.domain.entity.IsinTable;
 import ir.ramtung.tinyme.domain.entity.Security;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Objects;
 
 @Component
 public class SecurityRepository {
-    private final HashMap<String, Security> securityByIsin = new HashMap<>();
+    private final IsinTable isinTable = new IsinTable();
+    private Security[] securityById = new Security[16];
+
     public Security findSecurityByIsin(String isin) {
-        return securityByIsin.get(isin);
+        return findSecurityById(isinTable.find(isin));
+    }
+
+    public Security findSecurityById(int id) {
+        Security[] securities = securityById;
+        return id >= 0 && id < securities.length ? securities[id] : null;
     }
 
     public void addSecurity(Security security) {
-        securityByIsin.put(security.getIsin(), security);
+        int id = isinTable.register(security);
+        if (id >= securityById.length)
+            securityById = Arrays.copyOf(securityById, Math.max(securityById.length * 2, id + 1));
+        securityById[id] = security;
     }
 
     public void clear() {
-        securityByIsin.clear();
+        Arrays.fill(securityById, null);
     }
 
-    Iterable<? extends Security> allSecurities() {
-        return securityByIsin.values();
+    public Iterable<? extends Security> allSecurities() {
+        return Arrays.stream(securityById).filter(Objects::nonNull).toList();
     }
 }
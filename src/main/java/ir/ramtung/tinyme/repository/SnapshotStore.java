@@ -0,0 +1,277 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Binary snapshots of the broker, shareholder and security repositories, order books
+ * included. {@link #capture} copies the state into a buffer, which must happen while nothing
+ * changes it; {@link #write} then puts the copy on disk on any thread, replacing the previous
+ * snapshot in one atomic move, and {@link #load} reads it back through a mapped buffer.
+ * <p>
+ * A snapshot holds a header (magic, version and the journal generation it is followed by),
+ * the brokers, the shareholders, the securities with their resting and stop orders, the
+ * positions, and a CRC32 of all that. Strings are a short length and UTF-8; times are epoch
+ * second and nanos in UTC.
+ */
+@Component
+public class SnapshotStore {
+    private static final int MAGIC = 0x544d534e;
+    private static final byte VERSION = 1;
+    private static final byte PLAIN_ORDER = 0;
+    private static final byte ICEBERG_ORDER = 1;
+    private static final byte STOP_LIMIT_ORDER = 2;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final BrokerRepository brokerRepository;
+    private final ShareholderRepository shareholderRepository;
+    private final SecurityRepository securityRepository;
+    private final Path path;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+    @Autowired
+    public SnapshotStore(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository,
+                         SecurityRepository securityRepository, @Value("${snapshotFile:}") String file) {
+        this(brokerRepository, shareholderRepository, securityRepository, file == null || file.isBlank() ? null : Path.of(file));
+    }
+
+    public SnapshotStore(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository,
+                         SecurityRepository securityRepository, Path path) {
+        this.brokerRepository = brokerRepository;
+        this.shareholderRepository = shareholderRepository;
+        this.securityRepository = securityRepository;
+        this.path = path;
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    public boolean exists() {
+        return path != null && Files.exists(path);
+    }
+
+    // Copies the repositories as they are now; the copy stays valid until the next capture.
+    public ByteBuffer capture(long journalGeneration) {
+        buffer.clear();
+        ensure(13);
+        buffer.putInt(MAGIC).put(VERSION).putLong(journalGeneration);
+
+        int count = 0;
+        for (Broker ignored : brokerRepository.allBrokers())
+            count++;
+        ensure(4);
+        buffer.putInt(count);
+        for (Broker broker : brokerRepository.allBrokers()) {
+            ensure(16);
+            buffer.putLong(broker.getBrokerId()).putLong(broker.getCredit());
+            putString(broker.getName());
+        }
+
+        count = 0;
+        for (Shareholder ignored : shareholderRepository.allShareholders())
+            count++;
+        ensure(4);
+        buffer.putInt(count);
+        for (Shareholder shareholder : shareholderRepository.allShareholders()) {
+            ensure(8);
+            buffer.putLong(shareholder.getShareholderId());
+            putString(shareholder.getName());
+        }
+
+        count = 0;
+        for (Security ignored : securityRepository.allSecurities())
+            count++;
+        ensure(4);
+        buffer.putInt(count);
+        for (Security security : securityRepository.allSecurities()) {
+            putString(security.getIsin());
+            ensure(17);
+            buffer.putInt(security.getTickSize()).putInt(security.getLotSize()).putInt(security.getMarketPrice())
+                    .put((byte) security.getMatchingState().ordinal());
+            int countAt = buffer.position();
+            buffer.putInt(0);
+            int[] orders = new int[1];
+            security.getOrderBook().forEachOrder(order -> {
+                putOrder(order);
+                orders[0]++;
+            });
+            buffer.putInt(countAt, orders[0]);
+        }
+
+        for (Shareholder shareholder : shareholderRepository.allShareholders()) {
+            ensure(12);
+            buffer.putLong(shareholder.getShareholderId());
+            int countAt = buffer.position();
+            buffer.putInt(0);
+            int[] positions = new int[1];
+            shareholder.getPositions().forEach((securityId, amount) -> {
+                putString(securityRepository.findSecurityById(securityId).getIsin());
+                ensure(4);
+                buffer.putInt(amount);
+                positions[0]++;
+            });
+            buffer.putInt(countAt, positions[0]);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        ensure(4);
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+
+    public void write(ByteBuffer snapshot) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            while (snapshot.hasRemaining())
+                channel.write(snapshot);
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Replaces the contents of the repositories with the snapshot and returns the journal
+    // generation to replay from.
+    public long load() throws IOException {
+        MappedByteBuffer snapshot;
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (snapshot.limit() < 17 || snapshot.getInt(0) != MAGIC)
+            throw new IOException("Not a snapshot: " + path);
+        CRC32 crc = new CRC32();
+        crc.update(snapshot.slice(0, snapshot.limit() - 4));
+        if (snapshot.getInt(snapshot.limit() - 4) != (int) crc.getValue())
+            throw new IOException("Corrupt snapshot " + path);
+        snapshot.position(4);
+        byte version = snapshot.get();
+        if (version != VERSION)
+            throw new IOException("Unsupported snapshot version " + version);
+        long journalGeneration = snapshot.getLong();
+
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        securityRepository.clear();
+        for (int count = snapshot.getInt(); count > 0; count--) {
+            long brokerId = snapshot.getLong();
+            long credit = snapshot.getLong();
+            brokerRepository.addBroker(Broker.builder().brokerId(brokerId).credit(credit).name(getString(snapshot)).build());
+        }
+        for (int count = snapshot.getInt(); count > 0; count--) {
+            long shareholderId = snapshot.getLong();
+            shareholderRepository.addShareholder(Shareholder.builder().shareholderId(shareholderId).name(getString(snapshot)).build());
+        }
+        int orderCount = 0;
+        for (int count = snapshot.getInt(); count > 0; count--) {
+            Security security = Security.builder()
+                    .isin(getString(snapshot))
+                    .tickSize(snapshot.getInt())
+                    .lotSize(snapshot.getInt())
+                    .marketPrice(snapshot.getInt())
+                    .matchingState(MatchingState.values()[snapshot.get()])
+                    .build();
+            securityRepository.addSecurity(security);
+            for (int orders = snapshot.getInt(); orders > 0; orders--, orderCount++)
+                security.getOrderBook().enqueue(getOrder(snapshot, security));
+        }
+        while (snapshot.remaining() > 4) {
+            Shareholder shareholder = shareholderRepository.findShareholderById(snapshot.getLong());
+            for (int count = snapshot.getInt(); count > 0; count--) {
+                Security security = securityRepository.findSecurityByIsin(getString(snapshot));
+                shareholder.incPosition(security, snapshot.getInt());
+            }
+        }
+        log.info("Snapshot loaded with " + orderCount + " orders");
+        return journalGeneration;
+    }
+
+    private void putOrder(Order order) {
+        ensure(74);
+        byte kind = order instanceof IcebergOrder ? ICEBERG_ORDER : order instanceof StopLimitOrder ? STOP_LIMIT_ORDER : PLAIN_ORDER;
+        LocalDateTime entryTime = order.getEntryTime();
+        buffer.put(kind)
+                .putLong(order.getOrderId())
+                .put((byte) order.getSide().ordinal())
+                .putInt(order.getInitialQuantity())
+                .putInt(order.getTotalQuantity())
+                .putInt(order.getPrice())
+                .putLong(order.getBroker().getBrokerId())
+                .putLong(order.getShareholder().getShareholderId())
+                .putLong(entryTime.toEpochSecond(ZoneOffset.UTC))
+                .putInt(entryTime.getNano())
+                .putInt(order.getMinimumExecutionQuantity());
+        if (order instanceof IcebergOrder icebergOrder)
+            buffer.putInt(icebergOrder.getPeakSize()).putInt(icebergOrder.getDisplayedQuantity());
+        else if (order instanceof StopLimitOrder stopLimitOrder)
+            buffer.putLong(stopLimitOrder.getRequestId()).putInt(stopLimitOrder.getStopPrice());
+    }
+
+    private Order getOrder(ByteBuffer snapshot, Security security) {
+        byte kind = snapshot.get();
+        long orderId = snapshot.getLong();
+        Side side = Side.values()[snapshot.get()];
+        int initialQuantity = snapshot.getInt();
+        int quantity = snapshot.getInt();
+        int price = snapshot.getInt();
+        Broker broker = brokerRepository.findBrokerById(snapshot.getLong());
+        Shareholder shareholder = shareholderRepository.findShareholderById(snapshot.getLong());
+        LocalDateTime entryTime = LocalDateTime.ofEpochSecond(snapshot.getLong(), snapshot.getInt(), ZoneOffset.UTC);
+        int minimumExecutionQuantity = snapshot.getInt();
+        return switch (kind) {
+            case ICEBERG_ORDER -> new IcebergOrder(orderId, security, side, initialQuantity, quantity, price, broker, shareholder,
+                    entryTime, snapshot.getInt(), snapshot.getInt(), OrderStatus.QUEUED, minimumExecutionQuantity);
+            case STOP_LIMIT_ORDER -> new StopLimitOrder(snapshot.getLong(), orderId, security, side, quantity, price, broker, shareholder,
+                    entryTime, OrderStatus.QUEUED, snapshot.getInt());
+            default -> new Order(orderId, security, side, initialQuantity, quantity, price, broker, shareholder,
+                    entryTime, OrderStatus.QUEUED, minimumExecutionQuantity);
+        };
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            ensure(2);
+            buffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensure(2 + bytes.length);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer snapshot) {
+        int length = snapshot.getShort();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        snapshot.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes)
+            return;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+}
@@ -0,0 +1,100 @@
+package ir.ramtung.tinyme.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of nanosecond latencies in log-linear buckets: each power of two is split into
+ * 16 buckets, so a reported value is within about 6% of the recorded ones. Written by one
+ * thread and read by any.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+    // The count, total and max follow the buckets; all are written with lazySet, which keeps
+    // recording free of full fences.
+    private static final int COUNT = BUCKETS;
+    private static final int TOTAL = BUCKETS + 1;
+    private static final int MAX = BUCKETS + 2;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 3);
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        increment(bucketOf(nanos), 1);
+        increment(COUNT, 1);
+        increment(TOTAL, nanos);
+        if (nanos > counts.get(MAX))
+            counts.lazySet(MAX, nanos);
+    }
+
+    private void increment(int index, long amount) {
+        counts.lazySet(index, counts.get(index) + amount);
+    }
+
+    // Adds the latencies recorded by another histogram to the ones of this one.
+    public void add(LatencyHistogram other) {
+        for (int index = 0; index < MAX; index++)
+            increment(index, other.counts.get(index));
+        if (other.max() > max())
+            counts.lazySet(MAX, other.max());
+    }
+
+    public long count() {
+        return counts.get(COUNT);
+    }
+
+    public long max() {
+        return counts.get(MAX);
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) counts.get(TOTAL) / n;
+    }
+
+    public long valueAtPercentile(double percentile) {
+        long n = count();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank)
+                return Math.min(highestValueIn(bucket), max());
+        }
+        return max();
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return magnitude * SUB_BUCKETS + (int) (value >>> magnitude);
+    }
+
+    private static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int magnitude = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d mean=%.0fns p50=%dns p99=%dns p99.9=%dns max=%dns",
+                name, count(), mean(), valueAtPercentile(50), valueAtPercentile(99), valueAtPercentile(99.9), max());
+    }
+}
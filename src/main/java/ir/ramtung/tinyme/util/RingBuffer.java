@@ -0,0 +1,158 @@
+package ir.ramtung.tinyme.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A fixed ring of pre-allocated entries passed through a chain of stages, in the manner of
+ * the LMAX Disruptor. Producers claim a sequence, fill the entry in place and publish it;
+ * each stage runs on its own thread, handles entries in sequence order once every stage it
+ * comes after is done with them, and producers wait for the last stages before reusing a slot.
+ */
+public class RingBuffer<E> {
+    public interface Handler<E> {
+        // endOfBatch is set on the last entry that was available when the stage woke up.
+        void onEntry(E entry, long sequence, boolean endOfBatch);
+    }
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final Object[] entries;
+    private final int mask;
+    private final int roundShift;
+    private final WaitStrategy waitStrategy;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    // The round in which each slot was last published, so that producers may publish out of order.
+    private final AtomicIntegerArray publishedRounds;
+    private final List<Stage> stages = new ArrayList<>();
+    private volatile Stage[] lastStages = new Stage[0];
+
+    public RingBuffer(int capacity, Supplier<E> factory, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two");
+        entries = new Object[capacity];
+        for (int i = 0; i < capacity; i++)
+            entries[i] = factory.get();
+        mask = capacity - 1;
+        roundShift = Integer.numberOfTrailingZeros(capacity);
+        publishedRounds = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            publishedRounds.set(i, -1);
+        this.waitStrategy = waitStrategy;
+    }
+
+    public Stage stage(String name, Handler<E> handler, Stage... after) {
+        Stage stage = new Stage(name, after);
+        stage.thread = new Thread(() -> process(stage, handler), name);
+        stage.thread.setDaemon(true);
+        stages.add(stage);
+        return stage;
+    }
+
+    // The stages producers wait for before overwriting a slot; all the others come before them.
+    public void start(Stage... last) {
+        lastStages = last;
+        for (Stage stage : stages)
+            stage.thread.start();
+    }
+
+    public long next() {
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - entries.length;
+        int attempt = 0;
+        while (wrapPoint > minimumSequence(lastStages))
+            waitStrategy.idle(attempt++);
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    public void publish(long sequence) {
+        publishedRounds.lazySet((int) sequence & mask, (int) (sequence >>> roundShift));
+    }
+
+    // Stops the stages in the order they were added, each after handling what is already there.
+    public void halt() throws InterruptedException {
+        for (Stage stage : stages) {
+            stage.halted = true;
+            stage.thread.join();
+        }
+    }
+
+    private boolean isPublished(long sequence) {
+        return publishedRounds.get((int) sequence & mask) == (int) (sequence >>> roundShift);
+    }
+
+    private long highestPublished(long from) {
+        long highest = from - 1;
+        long last = claimed.get();
+        for (long sequence = from; sequence <= last && isPublished(sequence); sequence++)
+            highest = sequence;
+        return highest;
+    }
+
+    private static long minimumSequence(Stage[] stages) {
+        long minimum = Long.MAX_VALUE;
+        for (Stage stage : stages)
+            minimum = Math.min(minimum, stage.sequence.get());
+        return minimum;
+    }
+
+    private void process(Stage stage, Handler<E> handler) {
+        long next = stage.sequence.get() + 1;
+        while (true) {
+            long available = waitFor(stage, next);
+            if (available < next)
+                return;
+            for (; next <= available; next++) {
+                try {
+                    handler.onEntry(get(next), next, next == available);
+                } catch (RuntimeException ex) {
+                    log.log(Level.SEVERE, "Stage " + stage.name + " failed on entry " + next, ex);
+                }
+            }
+            stage.sequence.lazySet(available);
+        }
+    }
+
+    private long waitFor(Stage stage, long next) {
+        int attempt = 0;
+        while (true) {
+            boolean stopping = stage.halted;
+            long available = stage.after.length == 0 ? highestPublished(next) : minimumSequence(stage.after);
+            if (available >= next)
+                return available;
+            if (stopping)
+                return next - 1;
+            waitStrategy.idle(attempt++);
+        }
+    }
+
+    public static final class Stage {
+        private final String name;
+        private final Stage[] after;
+        private final AtomicLong sequence = new AtomicLong(-1);
+        private Thread thread;
+        private volatile boolean halted;
+
+        private Stage(String name, Stage[] after) {
+            this.name = name;
+            this.after = after;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSequence() {
+            return sequence.get();
+        }
+    }
+}
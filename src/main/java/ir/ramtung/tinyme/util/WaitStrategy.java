@@ -0,0 +1,31 @@
+package ir.ramtung.tinyme.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a ring buffer stage or producer does while the sequence it waits for is not there yet.
+ */
+public enum WaitStrategy {
+    // Lowest latency, but keeps a core busy for each waiting thread.
+    BUSY_SPIN {
+        @Override
+        public void idle(int attempt) {
+            Thread.onSpinWait();
+        }
+    },
+    // Spins for a short while, then parks briefly between checks.
+    PARKING {
+        @Override
+        public void idle(int attempt) {
+            if (attempt < SPINS)
+                Thread.onSpinWait();
+            else
+                LockSupport.parkNanos(PARK_NANOS);
+        }
+    };
+
+    private static final int SPINS = 1000;
+    private static final long PARK_NANOS = 50_000;
+
+    public abstract void idle(int attempt);
+}
@@ -26,6 +26,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -310,4 +313,36 @@ public class BrokerCreditTest {
         assertThat(broker2.getCredit()).isEqualTo(93_679_750L);
     }
 
+    @Test
+    void concurrent_reservations_never_overdraw_the_credit() throws Exception {
+        Broker broker = Broker.builder().brokerId(4).credit(1_000_000).build();
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> reserved = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++)
+            reserved.add(executor.submit(() -> {
+                int count = 0;
+                for (int attempt = 0; attempt < 100_000; attempt++)
+                    if (broker.tryReserveCredit(7))
+                        count++;
+                return count;
+            }));
+        int total = 0;
+        for (Future<Integer> future : reserved)
+            total += future.get();
+        executor.shutdown();
+        assertThat(total).isEqualTo(1_000_000 / 7);
+        assertThat(broker.getCredit()).isEqualTo(1_000_000 % 7);
+        assertThat(broker.tryReserveCredit(7)).isFalse();
+        broker.releaseCredit(7 * total);
+        assertThat(broker.getCredit()).isEqualTo(1_000_000);
+    }
+
+    @Test
+    void rejected_matching_releases_the_reserved_credit() {
+        Order order = new Order(11, security, Side.BUY, 2000, 15820, broker1, shareholder, LocalDateTime.now(), OrderStatus.NEW, 1900);
+        MatchResult result = security.newOrder(order, matcher);
+        assertThat(result.outcome()).isEqualTo(MatchingOutcome.MINIMUM_QUANTITY_NOT_SATISFIED);
+        assertThat(broker1.getCredit()).isEqualTo(100_000_000L);
+    }
 }
@@ -0,0 +1,93 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.config.MockedJMSTestConfig;
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.EngineMetrics;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "metricsEnabled=true")
+@Import(MockedJMSTestConfig.class)
+@DirtiesContext
+public class EngineMetricsTest {
+    @Autowired
+    OrderHandler orderHandler;
+    @Autowired
+    EngineMetrics metrics;
+    @Autowired
+    SecurityRepository securityRepository;
+    @Autowired
+    BrokerRepository brokerRepository;
+    @Autowired
+    ShareholderRepository shareholderRepository;
+    private Security security;
+
+    @BeforeEach
+    void setup() {
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        security = Security.builder().isin("ABC").build();
+        securityRepository.addSecurity(security);
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholder.incPosition(security, 100_000);
+        shareholderRepository.addShareholder(shareholder);
+        Broker rich = Broker.builder().brokerId(1).credit(100_000_000).build();
+        brokerRepository.addBroker(rich);
+        brokerRepository.addBroker(Broker.builder().brokerId(2).credit(0).build());
+
+        security.getOrderBook().enqueue(new Order(6, security, Side.SELL, 350, 580, rich, shareholder));
+        security.getOrderBook().enqueue(new Order(7, security, Side.SELL, 100, 581, rich, shareholder));
+        security.getOrderBook().enqueue(new StopLimitOrder(1, 20, security, Side.BUY, 50, 600, rich, shareholder, 570));
+    }
+
+    @Test
+    void handled_requests_are_timed_and_counted() {
+        LocalDateTime time = LocalDateTime.now();
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(2, "ABC", 21, time, Side.BUY, 100, 580, 1, 1, 0));
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(3, "ABC", 22, time, Side.BUY, 1000, 590, 2, 1, 0));
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(4, "XYZ", 23, time, Side.BUY, 100, 580, 1, 1, 0));
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(5, "ABC", 24, time, Side.BUY, 0, 580, 1, 1, 0));
+
+        Map<String, Long> counters = metrics.counters();
+        assertThat(counters.get("trades")).isEqualTo(2);
+        assertThat(counters.get("stop_activations")).isEqualTo(1);
+        assertThat(counters.get("rollbacks")).isEqualTo(1);
+        assertThat(counters.get("invalid_requests")).isEqualTo(2);
+        assertThat(counters.get("outcome.ok")).isEqualTo(2);
+        assertThat(counters.get("outcome.not_enough_credit")).isEqualTo(1);
+        assertThat(metrics.counters("ABC").get("invalid_requests")).isEqualTo(1);
+
+        assertThat(metrics.latencies().get("handle").count()).isEqualTo(3);
+        assertThat(metrics.latencies().get("validate").count()).isEqualTo(2);
+        assertThat(metrics.latencies().get("match").count()).isEqualTo(3);
+        assertThat(metrics.latencies("ABC").get("publish").count()).isEqualTo(2);
+        assertThat(metrics.bookDepth("ABC")).containsEntry("sell.levels", 2).containsEntry("sell.orders", 2)
+                .containsEntry("buy.orders", 0).containsEntry("buy.stopOrders", 0);
+    }
+
+    @Test
+    void disabled_metrics_record_nothing() {
+        EngineMetrics disabled = new EngineMetrics(securityRepository, false);
+        assertThat(disabled.start()).isZero();
+        disabled.record(security, EngineMetrics.Stage.HANDLE, 0);
+        disabled.count(security, EngineMetrics.Counter.TRADES, 5);
+        disabled.rejected("XYZ", 0);
+        assertThat(disabled.counters()).allSatisfy((name, value) -> assertThat(value).isZero());
+        assertThat(disabled.latencies().get("handle").count()).isZero();
+    }
+}
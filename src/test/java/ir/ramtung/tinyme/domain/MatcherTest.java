@@ -3,12 +3,17 @@ package ir.ramtung.tinyme.domain;
 import ir.ramtung.tinyme.config.MockedJMSTestConfig;
 import ir.ramtung.tinyme.domain.entity.*;
 import ir.ramtung.tinyme.domain.service.Matcher;
+import ir.ramtung.tinyme.domain.service.control.ActivationControl;
+import ir.ramtung.tinyme.domain.service.control.CreditControl;
+import ir.ramtung.tinyme.domain.service.control.MatchingControl;
+import ir.ramtung.tinyme.domain.service.control.MatchingControlList;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -16,6 +21,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
 
 @SpringBootTest
 @Import(MockedJMSTestConfig.class)
@@ -29,6 +35,12 @@ public class MatcherTest {
     private List<Order> tradableOrders;
     @Autowired
     private Matcher matcher;
+    @Autowired
+    private MatchingControlList controls;
+    @Autowired
+    private CreditControl creditControl;
+    @Autowired
+    private ActivationControl activationControl;
 
     @BeforeEach
     void setupOrderBook() {
@@ -287,4 +299,122 @@ public class MatcherTest {
         assertThat(matcher.openMarket(security)).isEqualTo(trades);
         assertThat(security.getOrderBook().getSellQueue().getFirst()).isEqualTo(icebergOrder);
     }
+
+    private int scannedSellQuantity(Shareholder shareholder) {
+        return orderBook.getSellQueue().stream()
+                .filter(order -> order.getShareholder().equals(shareholder))
+                .mapToInt(Order::getTotalQuantity)
+                .sum();
+    }
+
+    @Test
+    void sell_quantity_of_shareholder_follows_partial_and_full_executions() {
+        matcher.execute(new Order(11, security, Side.BUY, 500, 15810, broker, shareholder));
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(scannedSellQuantity(shareholder));
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(1340);
+    }
+
+    @Test
+    void sell_quantity_of_shareholder_is_restored_by_rolled_back_matching() {
+        Order order = new Order(11, security, Side.BUY, 2000, 15810, broker, shareholder, 1500);
+        assertThat(matcher.execute(order).outcome()).isEqualTo(MatchingOutcome.MINIMUM_QUANTITY_NOT_SATISFIED);
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(scannedSellQuantity(shareholder));
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(1840);
+    }
+
+    @Test
+    void sell_quantity_of_shareholder_follows_queued_iceberg_replenishment() {
+        Shareholder other = Shareholder.builder().shareholderId(1).build();
+        other.incPosition(security, 1000);
+        orderBook.enqueue(new IcebergOrder(12, security, Side.SELL, 450, 15800, broker, other, 100));
+        matcher.execute(new Order(13, security, Side.BUY, 500, 15800, broker, shareholder));
+        assertThat(orderBook.totalSellQuantityByShareholder(other)).isEqualTo(scannedSellQuantity(other));
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(scannedSellQuantity(shareholder));
+    }
+
+    @Test
+    void rolled_back_matching_puts_the_same_orders_back_in_place() {
+        List<Order> sellQueue = orderBook.getSellQueue();
+        Order order = new Order(11, security, Side.BUY, 2000, 15820, broker, shareholder, 1900);
+        assertThat(matcher.execute(order).outcome()).isEqualTo(MatchingOutcome.MINIMUM_QUANTITY_NOT_SATISFIED);
+        assertThat(orderBook.getSellQueue()).isEqualTo(sellQueue);
+        for (int i = 0; i < sellQueue.size(); i++)
+            assertThat(orderBook.getSellQueue().get(i)).isSameAs(orders.get(5 + i));
+        assertThat(orderBook.findByOrderId(Side.SELL, 8)).isSameAs(orders.get(7));
+    }
+
+    @Test
+    void rolled_back_matching_restores_queued_iceberg_order() {
+        IcebergOrder icebergOrder = new IcebergOrder(12, security, Side.SELL, 450, 15800, broker, shareholder, 100);
+        orderBook.enqueue(icebergOrder);
+        orderBook.decreaseQuantity(icebergOrder, 30);
+        Order order = new Order(13, security, Side.BUY, 1000, 15800, broker, shareholder, 1000);
+        assertThat(matcher.execute(order).outcome()).isEqualTo(MatchingOutcome.MINIMUM_QUANTITY_NOT_SATISFIED);
+        assertThat(orderBook.getSellQueue().get(1)).isSameAs(icebergOrder);
+        assertThat(icebergOrder.getTotalQuantity()).isEqualTo(420);
+        assertThat(icebergOrder.getDisplayedQuantity()).isEqualTo(70);
+        assertThat(orderBook.getSellQueue().stream().filter(o -> o.getOrderId() == 12)).hasSize(1);
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(scannedSellQuantity(shareholder));
+    }
+
+    @Test
+    void rolled_back_matching_restores_broker_credits() {
+        Broker buyer = Broker.builder().brokerId(2).credit(10_000_000L).build();
+        Order order = new Order(11, security, Side.BUY, 2000, 15820, buyer, shareholder, 1900);
+        matcher.execute(order);
+        assertThat(buyer.getCredit()).isEqualTo(10_000_000L);
+        assertThat(broker.getCredit()).isEqualTo(100_000_000L);
+    }
+
+    @Test
+    void matching_stopped_by_lack_of_credit_restores_book_and_credits() {
+        Broker buyer = Broker.builder().brokerId(2).credit(15800 * 350 + 15810 * 100).build();
+        Order order = new Order(11, security, Side.BUY, 1000, 15810, buyer, shareholder);
+        assertThat(matcher.match(order).outcome()).isEqualTo(MatchingOutcome.NOT_ENOUGH_CREDIT);
+        assertThat(buyer.getCredit()).isEqualTo(15800 * 350 + 15810 * 100);
+        assertThat(broker.getCredit()).isEqualTo(100_000_000L);
+        assertThat(orderBook.getSellQueue().getFirst()).isSameAs(orders.get(5));
+        assertThat(orderBook.getSellQueue().getFirst().getQuantity()).isEqualTo(350);
+        assertThat(orderBook.getSellQueue().get(1).getQuantity()).isEqualTo(285);
+    }
+
+    @Test
+    @DirtiesContext
+    void stop_order_credit_reserved_before_matching_is_released_when_a_later_control_rejects_it() {
+        MatchingControl rejecting = new MatchingControl() {
+            @Override
+            public MatchingOutcome canStartMatching(Order order) {
+                return MatchingOutcome.NOT_ENOUGH_POSITIONS;
+            }
+        };
+        ReflectionTestUtils.setField(controls, "controlList", List.of(creditControl, rejecting, activationControl));
+        Broker buyer = Broker.builder().brokerId(2).credit(10_000_000L).build();
+        StopLimitOrder order = new StopLimitOrder(1, 11, security, Side.BUY, 100, 15900, buyer, shareholder, 16000);
+
+        assertThat(matcher.execute(order).outcome()).isEqualTo(MatchingOutcome.NOT_ENOUGH_POSITIONS);
+        assertThat(buyer.getCredit()).isEqualTo(10_000_000L);
+        assertThat(orderBook.findByOrderId(Side.BUY, 11)).isNull();
+    }
+
+    @Test
+    void waiting_stop_order_keeps_its_reserved_credit() {
+        Broker buyer = Broker.builder().brokerId(2).credit(10_000_000L).build();
+        StopLimitOrder order = new StopLimitOrder(1, 11, security, Side.BUY, 100, 15900, buyer, shareholder, 16000);
+
+        assertThat(matcher.execute(order).outcome()).isEqualTo(MatchingOutcome.NOT_ACTIVATABLE);
+        assertThat(buyer.getCredit()).isEqualTo(10_000_000L - 100 * 15900);
+        assertThat(orderBook.findByOrderId(Side.BUY, 11)).isSameAs(order);
+    }
+
+    @Test
+    void fills_of_a_result_last_until_the_next_match_unless_kept() {
+        MatchResult kept = matcher.match(new Order(11, security, Side.SELL, 100, 15600, broker, shareholder)).keep();
+        MatchResult lent = matcher.match(new Order(12, security, Side.SELL, 50, 15600, broker, shareholder));
+        MatchResult last = matcher.match(new Order(13, security, Side.SELL, 20, 15600, broker, shareholder));
+
+        assertThat(kept.fills().quantity(0)).isEqualTo(100);
+        assertThatIllegalStateException().isThrownBy(lent::fills);
+        assertThat(last.fills().quantity(0)).isEqualTo(20);
+        assertThat(last.trades()).extracting(Trade::getQuantity).containsExactly(20);
+    }
 }
@@ -4,6 +4,7 @@ import ir.ramtung.tinyme.domain.entity.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -115,4 +116,145 @@ class OrderBookTest {
         orderBook.removeByOrderId(Side.SELL, 10);
         assertThat(orderBook.getSellQueue()).isEqualTo(orders.subList(5, 9));
     }
-}
\ No newline at end of file
+
+    @Test
+    void orders_with_the_same_price_keep_their_time_priority() {
+        OrderBook orderBook = security.getOrderBook();
+        Order order = new Order(17, security, Side.BUY, 100, 15450, orders.get(0).getBroker(), orders.get(0).getShareholder());
+        orderBook.enqueue(order);
+        assertThat(orderBook.getBuyQueue()).containsExactly(orders.get(0), orders.get(1), orders.get(2), orders.get(3), order, orders.get(4));
+    }
+
+    @Test
+    void put_back_order_goes_before_orders_with_the_same_price() {
+        OrderBook orderBook = security.getOrderBook();
+        Order order = orderBook.removeFirst(Side.SELL);
+        orderBook.enqueue(new Order(17, security, Side.SELL, 100, 15800, order.getBroker(), order.getShareholder()));
+        orderBook.putBack(order);
+        assertThat(orderBook.getSellQueue().getFirst()).isEqualTo(order);
+        assertThat(orderBook.getSellQueue().get(1).getOrderId()).isEqualTo(17);
+    }
+
+    @Test
+    void removed_order_is_no_longer_found_by_id() {
+        OrderBook orderBook = security.getOrderBook();
+        orderBook.removeFirst(Side.BUY);
+        orderBook.activateAll(Side.BUY, 15700);
+        assertThat(orderBook.findByOrderId(Side.BUY, 1)).isNull();
+        assertThat(orderBook.findByOrderId(Side.BUY, 11)).isNull();
+        assertThat(orderBook.removeByOrderId(Side.BUY, 1)).isFalse();
+    }
+
+    @Test
+    void restored_order_is_found_by_id_again() {
+        OrderBook orderBook = security.getOrderBook();
+        Order order = orderBook.removeFirst(Side.SELL);
+        orderBook.restoreOrder(order);
+        assertThat(orderBook.findByOrderId(Side.SELL, 6)).isEqualTo(order);
+        assertThat(orderBook.removeByOrderId(Side.SELL, 6)).isTrue();
+        assertThat(orderBook.getSellQueue()).isEqualTo(orders.subList(6, 10));
+    }
+
+    @Test
+    void sell_quantity_of_shareholder_matches_the_sell_queue() {
+        OrderBook orderBook = security.getOrderBook();
+        Shareholder shareholder = orders.get(0).getShareholder();
+        orderBook.decreaseQuantity(orderBook.findByOrderId(Side.SELL, 7), 85);
+        orderBook.removeByOrderId(Side.SELL, 9);
+        orderBook.restoreOrder(orders.get(5).snapshotWithQuantity(100));
+        orderBook.removeByOrderId(Side.SELL, 14);
+        int scanned = orderBook.getSellQueue().stream().mapToInt(Order::getTotalQuantity).sum();
+        assertThat(orderBook.totalSellQuantityByShareholder(shareholder)).isEqualTo(scanned);
+        assertThat(scanned).isEqualTo(100 + 200 + 800 + 65);
+    }
+
+    @Test
+    void activates_all_buy_stop_orders_up_to_market_price_in_stop_price_order() {
+        OrderBook orderBook = security.getOrderBook();
+        assertThat(orderBook.activateAll(Side.BUY, 15800)).isEqualTo(List.of(orders.get(10), orders.get(11)));
+        assertThat(orderBook.getStopBuyQueue()).containsExactly(orders.get(12));
+    }
+
+    @Test
+    void activates_all_sell_stop_orders_down_to_market_price_in_stop_price_order() {
+        OrderBook orderBook = security.getOrderBook();
+        assertThat(orderBook.activateAll(Side.SELL, 15400)).isEqualTo(List.of(orders.get(13), orders.get(14), orders.get(15)));
+        assertThat(orderBook.getStopSellQueue()).isEmpty();
+        assertThat(orderBook.findByOrderId(Side.SELL, 15)).isNull();
+    }
+
+    @Test
+    void activates_no_stop_order_when_market_price_does_not_reach_stop_prices() {
+        OrderBook orderBook = security.getOrderBook();
+        assertThat(orderBook.activateAll(Side.BUY, 15600)).isEmpty();
+        assertThat(orderBook.getStopBuyQueue()).isEqualTo(orders.subList(10, 13));
+    }
+
+    @Test
+    void tracked_depth_follows_the_visible_quantity_of_each_level() {
+        OrderBook orderBook = security.getOrderBook();
+        MarketDepth depth = orderBook.trackDepth();
+        List<MarketDepth.Level> updates = new ArrayList<>();
+        assertThat(depth.drain(updates)).isEqualTo(1);
+        assertThat(updates).hasSize(7).contains(new MarketDepth.Level(Side.BUY, 15450, 971, 2));
+
+        orderBook.decreaseQuantity(orders.get(7), 85);
+        orderBook.decreaseQuantity(orders.get(7), 15);
+        orderBook.removeByOrderId(Side.BUY, 1);
+        orderBook.enqueue(new IcebergOrder(17, security, Side.SELL, 1000, 15800, orders.get(0).getBroker(), orders.get(0).getShareholder(), 100));
+        orderBook.enqueue(new StopLimitOrder(7, 18, security, Side.BUY, 10, 15900, orders.get(0).getBroker(), orders.get(0).getShareholder(), 15900));
+        updates.clear();
+        assertThat(depth.drain(updates)).isEqualTo(2);
+        assertThat(updates).containsExactlyInAnyOrder(
+                new MarketDepth.Level(Side.SELL, 15810, 985, 2),
+                new MarketDepth.Level(Side.BUY, 15700, 0, 0),
+                new MarketDepth.Level(Side.SELL, 15800, 450, 2));
+        assertThat(depth.levels(Side.BUY, 2)).containsExactly(
+                new MarketDepth.Level(Side.BUY, 15500, 43, 1),
+                new MarketDepth.Level(Side.BUY, 15450, 971, 2));
+
+        updates.clear();
+        assertThat(depth.drain(updates)).isEqualTo(2);
+        assertThat(updates).isEmpty();
+    }
+
+    @Test
+    void removes_only_the_orders_of_the_broker_and_keeps_its_index_in_step() {
+        OrderBook orderBook = security.getOrderBook();
+        Broker other = Broker.builder().brokerId(2).build();
+        Shareholder shareholder = orders.get(0).getShareholder();
+        orderBook.enqueue(new Order(20, security, Side.BUY, 100, 15300, other, shareholder));
+        orderBook.enqueue(new StopLimitOrder(7, 21, security, Side.SELL, 100, 15200, other, shareholder, 15250));
+        orderBook.removeFirst(Side.BUY);
+        orderBook.removeByOrderId(Side.SELL, 7);
+
+        assertThat(orderBook.removeByBroker(orders.get(0).getBroker()))
+                .extracting(Order::getOrderId).containsExactlyInAnyOrder(2L, 3L, 4L, 5L, 6L, 8L, 9L, 10L, 11L, 12L, 13L, 14L, 15L, 16L);
+        assertThat(orderBook.getBuyQueue()).extracting(Order::getOrderId).containsExactly(20L);
+        assertThat(orderBook.getSellQueue()).isEmpty();
+        assertThat(orderBook.removeByShareholder(shareholder)).extracting(Order::getOrderId).containsExactlyInAnyOrder(20L, 21L);
+        assertThat(orderBook.removeAll()).isEmpty();
+    }
+
+    @Test
+    void order_queued_again_under_a_taken_id_is_found_once_the_first_leaves() {
+        OrderBook orderBook = security.getOrderBook();
+        Broker broker = Broker.builder().build();
+        Shareholder shareholder = Shareholder.builder().build();
+        Order again = new Order(1, security, Side.BUY, 10, 15000, broker, shareholder);
+        StopLimitOrder stopAgain = new StopLimitOrder(1, 1, security, Side.BUY, 10, 16000, broker, shareholder, 16000);
+        orderBook.enqueue(stopAgain);
+        orderBook.enqueue(again);
+
+        assertThat(orderBook.findByOrderId(Side.BUY, 1)).isSameAs(orders.get(0));
+        orderBook.removeByOrderId(Side.BUY, 2);
+        assertThat(orderBook.findByOrderId(Side.BUY, 1)).isSameAs(orders.get(0));
+        orderBook.removeByOrderId(Side.BUY, 1);
+        assertThat(orderBook.findByOrderId(Side.BUY, 1)).isSameAs(again);
+        orderBook.removeByOrderId(Side.BUY, 1);
+        assertThat(orderBook.findByOrderId(Side.BUY, 1)).isSameAs(stopAgain);
+        orderBook.removeByOrderId(Side.BUY, 1);
+        assertThat(orderBook.findByOrderId(Side.BUY, 1)).isNull();
+        assertThat(orderBook.getBuyQueue()).extracting(Order::getOrderId).containsExactly(3L, 4L, 5L);
+    }
+}
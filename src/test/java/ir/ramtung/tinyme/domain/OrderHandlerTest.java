@@ -11,7 +11,10 @@ import ir.ramtung.tinyme.messaging.event.*;
 import ir.ramtung.tinyme.messaging.exception.InvalidRequestException;
 import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderBatchRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelScope;
 import ir.ramtung.tinyme.messaging.request.MatchingState;
 import ir.ramtung.tinyme.repository.BrokerRepository;
 import ir.ramtung.tinyme.repository.SecurityRepository;
@@ -676,4 +679,112 @@ public class OrderHandlerTest {
         orderHandler.handleDeleteOrder(deleteOrderRq);
         verify(eventPublisher).publish(new OrderRejectedEvent(1, 1, List.of(Message.ORDER_ID_NOT_FOUND)));
     }
+
+    @Test
+    void batch_legs_get_their_own_events_followed_by_the_batch_summary() {
+        setUpOrderBook1();
+        EnterOrderBatchRq batchRq = new EnterOrderBatchRq(1, "ABC",
+                List.of(new DeleteOrderRq(11, "ABC", Side.SELL, 6), new DeleteOrderRq(12, "ABC", Side.SELL, 99)),
+                List.of(EnterOrderRq.createUpdateOrderRq(13, "ABC", 7, LocalDateTime.now(), Side.SELL, 100, 590, broker2.getBrokerId(), shareholder.getShareholderId(), 0),
+                        EnterOrderRq.createNewOrderRq(14, "ABC", 10, LocalDateTime.now(), Side.SELL, 50, 600, broker1.getBrokerId(), shareholder.getShareholderId(), 0)));
+
+        orderHandler.handleEnterOrderBatch(batchRq);
+
+        var inOrder = inOrder(eventPublisher);
+        inOrder.verify(eventPublisher).publish(new OrderDeletedEvent(11, 6));
+        inOrder.verify(eventPublisher).publish(new OrderRejectedEvent(12, 99, List.of(Message.ORDER_ID_NOT_FOUND)));
+        inOrder.verify(eventPublisher).publish(new OrderUpdatedEvent(13, 7));
+        inOrder.verify(eventPublisher).publish(new OrderAcceptedEvent(14, 10));
+        inOrder.verify(eventPublisher).publish(new OrderBatchHandledEvent(1, "ABC", 3, 1));
+        assertThat(security.getOrderBook().findByOrderId(Side.SELL, 6)).isNull();
+        assertThat(security.getOrderBook().findByOrderId(Side.SELL, 7).getPrice()).isEqualTo(590);
+        assertThat(security.getOrderBook().findByOrderId(Side.SELL, 10)).isNotNull();
+    }
+
+    @Test
+    void batch_legs_referring_to_an_order_removed_by_an_earlier_leg_are_rejected() {
+        setUpOrderBook1();
+        EnterOrderBatchRq batchRq = new EnterOrderBatchRq(1, "ABC",
+                List.of(new DeleteOrderRq(11, "ABC", Side.SELL, 7), new DeleteOrderRq(12, "ABC", Side.SELL, 7)),
+                List.of(EnterOrderRq.createUpdateOrderRq(13, "ABC", 7, LocalDateTime.now(), Side.SELL, 100, 590, broker2.getBrokerId(), shareholder.getShareholderId(), 0)));
+
+        orderHandler.handleEnterOrderBatch(batchRq);
+
+        verify(eventPublisher).publish(new OrderDeletedEvent(11, 7));
+        verify(eventPublisher).publish(new OrderRejectedEvent(12, 7, List.of(Message.ORDER_ID_NOT_FOUND)));
+        verify(eventPublisher).publish(new OrderRejectedEvent(13, 7, List.of(Message.ORDER_ID_NOT_FOUND)));
+        verify(eventPublisher).publish(new OrderBatchHandledEvent(1, "ABC", 1, 2));
+    }
+
+    @Test
+    void batch_on_unknown_security_rejects_every_leg() {
+        EnterOrderBatchRq batchRq = new EnterOrderBatchRq(1, "XXX",
+                List.of(new DeleteOrderRq(11, "XXX", Side.SELL, 6)),
+                List.of(EnterOrderRq.createNewOrderRq(12, "XXX", 10, LocalDateTime.now(), Side.SELL, 50, 600, broker1.getBrokerId(), shareholder.getShareholderId(), 0)));
+
+        orderHandler.handleEnterOrderBatch(batchRq);
+
+        verify(eventPublisher).publish(new OrderRejectedEvent(11, 6, List.of(Message.UNKNOWN_SECURITY_ISIN)));
+        verify(eventPublisher).publish(new OrderRejectedEvent(12, 10, List.of(Message.UNKNOWN_SECURITY_ISIN)));
+        verify(eventPublisher).publish(new OrderBatchHandledEvent(1, "XXX", 0, 2));
+    }
+
+    @Test
+    void mass_cancel_by_broker_deletes_its_orders_and_gives_back_their_credit() {
+        Broker broker = Broker.builder().brokerId(4).credit(0).build();
+        brokerRepository.addBroker(broker);
+        setUpOrderBook1();
+        security.getOrderBook().enqueue(new Order(10, security, Side.BUY, 100, 540, broker, shareholder));
+        security.getOrderBook().enqueue(new Order(11, security, Side.BUY, 50, 530, broker, shareholder));
+        security.getOrderBook().enqueue(new Order(12, security, Side.SELL, 20, 600, broker, shareholder));
+
+        orderHandler.handleMassCancel(new MassCancelRq(1, "ABC", MassCancelScope.BROKER, 4, 0));
+
+        verify(eventPublisher).publish(new OrderDeletedEvent(1, 10));
+        verify(eventPublisher).publish(new OrderDeletedEvent(1, 11));
+        verify(eventPublisher).publish(new OrderDeletedEvent(1, 12));
+        verify(eventPublisher).publish(new MassCancelHandledEvent(1, "ABC", 3, 100 * 540 + 50 * 530));
+        assertThat(broker.getCredit()).isEqualTo(100 * 540 + 50 * 530);
+        assertThat(security.getOrderBook().getBuyQueue()).extracting(Order::getOrderId).containsExactly(1L, 2L, 3L);
+        assertThat(security.getOrderBook().getSellQueue()).extracting(Order::getOrderId).containsExactly(6L, 7L);
+    }
+
+    @Test
+    void mass_cancel_by_shareholder_deletes_its_stop_orders_too() {
+        Shareholder other = Shareholder.builder().shareholderId(5).build();
+        other.incPosition(security, 1000);
+        shareholderRepository.addShareholder(other);
+        setUpOrderBook1();
+        security.getOrderBook().enqueue(new Order(10, security, Side.SELL, 100, 590, broker1, other));
+        security.getOrderBook().enqueue(new StopLimitOrder(20, 11, security, Side.SELL, 100, 500, broker1, other, 520));
+
+        orderHandler.handleMassCancel(new MassCancelRq(1, "ABC", MassCancelScope.SHAREHOLDER, 0, 5));
+
+        verify(eventPublisher).publish(new OrderDeletedEvent(1, 10));
+        verify(eventPublisher).publish(new OrderDeletedEvent(1, 11));
+        verify(eventPublisher).publish(new MassCancelHandledEvent(1, "ABC", 2, 0));
+        assertThat(security.getOrderBook().findByOrderId(Side.SELL, 11)).isNull();
+        assertThat(security.getOrderBook().getSellQueue()).extracting(Order::getOrderId).containsExactly(6L, 7L);
+    }
+
+    @Test
+    void mass_cancel_is_rejected_during_auction_like_a_single_delete() {
+        setUpOrderBook1();
+        security.setMatchingState(MatchingState.AUCTION);
+
+        orderHandler.handleMassCancel(new MassCancelRq(1, "ABC", MassCancelScope.SECURITY, 0, 0));
+
+        verify(eventPublisher).publish(new OrderRejectedEvent(1, 0, List.of(Message.CANNOT_DELETE_STOP_LIMIT_ORDER_IN_THE_AUCTION_STATE)));
+        verify(eventPublisher, never()).publish(any(OrderDeletedEvent.class));
+        assertThat(security.getOrderBook().getBuyQueue()).hasSize(3);
+        assertThat(security.getOrderBook().getSellQueue()).hasSize(2);
+    }
+
+    @Test
+    void mass_cancel_of_an_unknown_broker_is_rejected() {
+        setUpOrderBook1();
+        orderHandler.handleMassCancel(new MassCancelRq(1, "ABC", MassCancelScope.BROKER, 99, 0));
+        verify(eventPublisher).publish(new OrderRejectedEvent(1, 0, List.of(Message.UNKNOWN_BROKER_ID)));
+        assertThat(security.getOrderBook().getBuyQueue()).hasSize(3);
+    }
 }
@@ -0,0 +1,56 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class OrderTest {
+    private final Security security = Security.builder().isin("ORD").build();
+    private final Broker broker = Broker.builder().brokerId(1).build();
+    private final Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+
+    @Test
+    void entry_time_survives_packing_to_the_nanosecond() {
+        for (LocalDateTime time : List.of(
+                LocalDateTime.of(2024, 2, 23, 10, 59, 54, 970_000_123),
+                LocalDateTime.of(1970, 1, 1, 0, 0),
+                LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_999),
+                LocalDateTime.of(2200, 6, 1, 12, 0, 0, 1))) {
+            Order order = new Order(1, security, Side.BUY, 10, 100, broker, shareholder, time);
+            assertThat(order.getEntryTime()).isEqualTo(time);
+            assertThat(order.snapshot().getEntryTime()).isEqualTo(time);
+        }
+    }
+
+    @Test
+    void missing_entry_time_stays_missing() {
+        Order order = new Order(1, security, Side.BUY, 10, 100, broker, shareholder, (LocalDateTime) null);
+        assertThat(order.getEntryTime()).isNull();
+    }
+
+    @Test
+    void entry_time_out_of_the_packed_range_is_refused() {
+        LocalDateTime time = LocalDateTime.of(3000, 1, 1, 0, 0);
+        assertThatExceptionOfType(ArithmeticException.class)
+                .isThrownBy(() -> new Order(1, security, Side.BUY, 10, 100, broker, shareholder, time));
+    }
+
+    @Test
+    void equality_ignores_where_the_order_rests() {
+        LocalDateTime time = LocalDateTime.of(2024, 2, 23, 10, 0);
+        Order queued = new Order(1, security, Side.BUY, 10, 100, broker, shareholder, time);
+        Order behind = new Order(2, security, Side.BUY, 10, 100, broker, shareholder, time);
+        security.getOrderBook().enqueue(queued);
+        security.getOrderBook().enqueue(behind);
+        Order loose = new Order(1, security, Side.BUY, 10, 100, broker, shareholder, time, OrderStatus.QUEUED);
+
+        assertThat(queued).isEqualTo(loose);
+        assertThat(queued.hashCode()).isEqualTo(loose.hashCode());
+        assertThat(queued.toString()).isEqualTo(loose.toString());
+    }
+}
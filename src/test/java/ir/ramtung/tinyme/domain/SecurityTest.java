@@ -14,7 +14,10 @@ import org.springframework.context.annotation.Import;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -201,4 +204,59 @@ class SecurityTest {
         security.getOrderBook().enqueue(new IcebergOrder(1, security, Side.SELL, 200, 15700, broker, shareholder, 50));
         assertThat(security.tradableQuantity()).isEqualTo(550);
     }
-}
\ No newline at end of file
+
+    @Test
+    void opening_price_is_the_lower_of_equally_tradable_prices_when_market_price_is_lower() {
+        security.setMatchingState(MatchingState.AUCTION);
+        security.setMarketPrice(15000);
+        security.getOrderBook().enqueue(new Order(11, security, Side.BUY, 350, 15810, broker, shareholder));
+        assertThat(security.getOpeningPrice()).isEqualTo(15800);
+        assertThat(security.tradableQuantity()).isEqualTo(350);
+    }
+
+    @Test
+    void opening_price_follows_removed_orders() {
+        security.setMatchingState(MatchingState.AUCTION);
+        security.setMarketPrice(15650);
+        security.getOrderBook().enqueue(new Order(11, security, Side.BUY, 1500, 15815, broker, shareholder));
+        security.getOrderBook().removeByOrderId(Side.SELL, 6);
+        assertThat(security.getOpeningPrice()).isEqualTo(15810);
+        assertThat(security.tradableQuantity()).isEqualTo(1085);
+        security.getOrderBook().removeByOrderId(Side.BUY, 11);
+        assertThat(security.getOpeningPrice()).isEqualTo(0);
+    }
+
+    private int scannedTradableQuantity(int price) {
+        int buy = security.getOrderBook().getBuyQueue().stream().filter(order -> order.matches(price)).mapToInt(Order::getTotalQuantity).sum();
+        int sell = security.getOrderBook().getSellQueue().stream().filter(order -> order.matches(price)).mapToInt(Order::getTotalQuantity).sum();
+        return Math.min(buy, sell);
+    }
+
+    private int scannedOpeningPrice() {
+        int marketPrice = security.getMarketPrice();
+        int openingPrice = Stream.concat(Stream.of(marketPrice),
+                        Stream.concat(security.getOrderBook().getBuyQueue().stream(), security.getOrderBook().getSellQueue().stream()).map(Order::getPrice))
+                .distinct()
+                .min(Comparator.comparing((Integer price) -> -scannedTradableQuantity(price))
+                        .thenComparing(price -> Math.abs(marketPrice - price))
+                        .thenComparing(price -> price))
+                .orElse(0);
+        return scannedTradableQuantity(openingPrice) == 0 ? 0 : openingPrice;
+    }
+
+    @Test
+    void opening_price_agrees_with_scanning_all_prices() {
+        Random random = new Random(7);
+        security.setMatchingState(MatchingState.AUCTION);
+        for (int i = 0; i < 300; i++) {
+            security.setMarketPrice(15300 + 10 * random.nextInt(60));
+            if (random.nextInt(4) == 0)
+                security.getOrderBook().removeFirst(random.nextBoolean() ? Side.BUY : Side.SELL);
+            else
+                security.getOrderBook().enqueue(new Order(11 + i, security, random.nextBoolean() ? Side.BUY : Side.SELL,
+                        1 + random.nextInt(500), 15300 + 10 * random.nextInt(60), broker, shareholder));
+            assertThat(security.getOpeningPrice()).isEqualTo(scannedOpeningPrice());
+            assertThat(security.tradableQuantity()).isEqualTo(scannedTradableQuantity(security.getOpeningPrice()));
+        }
+    }
+}
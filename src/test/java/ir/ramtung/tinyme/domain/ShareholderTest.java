@@ -0,0 +1,72 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class ShareholderTest {
+    private final SecurityRepository securityRepository = new SecurityRepository();
+
+    private Security security(String isin) {
+        Security security = Security.builder().isin(isin).build();
+        securityRepository.addSecurity(security);
+        return security;
+    }
+
+    @Test
+    void positions_are_kept_per_security() {
+        Security abc = security("POS-ABC");
+        Security xyz = security("POS-XYZ");
+        Shareholder shareholder = Shareholder.builder().build();
+        shareholder.incPosition(abc, 500);
+        shareholder.incPosition(xyz, 20);
+        shareholder.decPosition(abc, 200);
+
+        assertThat(shareholder.getPosition(abc)).isEqualTo(300);
+        assertThat(shareholder.getPosition(xyz)).isEqualTo(20);
+        assertThat(shareholder.hasEnoughPositionsOn(abc, 300)).isTrue();
+        assertThat(shareholder.hasEnoughPositionsOn(abc, 301)).isFalse();
+        assertThat(shareholder.getPosition(security("POS-NONE"))).isZero();
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> shareholder.decPosition(xyz, 21));
+        assertThat(shareholder.getPosition(xyz)).isEqualTo(20);
+
+        Map<Integer, Integer> positions = new LinkedHashMap<>();
+        shareholder.getPositions().forEach(positions::put);
+        assertThat(positions).containsExactlyInAnyOrderEntriesOf(Map.of(abc.getId(), 300, xyz.getId(), 20));
+    }
+
+    @Test
+    void shards_of_different_securities_update_one_shareholder_at_once() throws Exception {
+        Shareholder shareholder = Shareholder.builder().build();
+        List<Security> securities = new ArrayList<>();
+        for (int i = 0; i < 64; i++)
+            securities.add(security("POS-SHARD-" + i));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> shards = new ArrayList<>();
+        for (int shard = 0; shard < 4; shard++) {
+            int first = shard;
+            shards.add(executor.submit(() -> {
+                for (int round = 0; round < 1000; round++)
+                    for (int i = first; i < securities.size(); i += 4)
+                        shareholder.incPosition(securities.get(i), 1);
+            }));
+        }
+        for (Future<?> shard : shards)
+            shard.get();
+        executor.shutdown();
+        for (Security security : securities)
+            assertThat(shareholder.getPosition(security)).isEqualTo(1000);
+    }
+}
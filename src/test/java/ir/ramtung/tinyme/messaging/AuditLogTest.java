@@ -0,0 +1,79 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuditLogTest {
+    @TempDir
+    Path directory;
+
+    private List<Object> readBack(Path file) throws Exception {
+        List<Object> messages = new ArrayList<>();
+        AuditLog.read(file, (time, message) -> messages.add(message));
+        return messages;
+    }
+
+    @Test
+    void recorded_requests_and_events_are_read_back_in_order() throws Exception {
+        Path file = directory.resolve("audit");
+        AuditLog auditLog = new AuditLog(file, 16, 1 << 20);
+        auditLog.open();
+        LocalDateTime time = LocalDateTime.of(2024, 2, 23, 10, 0);
+        List<Object> messages = List.of(
+                EnterOrderRq.createNewOrderRq(1, "ABC", 10, time, Side.BUY, 300, 15800, 1, 2, 0),
+                new OrderAcceptedEvent(1, 10),
+                new DeleteOrderRq(2, "ABC", Side.BUY, 10, time));
+        for (int round = 0; round < 20; round++)
+            messages.forEach(auditLog::record);
+        auditLog.close();
+
+        List<Object> read = readBack(file);
+        assertThat(read).hasSize(60);
+        assertThat(read.subList(0, 3)).usingRecursiveFieldByFieldElementComparator().isEqualTo(messages);
+        assertThat(read.get(59)).usingRecursiveComparison().isEqualTo(messages.get(2));
+    }
+
+    @Test
+    void files_roll_over_and_a_torn_tail_is_skipped() throws Exception {
+        Path file = directory.resolve("audit");
+        AuditLog auditLog = new AuditLog(file, 4, 1);
+        auditLog.open();
+        for (long id = 1; id <= 5; id++) {
+            auditLog.record(new OrderAcceptedEvent(id, id));
+            while (!Files.exists(directory.resolve("audit." + id)))
+                Thread.onSpinWait();
+        }
+        auditLog.close();
+        Files.write(directory.resolve("audit.5"), new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        AuditLog reopened = new AuditLog(file, 4, 1 << 20);
+        reopened.open();
+        reopened.record(new OrderAcceptedEvent(6, 6));
+        reopened.close();
+
+        assertThat(readBack(file)).extracting(event -> ((OrderAcceptedEvent) event).getRequestId())
+                .containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+    }
+
+    @Test
+    void disabled_log_records_nothing() throws Exception {
+        AuditLog.DISABLED.record(new OrderAcceptedEvent(1, 1));
+        assertThat(AuditLog.DISABLED.isEnabled()).isFalse();
+        try (var files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+}
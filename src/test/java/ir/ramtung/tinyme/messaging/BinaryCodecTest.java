@@ -0,0 +1,99 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.CreditDecisions;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderBatchRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelRq;
+import ir.ramtung.tinyme.messaging.request.MassCancelScope;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinaryCodecTest {
+    private final LocalDateTime time = LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_789);
+
+    private Object roundTrip(Object message) {
+        return BinaryCodec.decode(BinaryCodec.encode(message, BinaryCodec.newBuffer()));
+    }
+
+    @Test
+    void requests_survive_a_round_trip() {
+        List<Object> requests = List.of(
+                EnterOrderRq.createNewOrderRq(1, "ABC", 200, time, Side.SELL, 300, 15450, 2, 3, 100, 50, 15000),
+                EnterOrderRq.createUpdateOrderRq(2, "ABC", 200, time, Side.BUY, 300, 15450, 2, 3, 0, 0, 0),
+                EnterOrderRq.createNewOrderRq(3, null, 200, null, null, 300, 15450, 2, 3, 0),
+                new DeleteOrderRq(4, "ABC", Side.SELL, 200, time),
+                new DeleteOrderRq(5, "ABC", Side.BUY, 200),
+                new ChangeMatchingStateRq("ABC", MatchingState.AUCTION),
+                new EnterOrderBatchRq(6, "ABC", List.of(new DeleteOrderRq(7, "ABC", Side.SELL, 200, time)),
+                        List.of(EnterOrderRq.createNewOrderRq(8, "ABC", 201, time, Side.BUY, 300, 15450, 2, 3, 0),
+                                EnterOrderRq.createUpdateOrderRq(9, "ABC", 202, time, Side.SELL, 300, 15450, 2, 3, 100))),
+                new MassCancelRq(10, "ABC", MassCancelScope.BROKER, 2, 0)
+        );
+        for (Object request : requests)
+            assertThat(roundTrip(request)).isEqualTo(request);
+    }
+
+    @Test
+    void events_survive_a_round_trip_with_their_time() {
+        List<Event> events = List.of(
+                new OrderAcceptedEvent(1, 200),
+                new OrderActivatedEvent(1, 200),
+                new OrderDeletedEvent(1, 200),
+                new OrderUpdatedEvent(1, 200),
+                new OrderRejectedEvent(1, 200, List.of("Unknown security ISIN", "Order quantity is not-positive")),
+                new OrderRejectedEvent(1, 200, null),
+                new OrderExecutedEvent(1, 200, List.of(new TradeDTO("ABC", 15450, 100, 200, 201), new TradeDTO("ABC", 15460, 5, 200, 202))),
+                new OrderExecutedEvent(1, 200, Collections.emptyList()),
+                new TradeEvent("ABC", 15450, 100, 200, 201),
+                new OpeningPriceEvent("ABC", 15450, 1000),
+                new SecurityStateChangedEvent("ABC", MatchingState.CONTINUOUS),
+                new OrderBatchHandledEvent(6, "ABC", 2, 1),
+                new MassCancelHandledEvent(10, "ABC", 3, 1_000_000)
+        );
+        for (Event event : events) {
+            event.setTime(time);
+            Event decoded = (Event) roundTrip(event);
+            assertThat(decoded).isEqualTo(event);
+            assertThat(decoded.getTime()).isEqualTo(time);
+        }
+    }
+
+    @Test
+    void credit_decisions_survive_a_round_trip() {
+        CreditDecisions decisions = new CreditDecisions();
+        for (int i = 0; i < 150; i++)
+            decisions.add(i % 3 == 0 || i == 149);
+        CreditDecisions decoded = (CreditDecisions) roundTrip(decisions);
+        assertThat(decoded.size()).isEqualTo(150);
+        for (int i = 0; i < 150; i++)
+            assertThat(decoded.outcome(i)).isEqualTo(decisions.outcome(i));
+    }
+
+    @Test
+    void buffer_grows_for_large_messages() {
+        List<String> errors = Collections.nCopies(100, "Order ID not found in the order book");
+        OrderRejectedEvent event = new OrderRejectedEvent(1, 200, errors);
+        ByteBuffer buffer = BinaryCodec.encode(event, ByteBuffer.allocate(16));
+        assertThat(buffer.capacity()).isGreaterThan(16);
+        assertThat(BinaryCodec.decode(buffer)).isEqualTo(event);
+    }
+
+    @Test
+    void unknown_schema_version_is_rejected() {
+        ByteBuffer buffer = BinaryCodec.encode(new OrderAcceptedEvent(1, 200), BinaryCodec.newBuffer());
+        buffer.put(0, (byte) (BinaryCodec.SCHEMA_VERSION + 1));
+        assertThatThrownBy(() -> BinaryCodec.decode(buffer)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,267 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.config.MockedJMSTestConfig;
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderBatchRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import ir.ramtung.tinyme.repository.SnapshotStore;
+import ir.ramtung.tinyme.util.WaitStrategy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+@SpringBootTest
+@Import(MockedJMSTestConfig.class)
+@DirtiesContext
+public class CommandJournalTest {
+    @Autowired
+    OrderHandler orderHandler;
+    @Autowired
+    EventPublisher eventPublisher;
+    @Autowired
+    SecurityRepository securityRepository;
+    @Autowired
+    BrokerRepository brokerRepository;
+    @Autowired
+    ShareholderRepository shareholderRepository;
+    @TempDir
+    Path directory;
+    private CommandJournal journal;
+
+    @BeforeEach
+    void setup() throws Exception {
+        setUpRepositories();
+        journal = new CommandJournal(directory.resolve("journal"));
+        journal.open();
+    }
+
+    private void setUpRepositories() {
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        Security security = Security.builder().isin("ABC").build();
+        securityRepository.addSecurity(security);
+        for (long id = 1; id <= 2; id++) {
+            Shareholder shareholder = Shareholder.builder().shareholderId(id).build();
+            shareholder.incPosition(security, 10_000);
+            shareholderRepository.addShareholder(shareholder);
+            brokerRepository.addBroker(Broker.builder().brokerId(id).credit(10_000_000).build());
+        }
+    }
+
+    private List<String> state() {
+        List<String> state = new ArrayList<>();
+        Security security = securityRepository.findSecurityByIsin("ABC");
+        for (long id = 1; id <= 2; id++) {
+            state.add("broker " + id + ": " + brokerRepository.findBrokerById(id).getCredit());
+            state.add("shareholder " + id + ": " + shareholderRepository.findShareholderById(id).getPosition(security));
+        }
+        OrderBook orderBook = security.getOrderBook();
+        for (Order order : orderBook.getBuyQueue())
+            state.add(order.getOrderId() + " " + order.getSide() + " " + order.getQuantity() + "@" + order.getPrice());
+        for (Order order : orderBook.getSellQueue())
+            state.add(order.getOrderId() + " " + order.getSide() + " " + order.getQuantity() + "@" + order.getPrice());
+        return state;
+    }
+
+    private void handle(Object request) {
+        if (request instanceof EnterOrderRq enterOrderRq)
+            orderHandler.handleEnterOrder(enterOrderRq, eventPublisher);
+        else if (request instanceof DeleteOrderRq deleteOrderRq)
+            orderHandler.handleDeleteOrder(deleteOrderRq, eventPublisher);
+    }
+
+    @Test
+    void replaying_the_journal_rebuilds_books_credits_and_positions() throws Exception {
+        LocalDateTime time = LocalDateTime.now();
+        List<Object> requests = List.of(
+                EnterOrderRq.createNewOrderRq(1, "ABC", 1, time, Side.SELL, 300, 15800, 2, 2, 0),
+                EnterOrderRq.createNewOrderRq(2, "ABC", 2, time, Side.SELL, 500, 15810, 2, 2, 100),
+                EnterOrderRq.createNewOrderRq(3, "ABC", 3, time, Side.BUY, 400, 15700, 1, 1, 0),
+                EnterOrderRq.createNewOrderRq(4, "ABC", 4, time, Side.BUY, 450, 15810, 1, 1, 0),
+                EnterOrderRq.createUpdateOrderRq(5, "ABC", 3, time, Side.BUY, 600, 15750, 1, 1, 0),
+                EnterOrderRq.createNewOrderRq(6, "ABC", 5, time, Side.BUY, 100_000, 15900, 1, 1, 0),
+                new DeleteOrderRq(7, "ABC", Side.SELL, 2, time),
+                new DeleteOrderRq(8, "ABC", Side.SELL, 99, time));
+        for (Object request : requests) {
+            handle(request);
+            journal.append(request);
+        }
+        journal.commit();
+        List<String> expected = state();
+        journal.close();
+
+        setUpRepositories();
+        CommandJournal reopened = new CommandJournal(directory.resolve("journal"));
+        reopened.open();
+        assertThat(reopened.replay(this::handle)).isEqualTo(requests.size());
+        assertThat(state()).isEqualTo(expected);
+        reopened.close();
+    }
+
+    @Test
+    void torn_record_at_the_end_is_dropped_on_open() throws Exception {
+        Path file = directory.resolve("journal");
+        Path segment = directory.resolve("journal.0");
+        journal.append(new DeleteOrderRq(1, "ABC", Side.SELL, 1, LocalDateTime.now()));
+        journal.append(new DeleteOrderRq(2, "ABC", Side.SELL, 2, LocalDateTime.now()));
+        journal.close();
+        long size = Files.size(segment);
+        Files.write(segment, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        CommandJournal reopened = new CommandJournal(file);
+        reopened.open();
+        assertThat(Files.size(segment)).isEqualTo(size);
+        reopened.append(new DeleteOrderRq(3, "ABC", Side.SELL, 3, LocalDateTime.now()));
+        reopened.close();
+
+        CommandJournal replayed = new CommandJournal(file);
+        replayed.open();
+        List<Object> requests = new ArrayList<>();
+        replayed.replay(requests::add);
+        assertThat(requests).extracting(request -> ((DeleteOrderRq) request).getRequestId()).containsExactly(1L, 2L, 3L);
+        replayed.close();
+    }
+
+    @Test
+    void reset_empties_the_journal() throws Exception {
+        journal.append(new DeleteOrderRq(1, "ABC", Side.SELL, 1, LocalDateTime.now()));
+        journal.commit();
+        journal.reset();
+        journal.append(new DeleteOrderRq(2, "ABC", Side.SELL, 2, LocalDateTime.now()));
+        journal.commit();
+        List<Object> requests = new ArrayList<>();
+        journal.replay(requests::add);
+        assertThat(requests).extracting(request -> ((DeleteOrderRq) request).getRequestId()).containsExactly(2L);
+        assertThat(directory.resolve("journal.0")).doesNotExist();
+        journal.close();
+    }
+
+    @Test
+    void segments_are_replayed_in_generation_order() throws Exception {
+        journal.append(new DeleteOrderRq(1, "ABC", Side.SELL, 1, LocalDateTime.now()));
+        assertThat(journal.roll()).isEqualTo(1);
+        journal.append(new DeleteOrderRq(2, "ABC", Side.SELL, 2, LocalDateTime.now()));
+        assertThat(journal.roll()).isEqualTo(2);
+        journal.append(new DeleteOrderRq(3, "ABC", Side.SELL, 3, LocalDateTime.now()));
+        journal.close();
+
+        CommandJournal reopened = new CommandJournal(directory.resolve("journal"));
+        reopened.open();
+        assertThat(reopened.generation()).isEqualTo(2);
+        reopened.discardBefore(1);
+        List<Object> requests = new ArrayList<>();
+        reopened.replay(requests::add);
+        assertThat(requests).extracting(request -> ((DeleteOrderRq) request).getRequestId()).containsExactly(2L, 3L);
+        reopened.close();
+    }
+
+    @Test
+    void batch_larger_than_the_write_buffer_is_journaled_whole() throws Exception {
+        LocalDateTime time = LocalDateTime.now();
+        List<EnterOrderRq> orders = new ArrayList<>();
+        for (int i = 1; i <= 20_000; i++)
+            orders.add(EnterOrderRq.createNewOrderRq(i, "ABC", i, time, Side.BUY, 10, 15000 + i % 100, 1, 1, 0));
+        journal.append(new DeleteOrderRq(1, "ABC", Side.SELL, 1, time));
+        journal.append(new EnterOrderBatchRq(2, "ABC", List.of(), orders));
+        journal.append(new DeleteOrderRq(3, "ABC", Side.SELL, 3, time));
+        journal.close();
+        assertThat(Files.size(directory.resolve("journal.0"))).isGreaterThan(1 << 20);
+
+        CommandJournal reopened = new CommandJournal(directory.resolve("journal"));
+        reopened.open();
+        List<Object> requests = new ArrayList<>();
+        assertThat(reopened.replay(requests::add)).isEqualTo(3);
+        assertThat(requests.get(1)).isInstanceOf(EnterOrderBatchRq.class);
+        assertThat(((EnterOrderBatchRq) requests.get(1)).getOrders()).isEqualTo(orders);
+        assertThat(((DeleteOrderRq) requests.get(2)).getRequestId()).isEqualTo(3);
+        reopened.close();
+    }
+
+    @Test
+    void replay_keeps_the_credit_outcomes_of_shards_racing_for_one_broker() throws Exception {
+        String slow = "ABC";
+        String fast = "XYZ";
+        RequestPipeline pipeline = pipeline(orderHandler, journal);
+        for (int i = 0; pipeline.shardOf(fast) == pipeline.shardOf(slow); i++)
+            fast = "XYZ" + i;
+        Security other = Security.builder().isin(fast).build();
+        securityRepository.addSecurity(other);
+        shareholderRepository.findShareholderById(2).incPosition(other, 10_000);
+        brokerRepository.addBroker(Broker.builder().brokerId(3).credit(1_000_000).build());
+        LocalDateTime time = LocalDateTime.now();
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(1, slow, 1, time, Side.SELL, 100, 10_000, 2, 2, 0), eventPublisher);
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(2, fast, 2, time, Side.SELL, 100, 10_000, 2, 2, 0), eventPublisher);
+
+        OrderHandler delayed = spy(orderHandler);
+        doAnswer(invocation -> {
+            if (invocation.<EnterOrderRq>getArgument(0).getSecurityIsin().equals(slow))
+                Thread.sleep(300);
+            return invocation.callRealMethod();
+        }).when(delayed).handleEnterOrder(any(), any());
+        pipeline = pipeline(delayed, journal);
+        pipeline.start();
+        pipeline.submit(EnterOrderRq.createNewOrderRq(3, slow, 3, time, Side.BUY, 100, 10_000, 3, 1, 0));
+        pipeline.submit(EnterOrderRq.createNewOrderRq(4, fast, 4, time, Side.BUY, 100, 10_000, 3, 1, 0));
+        pipeline.shutdown();
+        journal.close();
+        List<String> expected = state(slow, fast);
+        assertThat(securityRepository.findSecurityByIsin(slow).getOrderBook().getSellQueue()).hasSize(1);
+        assertThat(securityRepository.findSecurityByIsin(fast).getOrderBook().getSellQueue()).isEmpty();
+
+        setUpRepositories();
+        securityRepository.addSecurity(Security.builder().isin(fast).build());
+        shareholderRepository.findShareholderById(2).incPosition(securityRepository.findSecurityByIsin(fast), 10_000);
+        brokerRepository.addBroker(Broker.builder().brokerId(3).credit(1_000_000).build());
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(1, slow, 1, time, Side.SELL, 100, 10_000, 2, 2, 0), eventPublisher);
+        orderHandler.handleEnterOrder(EnterOrderRq.createNewOrderRq(2, fast, 2, time, Side.SELL, 100, 10_000, 2, 2, 0), eventPublisher);
+        CommandJournal reopened = new CommandJournal(directory.resolve("journal"));
+        reopened.open();
+        RequestPipeline replayed = pipeline(orderHandler, reopened);
+        replayed.start();
+        replayed.shutdown();
+        reopened.close();
+        assertThat(state(slow, fast)).isEqualTo(expected);
+    }
+
+    private RequestPipeline pipeline(OrderHandler handler, CommandJournal journal) {
+        SnapshotStore snapshotStore = new SnapshotStore(brokerRepository, shareholderRepository, securityRepository, (Path) null);
+        return new RequestPipeline(handler, eventPublisher, journal, snapshotStore, 4, 64, WaitStrategy.PARKING,
+                new FlushPolicy(256, 1_000_000), 0);
+    }
+
+    private List<String> state(String... isins) {
+        List<String> state = new ArrayList<>();
+        for (long id = 1; id <= 3; id++)
+            state.add("broker " + id + ": " + brokerRepository.findBrokerById(id).getCredit());
+        for (String isin : isins) {
+            OrderBook orderBook = securityRepository.findSecurityByIsin(isin).getOrderBook();
+            for (Order order : orderBook.getBuyQueue())
+                state.add(isin + " " + order.getOrderId() + " " + order.getSide() + " " + order.getQuantity() + "@" + order.getPrice());
+            for (Order order : orderBook.getSellQueue())
+                state.add(isin + " " + order.getOrderId() + " " + order.getSide() + " " + order.getQuantity() + "@" + order.getPrice());
+        }
+        return state;
+    }
+}
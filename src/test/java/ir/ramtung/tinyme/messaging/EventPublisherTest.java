@@ -48,4 +48,19 @@ public class EventPublisherTest {
 
         jmsTemplate.setReceiveTimeout(receiveTimeout);
     }
+
+    @Disabled
+    @Test
+    void batch_is_received_as_separate_messages_in_order() {
+        OrderExecutedEvent first = new OrderExecutedEvent(1, 0, List.of());
+        OrderExecutedEvent second = new OrderExecutedEvent(2, 0, List.of());
+        eventPublisher.publish(List.of(first, second));
+
+        long receiveTimeout = jmsTemplate.getReceiveTimeout();
+        jmsTemplate.setReceiveTimeout(1000);
+        assertEquals(first, jmsTemplate.receiveAndConvert(responseQueue));
+        assertEquals(second, jmsTemplate.receiveAndConvert(responseQueue));
+
+        jmsTemplate.setReceiveTimeout(receiveTimeout);
+    }
 }
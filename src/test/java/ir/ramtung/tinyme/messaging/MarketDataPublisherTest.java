@@ -0,0 +1,95 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.event.DepthSnapshotEvent;
+import ir.ramtung.tinyme.messaging.event.DepthUpdateEvent;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.TopOfBookEvent;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MarketDataPublisherTest {
+    private Security security;
+    private Broker broker;
+    private Shareholder shareholder;
+    private MarketDataPublisher publisher;
+    private final List<Event> sent = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        SecurityRepository securityRepository = new SecurityRepository();
+        security = Security.builder().isin("ABC").build();
+        securityRepository.addSecurity(security);
+        broker = Broker.builder().brokerId(1).build();
+        shareholder = Shareholder.builder().shareholderId(1).build();
+        OrderBook orderBook = security.getOrderBook();
+        orderBook.enqueue(new Order(1, security, Side.BUY, 100, 15700, broker, shareholder));
+        orderBook.enqueue(new Order(2, security, Side.BUY, 200, 15600, broker, shareholder));
+        orderBook.enqueue(new Order(3, security, Side.SELL, 300, 15800, broker, shareholder));
+
+        publisher = new MarketDataPublisher(null, securityRepository, "MD", 100, 1000, 1, 5000) {
+            @Override
+            protected void send(Event event) {
+                sent.add(event);
+            }
+        };
+        publisher.attach();
+    }
+
+    @Test
+    void first_publish_sends_every_level_then_the_top_of_book_and_snapshot() {
+        publisher.publish(true);
+
+        assertThat(sent).hasSize(3);
+        DepthUpdateEvent update = (DepthUpdateEvent) sent.get(0);
+        assertThat(update.getSequence()).isEqualTo(1);
+        assertThat(update.getLevels()).containsExactlyInAnyOrder(
+                new DepthLevelDTO(Side.BUY, 15700, 100, 1),
+                new DepthLevelDTO(Side.BUY, 15600, 200, 1),
+                new DepthLevelDTO(Side.SELL, 15800, 300, 1));
+        TopOfBookEvent top = (TopOfBookEvent) sent.get(1);
+        assertThat(top.getSequence()).isEqualTo(1);
+        assertThat(List.of(top.getBidPrice(), top.getBidQuantity(), top.getAskPrice(), top.getAskQuantity()))
+                .containsExactly(15700, 100, 15800, 300);
+        DepthSnapshotEvent snapshot = (DepthSnapshotEvent) sent.get(2);
+        assertThat(snapshot.getBids()).containsExactly(new DepthLevelDTO(Side.BUY, 15700, 100, 1));
+        assertThat(snapshot.getAsks()).containsExactly(new DepthLevelDTO(Side.SELL, 15800, 300, 1));
+    }
+
+    @Test
+    void changes_to_a_level_between_publishes_are_conflated() {
+        publisher.publish(false);
+        sent.clear();
+        OrderBook orderBook = security.getOrderBook();
+        for (long id = 10; id < 20; id++)
+            orderBook.enqueue(new Order(id, security, Side.SELL, 10, 15800, broker, shareholder));
+        for (long id = 10; id < 15; id++)
+            orderBook.removeByOrderId(Side.SELL, id);
+        orderBook.removeByOrderId(Side.BUY, 1);
+
+        publisher.publish(false);
+        publisher.publish(false);
+
+        assertThat(sent).hasSize(1);
+        DepthUpdateEvent update = (DepthUpdateEvent) sent.get(0);
+        assertThat(update.getSequence()).isEqualTo(2);
+        assertThat(update.getLevels()).containsExactlyInAnyOrder(
+                new DepthLevelDTO(Side.SELL, 15800, 350, 6),
+                new DepthLevelDTO(Side.BUY, 15700, 0, 0));
+    }
+
+    @Test
+    void snapshot_of_an_empty_side_has_no_top() {
+        security.getOrderBook().removeByOrderId(Side.SELL, 3);
+        publisher.publish(true);
+        TopOfBookEvent top = (TopOfBookEvent) sent.get(1);
+        assertThat(top.getAskPrice()).isZero();
+        assertThat(((DepthSnapshotEvent) sent.get(2)).getAsks()).isEmpty();
+    }
+}
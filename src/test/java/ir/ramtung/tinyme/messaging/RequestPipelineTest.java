@@ -0,0 +1,282 @@
+package ir.ramtung.tinyme.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.OrderDeletedEvent;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import ir.ramtung.tinyme.repository.SnapshotStore;
+import ir.ramtung.tinyme.util.WaitStrategy;
+import jakarta.jms.BytesMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class RequestPipelineTest {
+    private OrderHandler orderHandler;
+    private EventPublisher eventPublisher;
+    private CommandJournal journal;
+    private SnapshotStore snapshotStore;
+    private RequestPipeline pipeline;
+    private final List<Event> published = Collections.synchronizedList(new ArrayList<>());
+    private final List<List<Event>> batches = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, Set<String>> threadsBySecurity = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setup() {
+        orderHandler = mock(OrderHandler.class);
+        journal = new CommandJournal((Path) null);
+        snapshotStore = new SnapshotStore(new BrokerRepository(), new ShareholderRepository(), new SecurityRepository(), (Path) null);
+        eventPublisher = mock(EventPublisher.class);
+        doAnswer(invocation -> {
+            List<Event> batch = new ArrayList<>(invocation.<List<Event>>getArgument(0));
+            batches.add(batch);
+            return published.addAll(batch);
+        }).when(eventPublisher).publish(anyList());
+        doAnswer(invocation -> {
+            DeleteOrderRq rq = invocation.getArgument(0);
+            threadsBySecurity.computeIfAbsent(rq.getSecurityIsin(), isin -> ConcurrentHashMap.newKeySet())
+                    .add(Thread.currentThread().getName());
+            if (rq.getOrderId() < 0)
+                throw new IllegalStateException();
+            if (rq.getOrderId() > 0)
+                Thread.sleep(rq.getOrderId());
+            EventPublisher publisher = invocation.getArgument(1);
+            publisher.publish(new OrderDeletedEvent(rq.getRequestId(), rq.getOrderId()));
+            return null;
+        }).when(orderHandler).handleDeleteOrder(any(), any());
+        doAnswer(invocation -> {
+            EnterOrderRq rq = invocation.getArgument(0);
+            EventPublisher publisher = invocation.getArgument(1);
+            for (int i = 0; i < 3; i++)
+                publisher.publish(new OrderDeletedEvent(rq.getRequestId(), i));
+            return null;
+        }).when(orderHandler).handleEnterOrder(any(), any());
+        startPipeline(new FlushPolicy(256, 1_000_000));
+    }
+
+    private void startPipeline(FlushPolicy flushPolicy) {
+        startPipeline(flushPolicy, journal);
+    }
+
+    private void startPipeline(FlushPolicy flushPolicy, CommandJournal journal) {
+        pipeline = new RequestPipeline(orderHandler, eventPublisher, journal, snapshotStore, 4, 64, WaitStrategy.PARKING, flushPolicy, 0);
+        pipeline.start();
+    }
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        pipeline.shutdown();
+    }
+
+    private static List<Long> requestIds(List<Event> events) {
+        return events.stream().map(event -> ((OrderDeletedEvent) event).getRequestId()).toList();
+    }
+
+    @Test
+    void requests_of_a_security_are_handled_in_order_on_one_thread() throws InterruptedException {
+        for (int i = 0; i < 1000; i++)
+            pipeline.submit(new DeleteOrderRq(i, "ABC", Side.BUY, 0));
+        pipeline.shutdown();
+        assertThat(requestIds(published)).hasSize(1000).isSorted();
+        assertThat(threadsBySecurity.get("ABC")).hasSize(1);
+    }
+
+    @Test
+    void events_are_published_in_request_order_across_shards() throws InterruptedException {
+        String slow = "ABC";
+        String fast = "XYZ";
+        for (int i = 0; pipeline.shardOf(fast) == pipeline.shardOf(slow); i++)
+            fast = "XYZ" + i;
+        pipeline.submit(new DeleteOrderRq(1, slow, Side.BUY, 200));
+        pipeline.submit(new DeleteOrderRq(2, fast, Side.BUY, 0));
+        pipeline.shutdown();
+        assertThat(requestIds(published)).containsExactly(1L, 2L);
+        assertThat(threadsBySecurity.get(slow)).doesNotContainAnyElementsOf(threadsBySecurity.get(fast));
+    }
+
+    @Test
+    void json_requests_are_decoded_before_they_are_handled() throws Exception {
+        EnterOrderRq rq = EnterOrderRq.createNewOrderRq(1, "ABC", 200, LocalDateTime.now(), Side.SELL, 300, 15450, 0, 0, 0);
+        pipeline.submit(EnterOrderRq.class, new ObjectMapper().findAndRegisterModules().writeValueAsString(rq));
+        pipeline.shutdown();
+        verify(orderHandler).handleEnterOrder(eq(rq), any());
+    }
+
+    @Test
+    void failed_request_does_not_stop_its_shard() throws InterruptedException {
+        pipeline.submit(new DeleteOrderRq(1, "ABC", Side.BUY, -1));
+        pipeline.submit(new DeleteOrderRq(2, "ABC", Side.BUY, 0));
+        pipeline.shutdown();
+        assertThat(requestIds(published)).containsExactly(2L);
+    }
+
+    @Test
+    void stage_latencies_are_recorded_for_every_request() throws InterruptedException {
+        for (int i = 0; i < 200; i++)
+            pipeline.submit(new DeleteOrderRq(i, "ABC" + i, Side.BUY, 0));
+        pipeline.shutdown();
+        var latencies = pipeline.latencies();
+        assertThat(latencies.get("decode").count()).isEqualTo(200);
+        assertThat(latencies.get("publish").count()).isBetween(1L, 200L);
+        assertThat(latencies.get("total").count()).isEqualTo(200);
+        assertThat(latencies.values().stream().filter(h -> h.getName().startsWith("match-")).mapToLong(h -> h.count()).sum()).isEqualTo(200);
+        assertThat(latencies.get("total").valueAtPercentile(50)).isGreaterThan(0);
+    }
+
+    @Test
+    void events_of_a_request_are_sent_together_and_in_order() throws InterruptedException {
+        for (int i = 0; i < 100; i++)
+            pipeline.submit(EnterOrderRq.createNewOrderRq(i, "ABC" + i % 7, i, LocalDateTime.now(), Side.BUY, 1, 1, 0, 0, 0));
+        pipeline.shutdown();
+        assertThat(requestIds(published)).hasSize(300).isSorted();
+        for (List<Event> batch : batches)
+            assertThat(batch.size() % 3).isZero();
+        verify(eventPublisher, never()).publish(any(Event.class));
+    }
+
+    @Test
+    void batches_are_flushed_at_the_size_limit() throws InterruptedException {
+        pipeline.shutdown();
+        startPipeline(new FlushPolicy(2, 1_000_000_000));
+        for (int i = 0; i < 100; i++)
+            pipeline.submit(new DeleteOrderRq(i, "ABC", Side.BUY, 0));
+        pipeline.shutdown();
+        assertThat(requestIds(published)).hasSize(100).isSorted();
+        assertThat(batches).allSatisfy(batch -> assertThat(batch.size()).isBetween(1, 2));
+    }
+
+    @Test
+    void binary_requests_are_decoded_before_they_are_handled() throws Exception {
+        DeleteOrderRq rq = new DeleteOrderRq(7, "ABC", Side.SELL, 0, LocalDateTime.now());
+        ByteBuffer encoded = BinaryCodec.encode(rq, BinaryCodec.newBuffer());
+        BytesMessage message = mock(BytesMessage.class);
+        when(message.getBodyLength()).thenReturn((long) encoded.limit());
+        when(message.readBytes(any(byte[].class), anyInt())).thenAnswer(invocation -> {
+            encoded.get(invocation.<byte[]>getArgument(0), 0, encoded.limit());
+            return encoded.limit();
+        });
+        pipeline.submit(message);
+        pipeline.shutdown();
+        verify(orderHandler).handleDeleteOrder(eq(rq), any());
+        assertThat(requestIds(published)).containsExactly(7L);
+    }
+
+    @Test
+    void requests_are_journaled_in_arrival_order(@TempDir Path directory) throws Exception {
+        pipeline.shutdown();
+        CommandJournal fileJournal = new CommandJournal(directory.resolve("journal"));
+        fileJournal.open();
+        startPipeline(new FlushPolicy(256, 1_000_000), fileJournal);
+        List<DeleteOrderRq> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            requests.add(new DeleteOrderRq(i, "ABC" + i % 7, Side.BUY, 0, LocalDateTime.now()));
+        requests.forEach(pipeline::submit);
+        pipeline.shutdown();
+        fileJournal.close();
+
+        CommandJournal reopened = new CommandJournal(directory.resolve("journal"));
+        reopened.open();
+        List<Object> journaled = new ArrayList<>();
+        assertThat(reopened.replay(journaled::add)).isEqualTo(100);
+        assertThat(journaled).isEqualTo(requests);
+        reopened.close();
+    }
+
+    @Test
+    void journal_is_replayed_on_start_without_publishing(@TempDir Path directory) throws Exception {
+        pipeline.shutdown();
+        CommandJournal fileJournal = new CommandJournal(directory.resolve("journal"));
+        fileJournal.open();
+        for (int i = 0; i < 3; i++)
+            fileJournal.append(new DeleteOrderRq(i, "ABC", Side.BUY, 0, LocalDateTime.now()));
+        fileJournal.commit();
+        startPipeline(new FlushPolicy(256, 1_000_000), fileJournal);
+        pipeline.shutdown();
+        fileJournal.close();
+        verify(orderHandler, times(3)).handleDeleteOrder(any(), any());
+        assertThat(published).isEmpty();
+    }
+
+    @Test
+    void nothing_is_published_once_the_journal_fails(@TempDir Path directory) throws Exception {
+        pipeline.shutdown();
+        snapshotStore = new SnapshotStore(new BrokerRepository(), new ShareholderRepository(), new SecurityRepository(), directory.resolve("snapshot"));
+        CommandJournal failingJournal = new CommandJournal((Path) null) {
+            @Override
+            public void commit() throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public long roll() throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        startPipeline(new FlushPolicy(256, 1_000_000), failingJournal);
+        for (int i = 0; i < 10; i++)
+            pipeline.submit(new DeleteOrderRq(i, "ABC" + i % 3, Side.BUY, 0));
+        CompletableFuture<Void> written = pipeline.snapshot();
+        for (int i = 10; i < 20; i++)
+            pipeline.submit(new DeleteOrderRq(i, "ABC" + i % 3, Side.BUY, 0));
+        pipeline.shutdown();
+
+        assertThat(Files.exists(directory.resolve("snapshot"))).isFalse();
+        verify(orderHandler, times(20)).handleDeleteOrder(any(), any());
+        assertThat(published).isEmpty();
+        assertThat(written).isCompletedExceptionally();
+    }
+
+    @Test
+    void snapshot_starts_a_new_journal_generation_between_the_requests_around_it(@TempDir Path directory) throws Exception {
+        pipeline.shutdown();
+        CommandJournal fileJournal = new CommandJournal(directory.resolve("journal"));
+        fileJournal.open();
+        SecurityRepository securityRepository = new SecurityRepository();
+        securityRepository.addSecurity(Security.builder().isin("ABC").build());
+        snapshotStore = new SnapshotStore(new BrokerRepository(), new ShareholderRepository(), securityRepository, directory.resolve("snapshot"));
+        startPipeline(new FlushPolicy(256, 1_000_000), fileJournal);
+        for (int i = 0; i < 10; i++)
+            pipeline.submit(new DeleteOrderRq(i, "ABC" + i % 3, Side.BUY, 0, LocalDateTime.now()));
+        CompletableFuture<Void> written = pipeline.snapshot();
+        for (int i = 10; i < 20; i++)
+            pipeline.submit(new DeleteOrderRq(i, "ABC" + i % 3, Side.BUY, 0, LocalDateTime.now()));
+        written.get(10, TimeUnit.SECONDS);
+        pipeline.shutdown();
+        fileJournal.close();
+
+        assertThat(Files.exists(directory.resolve("snapshot"))).isTrue();
+        assertThat(requestIds(published)).hasSize(20).isSorted();
+        CommandJournal reopened = new CommandJournal(directory.resolve("journal"));
+        reopened.open();
+        List<Object> journaled = new ArrayList<>();
+        reopened.replay(journaled::add);
+        assertThat(journaled).extracting(request -> ((DeleteOrderRq) request).getRequestId())
+                .containsExactly(10L, 11L, 12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L);
+        reopened.close();
+    }
+}
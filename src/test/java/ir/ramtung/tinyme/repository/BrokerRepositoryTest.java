@@ -0,0 +1,26 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BrokerRepositoryTest {
+    @Test
+    void brokers_are_found_by_id_until_cleared() {
+        BrokerRepository brokerRepository = new BrokerRepository();
+        for (long id = 1; id <= 1_000; id++)
+            brokerRepository.addBroker(Broker.builder().brokerId(id * 7).credit(id).build());
+        Broker replaced = Broker.builder().brokerId(70).credit(-1).build();
+        brokerRepository.addBroker(replaced);
+
+        assertThat(brokerRepository.findBrokerById(7_000).getCredit()).isEqualTo(1_000);
+        assertThat(brokerRepository.findBrokerById(70)).isSameAs(replaced);
+        assertThat(brokerRepository.findBrokerById(8)).isNull();
+        assertThat(brokerRepository.allBrokers()).hasSize(1_000);
+
+        brokerRepository.clear();
+        assertThat(brokerRepository.findBrokerById(7)).isNull();
+        assertThat(brokerRepository.allBrokers()).isEmpty();
+    }
+}
@@ -0,0 +1,125 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.CommandJournal;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataLoaderTest {
+    private BrokerRepository brokerRepository;
+    private ShareholderRepository shareholderRepository;
+    private SecurityRepository securityRepository;
+    private DataLoader dataLoader;
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setup() {
+        brokerRepository = new BrokerRepository();
+        shareholderRepository = new ShareholderRepository();
+        securityRepository = new SecurityRepository();
+        dataLoader = new DataLoader(brokerRepository, shareholderRepository, securityRepository, new CommandJournal((Path) null),
+                new SnapshotStore(brokerRepository, shareholderRepository, securityRepository, (Path) null));
+        for (String name : List.of("broker", "shareholder", "security", "position", "orderBook"))
+            ReflectionTestUtils.setField(dataLoader, name + "CsvResource", new FileSystemResource(directory.resolve(name + ".csv")));
+    }
+
+    private void fillRepositories() {
+        Security abc = Security.builder().isin("ABC").tickSize(10).lotSize(5).marketPrice(15500).build();
+        Security xyz = Security.builder().isin("XYZ").matchingState(MatchingState.AUCTION).build();
+        securityRepository.addSecurity(abc);
+        securityRepository.addSecurity(xyz);
+        Broker broker = Broker.builder().brokerId(1).name("broker").credit(123_456_789).build();
+        brokerRepository.addBroker(broker);
+        Shareholder shareholder = Shareholder.builder().shareholderId(2).name("shareholder").build();
+        shareholder.incPosition(abc, 1000);
+        shareholder.incPosition(xyz, 30);
+        shareholderRepository.addShareholder(shareholder);
+
+        LocalDateTime time = LocalDateTime.of(2024, 2, 23, 10, 59, 54, 970_000_123);
+        OrderBook orderBook = abc.getOrderBook();
+        orderBook.enqueue(new Order(1, abc, Side.BUY, 500, 300, 15400, broker, shareholder, time, OrderStatus.NEW, 150));
+        orderBook.enqueue(new Order(2, abc, Side.BUY, 100, 15400, broker, shareholder, time.plusSeconds(1)));
+        orderBook.enqueue(new IcebergOrder(3, abc, Side.SELL, 800, 650, 15600, broker, shareholder, time, 100, 50, OrderStatus.NEW, 0));
+        orderBook.enqueue(new StopLimitOrder(7, 4, abc, Side.BUY, 40, 15800, broker, shareholder, time, 15700));
+        orderBook.enqueue(new StopLimitOrder(8, 5, abc, Side.SELL, 60, 15000, broker, shareholder, time, 15100));
+        xyz.getOrderBook().enqueue(new Order(6, xyz, Side.SELL, 30, 900, broker, shareholder, time));
+    }
+
+    private List<String> state() {
+        List<String> state = new ArrayList<>();
+        Broker broker = brokerRepository.findBrokerById(1);
+        state.add(broker.getName() + " " + broker.getCredit());
+        Shareholder shareholder = shareholderRepository.findShareholderById(2);
+        state.add(shareholder.getName());
+        for (String isin : List.of("ABC", "XYZ")) {
+            Security security = securityRepository.findSecurityByIsin(isin);
+            state.add(isin + " " + security.getTickSize() + " " + security.getLotSize() + " " + security.getMarketPrice()
+                    + " " + security.getMatchingState() + " " + shareholder.getPosition(security));
+            security.getOrderBook().forEachOrder(order -> {
+                assertThat(order.getSecurity()).isSameAs(security);
+                assertThat(order.getBroker()).isSameAs(broker);
+                assertThat(order.getShareholder()).isSameAs(shareholder);
+                state.add(order.getClass().getSimpleName() + " " + order.getOrderId() + " " + order.getSide()
+                        + " " + order.getInitialQuantity() + " " + order.getTotalQuantity() + " " + order.getQuantity()
+                        + " " + order.getPrice() + " " + order.getEntryTime() + " " + order.getStatus()
+                        + " " + order.getMinimumExecutionQuantity());
+                if (order instanceof IcebergOrder icebergOrder)
+                    state.add(icebergOrder.getPeakSize() + " " + icebergOrder.getDisplayedQuantity());
+                if (order instanceof StopLimitOrder stopLimitOrder)
+                    state.add(stopLimitOrder.getRequestId() + " " + stopLimitOrder.getStopPrice());
+            });
+        }
+        return state;
+    }
+
+    @Test
+    void saved_files_load_back_every_kind_of_order() throws Exception {
+        fillRepositories();
+        List<String> expected = state();
+        dataLoader.saveAll();
+
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        securityRepository.clear();
+        dataLoader.loadAll();
+        assertThat(state()).isEqualTo(expected);
+        assertThat(securityRepository.findSecurityByIsin("ABC").getOrderBook().totalSellQuantityByShareholder(
+                shareholderRepository.findShareholderById(2))).isEqualTo(650);
+    }
+
+    @Test
+    void files_without_the_newer_columns_still_load() throws Exception {
+        Files.writeString(directory.resolve("broker.csv"), "brokerId,name,credit\n1,broker1,5000\n");
+        Files.writeString(directory.resolve("shareholder.csv"), "shareholderId,name\n1,shareholder1\n");
+        Files.writeString(directory.resolve("security.csv"), "isin,tickSize,lotSize\nSEC1,1,1\n");
+        Files.writeString(directory.resolve("position.csv"), "shareholderId,isin,positions\n1,SEC1,1000\n");
+        Files.writeString(directory.resolve("orderBook.csv"),
+                "orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,peakSize,displayedQuantity\n" +
+                "1,SEC1,BUY,304,15700,1,1,2024-02-23T10:59:54.970,0,0\n" +
+                "2,SEC1,BUY,43,15700,1,1,2024-02-23T10:59:55.970,0,0\n" +
+                "3,SEC1,SELL,350,15800,1,1,2024-02-23T10:59:56.970,100,100\n");
+        dataLoader.loadAll();
+
+        assertThat(brokerRepository.findBrokerById(1).getCredit()).isEqualTo(5000);
+        Security security = securityRepository.findSecurityByIsin("SEC1");
+        assertThat(security.getMatchingState()).isEqualTo(MatchingState.CONTINUOUS);
+        assertThat(security.getOrderBook().getBuyQueue()).extracting(Order::getOrderId).containsExactly(1L, 2L);
+        Order iceberg = security.getOrderBook().findByOrderId(Side.SELL, 3);
+        assertThat(iceberg).isInstanceOf(IcebergOrder.class);
+        assertThat(iceberg.getQuantity()).isEqualTo(100);
+        assertThat(iceberg.getInitialQuantity()).isEqualTo(350);
+    }
+}
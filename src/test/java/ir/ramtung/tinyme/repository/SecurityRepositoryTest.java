@@ -0,0 +1,79 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class SecurityRepositoryTest {
+    private final SecurityRepository securityRepository = new SecurityRepository();
+
+    private Security add(String isin) {
+        Security security = Security.builder().isin(isin).build();
+        securityRepository.addSecurity(security);
+        return security;
+    }
+
+    @Test
+    void securities_are_found_by_isin_and_by_id() {
+        Security abc = add("ABC");
+        Security xyz = add("XYZ");
+
+        assertThat(abc.getId()).isEqualTo(0);
+        assertThat(xyz.getId()).isEqualTo(1);
+        assertThat(securityRepository.findSecurityByIsin("XYZ")).isSameAs(xyz);
+        assertThat(securityRepository.findSecurityById(0)).isSameAs(abc);
+        assertThat(securityRepository.findSecurityByIsin("NONE")).isNull();
+        assertThat(securityRepository.findSecurityById(-1)).isNull();
+        assertThat(securityRepository.findSecurityById(1_000)).isNull();
+        assertThat(securityRepository.allSecurities()).extracting(Security::getIsin).containsExactly("ABC", "XYZ");
+    }
+
+    @Test
+    void ids_grow_past_the_initial_table() {
+        for (int i = 0; i < 100; i++)
+            add("ISIN" + i);
+        assertThat(securityRepository.findSecurityByIsin("ISIN99").getId()).isEqualTo(99);
+        assertThat(securityRepository.allSecurities()).hasSize(100);
+    }
+
+    @Test
+    void an_isin_keeps_its_id_when_the_repository_is_cleared_and_loaded_again() {
+        add("ABC");
+        Security xyz = add("XYZ");
+        securityRepository.clear();
+        assertThat(securityRepository.findSecurityByIsin("XYZ")).isNull();
+        assertThat(securityRepository.allSecurities()).isEmpty();
+
+        Security reloaded = add("XYZ");
+        assertThat(reloaded.getId()).isEqualTo(xyz.getId());
+        assertThat(securityRepository.findSecurityByIsin("XYZ")).isSameAs(reloaded);
+    }
+
+    @Test
+    void each_repository_numbers_its_own_isins() {
+        add("ABC");
+        SecurityRepository other = new SecurityRepository();
+        Security xyz = Security.builder().isin("XYZ").build();
+        other.addSecurity(xyz);
+
+        assertThat(xyz.getId()).isEqualTo(0);
+        assertThat(other.findSecurityByIsin("ABC")).isNull();
+        assertThat(securityRepository.findSecurityByIsin("XYZ")).isNull();
+    }
+
+    @Test
+    void security_outside_a_repository_has_no_id_but_keeps_positions() {
+        Security security = Security.builder().isin("ABC").build();
+        Shareholder shareholder = Shareholder.builder().build();
+        shareholder.incPosition(security, 100);
+        shareholder.decPosition(security, 30);
+
+        assertThat(security.getId()).isEqualTo(-1);
+        assertThat(shareholder.getPosition(security)).isEqualTo(70);
+        assertThat(shareholder.getPosition(Security.builder().isin("ABC").build())).isZero();
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> shareholder.decPosition(security, 71));
+    }
+}
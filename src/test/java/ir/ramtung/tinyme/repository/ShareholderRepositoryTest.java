@@ -0,0 +1,23 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShareholderRepositoryTest {
+    @Test
+    void shareholders_are_found_by_id_until_cleared() {
+        ShareholderRepository shareholderRepository = new ShareholderRepository();
+        for (long id = 1; id <= 1_000; id++)
+            shareholderRepository.addShareholder(Shareholder.builder().shareholderId(id * 7).build());
+
+        assertThat(shareholderRepository.findShareholderById(7_000).getShareholderId()).isEqualTo(7_000);
+        assertThat(shareholderRepository.findShareholderById(8)).isNull();
+        assertThat(shareholderRepository.allShareholders()).hasSize(1_000);
+
+        shareholderRepository.clear();
+        assertThat(shareholderRepository.findShareholderById(7)).isNull();
+        assertThat(shareholderRepository.allShareholders()).isEmpty();
+    }
+}
@@ -0,0 +1,114 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class SnapshotStoreTest {
+    private BrokerRepository brokerRepository;
+    private ShareholderRepository shareholderRepository;
+    private SecurityRepository securityRepository;
+    private SnapshotStore snapshotStore;
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setup() {
+        brokerRepository = new BrokerRepository();
+        shareholderRepository = new ShareholderRepository();
+        securityRepository = new SecurityRepository();
+        snapshotStore = new SnapshotStore(brokerRepository, shareholderRepository, securityRepository, directory.resolve("snapshot"));
+
+        Security abc = Security.builder().isin("ABC").tickSize(10).lotSize(5).marketPrice(15500).build();
+        Security xyz = Security.builder().isin("XYZ").matchingState(MatchingState.AUCTION).build();
+        securityRepository.addSecurity(abc);
+        securityRepository.addSecurity(xyz);
+        Broker broker = Broker.builder().brokerId(1).name("broker").credit(123_456_789).build();
+        brokerRepository.addBroker(broker);
+        Shareholder shareholder = Shareholder.builder().shareholderId(2).name("shareholder").build();
+        shareholder.incPosition(abc, 1000);
+        shareholder.incPosition(xyz, 30);
+        shareholderRepository.addShareholder(shareholder);
+
+        LocalDateTime time = LocalDateTime.of(2024, 2, 23, 10, 59, 54, 970_000_123);
+        OrderBook orderBook = abc.getOrderBook();
+        orderBook.enqueue(new Order(1, abc, Side.BUY, 500, 300, 15400, broker, shareholder, time, OrderStatus.NEW, 150));
+        orderBook.enqueue(new Order(2, abc, Side.BUY, 100, 15400, broker, shareholder, time.plusSeconds(1)));
+        orderBook.enqueue(new IcebergOrder(3, abc, Side.SELL, 800, 650, 15600, broker, shareholder, time, 100, 50, OrderStatus.NEW, 0));
+        orderBook.enqueue(new StopLimitOrder(7, 4, abc, Side.BUY, 40, 15800, broker, shareholder, time, 15700));
+        orderBook.enqueue(new StopLimitOrder(8, 5, abc, Side.SELL, 60, 15000, broker, shareholder, time, 15100));
+        xyz.getOrderBook().enqueue(new Order(6, xyz, Side.SELL, 30, 900, broker, shareholder, time));
+    }
+
+    private List<String> state() {
+        List<String> state = new ArrayList<>();
+        Broker broker = brokerRepository.findBrokerById(1);
+        state.add(broker.getName() + " " + broker.getCredit());
+        Shareholder shareholder = shareholderRepository.findShareholderById(2);
+        state.add(shareholder.getName());
+        for (String isin : List.of("ABC", "XYZ")) {
+            Security security = securityRepository.findSecurityByIsin(isin);
+            state.add(isin + " " + security.getTickSize() + " " + security.getLotSize() + " " + security.getMarketPrice()
+                    + " " + security.getMatchingState() + " " + shareholder.getPosition(security));
+            security.getOrderBook().forEachOrder(order -> {
+                assertThat(order.getSecurity()).isSameAs(security);
+                assertThat(order.getBroker()).isSameAs(broker);
+                assertThat(order.getShareholder()).isSameAs(shareholder);
+                state.add(order.getClass().getSimpleName() + " " + order.getOrderId() + " " + order.getSide()
+                        + " " + order.getInitialQuantity() + " " + order.getTotalQuantity() + " " + order.getQuantity()
+                        + " " + order.getPrice() + " " + order.getEntryTime() + " " + order.getStatus()
+                        + " " + order.getMinimumExecutionQuantity());
+                if (order instanceof IcebergOrder icebergOrder)
+                    state.add(icebergOrder.getPeakSize() + " " + icebergOrder.getDisplayedQuantity());
+                if (order instanceof StopLimitOrder stopLimitOrder)
+                    state.add(stopLimitOrder.getRequestId() + " " + stopLimitOrder.getStopPrice());
+            });
+        }
+        return state;
+    }
+
+    @Test
+    void loaded_snapshot_has_the_captured_state() throws IOException {
+        List<String> expected = state();
+        snapshotStore.write(snapshotStore.capture(42));
+
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        securityRepository.clear();
+        assertThat(snapshotStore.load()).isEqualTo(42);
+        assertThat(state()).isEqualTo(expected);
+    }
+
+    @Test
+    void loaded_orders_keep_matching_their_book() throws IOException {
+        snapshotStore.write(snapshotStore.capture(0));
+        snapshotStore.load();
+        Security abc = securityRepository.findSecurityByIsin("ABC");
+        Shareholder shareholder = shareholderRepository.findShareholderById(2);
+        assertThat(abc.getOrderBook().totalSellQuantityByShareholder(shareholder)).isEqualTo(650);
+        assertThat(abc.getOrderBook().findByOrderId(Side.BUY, 1).minimumExecutionQuantitySatisfied()).isTrue();
+        assertThat(abc.getOrderBook().findByOrderId(Side.SELL, 3).getQuantity()).isEqualTo(50);
+    }
+
+    @Test
+    void corrupt_snapshot_is_not_loaded() throws IOException {
+        snapshotStore.write(snapshotStore.capture(0));
+        byte[] bytes = Files.readAllBytes(directory.resolve("snapshot"));
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(directory.resolve("snapshot"), bytes);
+        assertThatExceptionOfType(IOException.class).isThrownBy(() -> snapshotStore.load());
+        assertThat(brokerRepository.findBrokerById(1)).isNotNull();
+    }
+}
@@ -0,0 +1,109 @@
+package ir.ramtung.tinyme.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class LongHashMapTest {
+    // Keys whose home slot in a table of the default 16 slots is the last one, so that they
+    // form one cluster that wraps around to the start of the table.
+    private static List<Long> keysAtLastSlot(int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 0; keys.size() < count; key++) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            if (((int) (hash ^ (hash >>> 32)) & 15) == 15)
+                keys.add(key);
+        }
+        return keys;
+    }
+
+    @Test
+    void put_get_and_remove() {
+        LongHashMap<String> map = new LongHashMap<>();
+        assertThat(map.put(1, "a")).isNull();
+        assertThat(map.put(Long.MIN_VALUE, "min")).isNull();
+        assertThat(map.put(-1, "minus one")).isNull();
+        assertThat(map.put(1, "b")).isEqualTo("a");
+
+        assertThat(map.size()).isEqualTo(3);
+        assertThat(map.get(1)).isEqualTo("b");
+        assertThat(map.get(Long.MIN_VALUE)).isEqualTo("min");
+        assertThat(map.get(2)).isNull();
+        assertThat(map.remove(-1)).isEqualTo("minus one");
+        assertThat(map.remove(-1)).isNull();
+        assertThat(map.containsKey(-1)).isFalse();
+        assertThat(map.size()).isEqualTo(2);
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> map.put(3, null));
+    }
+
+    @Test
+    void removing_from_a_wrapped_cluster_shifts_the_rest_back() {
+        List<Long> keys = keysAtLastSlot(5);
+        for (long removed : keys) {
+            LongHashMap<Long> map = new LongHashMap<>();
+            for (long key : keys)
+                map.put(key, key);
+            assertThat(map.remove(removed)).isEqualTo(removed);
+            for (long key : keys)
+                assertThat(map.get(key)).isEqualTo(key == removed ? null : key);
+            assertThat(map.size()).isEqualTo(keys.size() - 1);
+        }
+    }
+
+    @Test
+    void removing_every_key_leaves_nothing_behind() {
+        List<Long> keys = keysAtLastSlot(7);
+        LongHashMap<Long> map = new LongHashMap<>();
+        for (long key : keys)
+            map.put(key, key);
+        for (long key : keys)
+            map.remove(key);
+        assertThat(map.isEmpty()).isTrue();
+        assertThat(map.values()).isEmpty();
+        for (long key : keys)
+            assertThat(map.get(key)).isNull();
+    }
+
+    @Test
+    void growing_keeps_every_entry() {
+        LongHashMap<Long> map = new LongHashMap<>();
+        for (long key = 0; key < 10_000; key++)
+            map.put(key * 31, key);
+        for (long key = 0; key < 10_000; key += 2)
+            map.remove(key * 31);
+
+        assertThat(map.size()).isEqualTo(5_000);
+        for (long key = 0; key < 10_000; key++)
+            assertThat(map.get(key * 31)).isEqualTo(key % 2 == 0 ? null : key);
+        List<Long> values = new ArrayList<>();
+        map.values().forEach(values::add);
+        assertThat(values).hasSize(5_000).doesNotHaveDuplicates().allMatch(value -> value % 2 == 1);
+    }
+
+    @Test
+    void behaves_like_a_hash_map_under_random_puts_and_removes() {
+        Random random = new Random(42);
+        LongHashMap<Integer> map = new LongHashMap<>();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int step = 0; step < 100_000; step++) {
+            long key = random.nextInt(300) - 150;
+            if (random.nextInt(3) == 0)
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            else
+                assertThat(map.put(key, step)).isEqualTo(expected.put(key, step));
+            assertThat(map.size()).isEqualTo(expected.size());
+        }
+        for (long key = -150; key < 150; key++)
+            assertThat(map.get(key)).isEqualTo(expected.get(key));
+        Map<Integer, Integer> counted = new HashMap<>();
+        map.forEachValue(value -> counted.merge(value, 1, Integer::sum));
+        assertThat(counted.keySet()).containsExactlyInAnyOrderElementsOf(expected.values());
+    }
+}